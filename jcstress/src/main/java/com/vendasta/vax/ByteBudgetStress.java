@@ -0,0 +1,119 @@
+package com.vendasta.vax;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Races reservations and releases on a {@link ByteBudget} of 100 bytes.
+ */
+public class ByteBudgetStress {
+    private static final long WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private ByteBudgetStress() {}
+
+    private static int tryAcquire(ByteBudget budget, long bytes, long timeoutNanos) {
+        try {
+            budget.acquire(bytes, timeoutNanos);
+            return 1;
+        } catch (SDKException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Two requests that do not fit together race for a fail-fast budget.
+     */
+    @JCStressTest
+    @Outcome(id = {"1, 0, 60", "0, 1, 60"}, expect = ACCEPTABLE, desc = "Exactly one request admitted")
+    @Outcome(expect = FORBIDDEN, desc = "Both or neither admitted, or the count is off")
+    @State
+    public static class FailFast {
+        private final ByteBudget budget = ByteBudget.builder().maxInFlightBytes(100).mode(ByteBudget.Mode.FAIL_FAST).build();
+
+        @Actor
+        public void first(III_Result r) {
+            r.r1 = tryAcquire(budget, 60, 0);
+        }
+
+        @Actor
+        public void second(III_Result r) {
+            r.r2 = tryAcquire(budget, 60, 0);
+        }
+
+        @Arbiter
+        public void inFlight(III_Result r) {
+            r.r3 = (int) budget.getInFlightBytes();
+        }
+    }
+
+    /**
+     * A request that does not fit waits while the bytes in its way are released.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 60, 0", expect = ACCEPTABLE, desc = "The waiter was admitted and nothing is left queued")
+    @Outcome(expect = FORBIDDEN, desc = "The release was missed, or the count is off")
+    @State
+    public static class Handoff {
+        private final ByteBudget budget = ByteBudget.builder().maxInFlightBytes(100).build();
+
+        public Handoff() {
+            tryAcquire(budget, 60, 0);
+        }
+
+        @Actor
+        public void release() {
+            budget.release(60);
+        }
+
+        @Actor
+        public void acquire(III_Result r) {
+            r.r1 = tryAcquire(budget, 60, WAIT_NANOS);
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            r.r2 = (int) budget.getInFlightBytes();
+            r.r3 = budget.getQueued();
+        }
+    }
+
+    /**
+     * A large request times out at the head of the queue; the small request behind it must
+     * be admitted rather than left waiting.
+     */
+    @JCStressTest
+    @Outcome(id = "0, 1, 90", expect = ACCEPTABLE, desc = "The large request timed out and the small one got in")
+    @Outcome(expect = FORBIDDEN, desc = "The small request was stranded, or the count is off")
+    @State
+    public static class TimedOutWaiter {
+        private final ByteBudget budget = ByteBudget.builder().maxInFlightBytes(100).build();
+
+        public TimedOutWaiter() {
+            tryAcquire(budget, 60, 0);
+        }
+
+        @Actor
+        public void large(III_Result r) {
+            r.r1 = tryAcquire(budget, 50, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        @Actor
+        public void small(III_Result r) {
+            r.r2 = tryAcquire(budget, 30, WAIT_NANOS);
+        }
+
+        @Arbiter
+        public void inFlight(III_Result r) {
+            r.r3 = (int) budget.getInFlightBytes();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.vendasta.vax;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Races token reads, refreshes and invalidations on a single {@link VAXCredentialsManager}.
+ *
+ * <p>Results report tokens by number, in the order the {@link StubTokenClient} issued them;
+ * -1 means a caller got no token at all.
+ */
+public class CredentialsStress {
+    private CredentialsStress() {}
+
+    private static VAXCredentialsManager acquire(StubTokenClient tokens) {
+        try {
+            return tokens.registry(4).acquire(StubTokenClient.credentials());
+        } catch (SDKException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String authorization(VAXCredentialsManager manager) {
+        try {
+            return manager.getAuthorization();
+        } catch (CredentialsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Two callers find no token and must share a single refresh.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "Both callers got the token of the one refresh")
+    @Outcome(expect = FORBIDDEN, desc = "More than one refresh, or a caller got no token")
+    @State
+    public static class SharedRefresh {
+        private final StubTokenClient tokens = new StubTokenClient(StubTokenClient.Completion.ASYNC);
+        private final VAXCredentialsManager manager = acquire(tokens);
+
+        @Actor
+        public void first(III_Result r) {
+            r.r1 = tokens.generation(authorization(manager));
+        }
+
+        @Actor
+        public void second(III_Result r) {
+            r.r2 = tokens.generation(authorization(manager));
+        }
+
+        @Arbiter
+        public void requests(III_Result r) {
+            r.r3 = tokens.getRequestCount();
+        }
+    }
+
+    /**
+     * A rejected token is invalidated while another caller reads it.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 2, 2", expect = ACCEPTABLE, desc = "Read the old token before it was invalidated")
+    @Outcome(id = "2, 2, 2", expect = ACCEPTABLE, desc = "Read after the invalidation and fetched its replacement")
+    @Outcome(expect = FORBIDDEN, desc = "The invalidated token survived, or more than one replacement was fetched")
+    @State
+    public static class InvalidateWhileReading {
+        private final StubTokenClient tokens = new StubTokenClient(StubTokenClient.Completion.ASYNC);
+        private final VAXCredentialsManager manager = acquire(tokens);
+        private final String rejected = authorization(manager);
+
+        @Actor
+        public void invalidate() {
+            manager.invalidateAuthorization(rejected);
+        }
+
+        @Actor
+        public void read(III_Result r) {
+            r.r1 = tokens.generation(authorization(manager));
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            r.r2 = tokens.generation(authorization(manager));
+            r.r3 = tokens.getRequestCount();
+        }
+    }
+
+    /**
+     * Two callers get the same token rejected. Whichever reports it last must not throw away
+     * the replacement the other one already fetched.
+     */
+    @JCStressTest
+    @Outcome(id = "2, 2, 2", expect = ACCEPTABLE, desc = "Both callers moved on to the single replacement")
+    @Outcome(expect = FORBIDDEN, desc = "A late rejection discarded the replacement, or a caller kept the rejected token")
+    @State
+    public static class DuplicateRejection {
+        private final StubTokenClient tokens = new StubTokenClient(StubTokenClient.Completion.ASYNC);
+        private final VAXCredentialsManager manager = acquire(tokens);
+        private final String rejected = authorization(manager);
+
+        @Actor
+        public void first(III_Result r) {
+            manager.invalidateAuthorization(rejected);
+            r.r1 = tokens.generation(authorization(manager));
+        }
+
+        @Actor
+        public void second(III_Result r) {
+            manager.invalidateAuthorization(rejected);
+            r.r2 = tokens.generation(authorization(manager));
+        }
+
+        @Arbiter
+        public void requests(III_Result r) {
+            r.r3 = tokens.getRequestCount();
+        }
+    }
+
+    /**
+     * Two token requests race for a registry's only refresh permit.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 2, 1", expect = ACCEPTABLE, desc = "One request at a time, both answered, and the permit returned")
+    @Outcome(expect = FORBIDDEN, desc = "Both requests in flight at once, a request never sent, or the permit lost")
+    @State
+    public static class RefreshPermits {
+        private final StubTokenClient tokens = new StubTokenClient(StubTokenClient.Completion.MANUAL);
+        private final VAXCredentialsRegistry registry = tokens.registry(1);
+        private volatile boolean firstDone;
+        private volatile boolean secondDone;
+
+        @Actor
+        public void first() {
+            registry.sendTokenRequest(StubTokenClient.REQUEST).thenRun(() -> firstDone = true);
+        }
+
+        @Actor
+        public void second() {
+            registry.sendTokenRequest(StubTokenClient.REQUEST).thenRun(() -> secondDone = true);
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            // Answering the request in flight hands the permit to the queued one, which is answered too
+            tokens.completePending();
+            r.r1 = tokens.getMaxInFlight();
+            r.r2 = (firstDone ? 1 : 0) + (secondDone ? 1 : 0);
+            // With the permit back, another request goes out right away
+            registry.sendTokenRequest(StubTokenClient.REQUEST);
+            r.r3 = tokens.getRequestCount() - 2;
+        }
+    }
+}
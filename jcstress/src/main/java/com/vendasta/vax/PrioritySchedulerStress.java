@@ -0,0 +1,127 @@
+package com.vendasta.vax;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+
+import com.vendasta.vax.RequestOptions.Priority;
+
+/**
+ * Races admissions and releases on a {@link PriorityScheduler} with a single slot.
+ */
+public class PrioritySchedulerStress {
+    private PrioritySchedulerStress() {}
+
+    private static PriorityScheduler singleSlot() {
+        return PriorityScheduler.builder().maxConcurrency(1).build();
+    }
+
+    private static int tryAcquire(PriorityScheduler scheduler, Priority priority, long timeoutNanos) {
+        try {
+            scheduler.acquire(priority, timeoutNanos);
+            return 1;
+        } catch (SDKException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Two lanes race for the free slot without waiting.
+     */
+    @JCStressTest
+    @Outcome(id = {"1, 0, 1", "0, 1, 1"}, expect = ACCEPTABLE, desc = "Exactly one request admitted")
+    @Outcome(expect = FORBIDDEN, desc = "Both or neither admitted, or the count is off")
+    @State
+    public static class SingleSlot {
+        private final PriorityScheduler scheduler = singleSlot();
+
+        @Actor
+        public void interactive(III_Result r) {
+            r.r1 = tryAcquire(scheduler, Priority.INTERACTIVE, 0);
+        }
+
+        @Actor
+        public void bulk(III_Result r) {
+            r.r2 = tryAcquire(scheduler, Priority.BULK, 0);
+        }
+
+        @Arbiter
+        public void active(III_Result r) {
+            r.r3 = scheduler.getActive(Priority.INTERACTIVE) + scheduler.getActive(Priority.BULK);
+        }
+    }
+
+    /**
+     * An interactive request waits while the bulk request holding the slot finishes.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1, 0, 0", expect = ACCEPTABLE, desc = "The slot passed to the interactive request")
+    @Outcome(expect = FORBIDDEN, desc = "The release was missed, or the counts are off")
+    @State
+    public static class Handoff {
+        private final PriorityScheduler scheduler = singleSlot();
+
+        public Handoff() {
+            tryAcquire(scheduler, Priority.BULK, 0);
+        }
+
+        @Actor
+        public void release() {
+            scheduler.release(Priority.BULK);
+        }
+
+        @Actor
+        public void acquire(IIII_Result r) {
+            r.r1 = tryAcquire(scheduler, Priority.INTERACTIVE, TimeUnit.SECONDS.toNanos(10));
+        }
+
+        @Arbiter
+        public void after(IIII_Result r) {
+            r.r2 = scheduler.getActive(Priority.INTERACTIVE);
+            r.r3 = scheduler.getActive(Priority.BULK);
+            r.r4 = scheduler.getQueued(Priority.INTERACTIVE);
+        }
+    }
+
+    /**
+     * A waiter's timeout races with the release that admits it. Either way the slot must be
+     * accounted to the request exactly when it was told it got in.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1, 0", expect = ACCEPTABLE, desc = "Admitted before the timeout and holding the slot")
+    @Outcome(id = "0, 0, 0", expect = ACCEPTABLE, desc = "Timed out, and the slot is free")
+    @Outcome(expect = FORBIDDEN, desc = "A slot leaked or was handed to a request that gave up")
+    @State
+    public static class TimeoutVersusRelease {
+        private final PriorityScheduler scheduler = singleSlot();
+
+        public TimeoutVersusRelease() {
+            tryAcquire(scheduler, Priority.NORMAL, 0);
+        }
+
+        @Actor
+        public void acquire(III_Result r) {
+            r.r1 = tryAcquire(scheduler, Priority.NORMAL, TimeUnit.MICROSECONDS.toNanos(100));
+        }
+
+        @Actor
+        public void release() {
+            scheduler.release(Priority.NORMAL);
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            r.r2 = scheduler.getActive(Priority.NORMAL);
+            r.r3 = scheduler.getQueued(Priority.NORMAL);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vendasta.vax;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.time.Duration;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+/**
+ * Races permits and throttling on a single {@link RateLimiter} endpoint.
+ */
+public class RateLimiterStress {
+    private static final String ENDPOINT = "/api/v1/echo";
+
+    private RateLimiterStress() {}
+
+    /**
+     * Two callers race for the last permit of an endpoint that refills far too slowly to
+     * matter.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "Exactly one caller got the permit")
+    @Outcome(expect = FORBIDDEN, desc = "The permit was handed out twice or lost")
+    @State
+    public static class LastPermit {
+        private final RateLimiter limiter = RateLimiter.builder().permitsPerSecond(0.001).burst(1).build();
+
+        @Actor
+        public void first(ZZ_Result r) {
+            r.r1 = limiter.tryAcquire(ENDPOINT);
+        }
+
+        @Actor
+        public void second(ZZ_Result r) {
+            r.r2 = limiter.tryAcquire(ENDPOINT);
+        }
+    }
+
+    /**
+     * The server throttles an endpoint while a caller takes a permit. Once the throttle is
+     * recorded no permit may be handed out until the pause ends.
+     */
+    @JCStressTest
+    @Outcome(id = "true, false", expect = ACCEPTABLE, desc = "Took a permit before the throttle")
+    @Outcome(id = "false, false", expect = ACCEPTABLE, desc = "Rejected after the throttle")
+    @Outcome(expect = FORBIDDEN, desc = "A permit was handed out during the pause")
+    @State
+    public static class Throttled {
+        private final RateLimiter limiter = RateLimiter.builder().build();
+
+        @Actor
+        public void throttle() {
+            limiter.onThrottled(ENDPOINT, Duration.ofHours(1));
+        }
+
+        @Actor
+        public void acquire(ZZ_Result r) {
+            r.r1 = limiter.tryAcquire(ENDPOINT);
+        }
+
+        @Arbiter
+        public void after(ZZ_Result r) {
+            r.r2 = limiter.tryAcquire(ENDPOINT);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.vendasta.vax;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.time.Duration;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import com.google.protobuf.Int32Value;
+
+/**
+ * Checks that a {@link WriteBehindQueue} accounts for every accepted request exactly once:
+ * it is either delivered or handed to the failure handler, and the pending count that
+ * {@code flush} waits on drops back to zero.
+ */
+public class WriteBehindQueueStress {
+    private static final Duration FLUSH_TIMEOUT = Duration.ofSeconds(10);
+
+    private WriteBehindQueueStress() {}
+
+    private static WriteBehindQueue<Int32Value> newQueue() {
+        try {
+            return WriteBehindQueue.<Int32Value>builder()
+                .sender(request -> {})
+                .build();
+        } catch (SDKException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int trySubmit(WriteBehindQueue<Int32Value> queue, int value) {
+        try {
+            return queue.submit(Int32Value.of(value)) ? 1 : 0;
+        } catch (SDKException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Two submitters race with the worker; a flush afterwards must see both delivered.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 0, 2", expect = ACCEPTABLE, desc = "Flushed, nothing pending, both delivered")
+    @Outcome(expect = FORBIDDEN, desc = "The flush timed out, or a request was lost or counted twice")
+    @State
+    public static class Accounting {
+        private final WriteBehindQueue<Int32Value> queue = newQueue();
+
+        @Actor
+        public void first() {
+            trySubmit(queue, 1);
+        }
+
+        @Actor
+        public void second() {
+            trySubmit(queue, 2);
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            try {
+                r.r1 = queue.flush(FLUSH_TIMEOUT) ? 1 : 0;
+                r.r2 = (int) queue.getPendingCount();
+                r.r3 = (int) queue.getDeliveredCount();
+                queue.close();
+            } catch (SDKException e) {
+                r.r1 = -1;
+            }
+        }
+    }
+
+    /**
+     * A request is submitted while the queue closes. If it was accepted it must still end up
+     * delivered or failed, never stranded in the queue after the workers stopped.
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1, 0", expect = ACCEPTABLE, desc = "Accepted, then delivered or failed")
+    @Outcome(id = "0, 0, 0", expect = ACCEPTABLE, desc = "Rejected because the queue was closed")
+    @Outcome(expect = FORBIDDEN, desc = "An accepted request was lost, or the pending count is off")
+    @State
+    public static class SubmitVersusClose {
+        private final WriteBehindQueue<Int32Value> queue = newQueue();
+
+        @Actor
+        public void submit(III_Result r) {
+            r.r1 = trySubmit(queue, 1);
+        }
+
+        @Actor
+        public void close() {
+            try {
+                queue.close();
+            } catch (SDKException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Arbiter
+        public void after(III_Result r) {
+            r.r2 = (int) (queue.getDeliveredCount() + queue.getFailedCount());
+            r.r3 = (int) queue.getPendingCount();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.Struct;
+import com.vendasta.vax.testing.MockVAXServer;
+
+import io.grpc.CallCredentials;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+
+/**
+ * Compares applying a cached token to gRPC calls inline with handing every call to the
+ * application executor first, as {@link VAXCredentials} used to do. Calls go over the
+ * in-process transport so the credentials are the only work that differs.
+ *
+ * <pre>
+ * java -jar jmh/target/benchmarks.jar CallCredentialsBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallCredentialsBenchmark {
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+    private MockVAXServer tokenServer;
+    private VAXCredentialsRegistry registry;
+    private Server server;
+    private ManagedChannel channel;
+    private CallOptions inline;
+    private CallOptions legacy;
+    private Struct request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tokenServer = MockVAXServer.builder().start();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+        VAXCredentials credentials = new VAXCredentials(tokenServer.credentials(), registry);
+        credentials.prefetchToken().join();
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(EchoClients.grpcService()).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        inline = CallOptions.DEFAULT.withCallCredentials(credentials);
+        legacy = CallOptions.DEFAULT.withCallCredentials(new CallCredentials() {
+            @Override
+            public void applyRequestMetadata(RequestInfo requestInfo, Executor executor, MetadataApplier applier) {
+                executor.execute(() -> {
+                    Metadata headers = new Metadata();
+                    headers.put(AUTHORIZATION, credentials.getAuthorizationToken());
+                    applier.apply(headers);
+                });
+            }
+        });
+        request = EchoClients.message("hello");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        registry.close();
+        tokenServer.close();
+    }
+
+    @Benchmark
+    public Struct inline() {
+        return ClientCalls.blockingUnaryCall(channel, EchoClients.ECHO, inline, request);
+    }
+
+    @Benchmark
+    public Struct legacy() {
+        return ClientCalls.blockingUnaryCall(channel, EchoClients.ECHO, legacy, request);
+    }
+}
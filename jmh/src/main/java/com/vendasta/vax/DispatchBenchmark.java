@@ -0,0 +1,120 @@
+package com.vendasta.vax;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vendasta.vax.testing.MockVAXServer;
+
+/**
+ * Compares the per-call work done before a request reaches the transport, before and after
+ * options were made immutable and stubs and URLs were cached. Run it with {@code -prof gc}
+ * to see the allocation per call.
+ *
+ * <p>The {@code legacy} benchmarks reproduce what the clients used to do on every call: build
+ * fresh default options and apply the caller's on top, give the stub an absolute deadline and
+ * credentials, and build the request URI from scratch (with today's {@code host:port}-aware
+ * constructor).
+ * No call goes over the network.
+ *
+ * <pre>
+ * java -jar jmh/target/benchmarks.jar DispatchBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    private static final float DEFAULT_TIMEOUT = 5;
+
+    private MockVAXServer server;
+    private VAXCredentialsRegistry registry;
+    private VAXCredentials credentials;
+    private EchoClients.Grpc grpc;
+    private EndpointSelector selector;
+    private EndpointSelector.Endpoint endpoint;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = MockVAXServer.builder()
+                .grpcService(EchoClients.grpcService())
+                .start();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+        credentials = new VAXCredentials(server.credentials(), registry);
+        grpc = new EchoClients.Grpc(GRPCClient.builder()
+                .host(server.getGrpcHost())
+                .secure(false)
+                .credentials(server.credentials())
+                .credentialsRegistry(registry)
+                .defaultTimeout(DEFAULT_TIMEOUT));
+        selector = new EndpointSelector(List.of(server.getHttpHost()), false, 5, TimeUnit.SECONDS.toNanos(30));
+        endpoint = selector.select();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        grpc.close();
+        selector.close();
+        registry.close();
+        server.close();
+    }
+
+    @Benchmark
+    public EchoClients.EchoStub grpcDefaultOptions() {
+        return grpc.configureStub(grpc.buildVAXOptions(new RequestOptions.Builder()));
+    }
+
+    @Benchmark
+    public EchoClients.EchoStub grpcPerCallOptions() {
+        return grpc.configureStub(grpc.buildVAXOptions(new RequestOptions.Builder().setPriority(RequestOptions.Priority.INTERACTIVE)));
+    }
+
+    @Benchmark
+    public EchoClients.EchoStub grpcLegacy() {
+        RequestOptions options = legacyOptions(new RequestOptions.Builder().setPriority(RequestOptions.Priority.INTERACTIVE));
+        return grpc.blockingStub
+                .withDeadlineAfter((long) (options.getTimeout() * 1000), TimeUnit.MILLISECONDS)
+                .withCallCredentials(credentials);
+    }
+
+    @Benchmark
+    public EchoClients.EchoStub grpcDispatch() {
+        // The whole request path up to the transport: options, admission, the stub and the event
+        return grpc.doRequest(stub -> stub, new RequestOptions.Builder());
+    }
+
+    @Benchmark
+    public URI httpCachedUrl() throws SDKException {
+        return HTTPClient.buildUrl(endpoint, EchoClients.HTTP_PATH);
+    }
+
+    @Benchmark
+    public void httpLegacy(Blackhole blackhole) throws SDKException {
+        RequestOptions options = legacyOptions(new RequestOptions.Builder());
+        blackhole.consume(HTTPClient.newUrl(endpoint.getHost(), endpoint.isSecure(), EchoClients.HTTP_PATH));
+        blackhole.consume(Duration.ofMillis((long) (options.getTimeout() * 1000)));
+    }
+
+    private static RequestOptions legacyOptions(RequestOptions.Builder options) {
+        // The defaults used to be rebuilt for every call before the caller's options were applied
+        return options.applyTo(new RequestOptions(true, DEFAULT_TIMEOUT));
+    }
+}
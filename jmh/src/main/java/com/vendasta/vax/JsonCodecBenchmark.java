@@ -0,0 +1,73 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Struct;
+
+/**
+ * Compares printing and parsing HTTP bodies with {@code JsonFormat}, the default, and with the
+ * compiled codec enabled by {@code HTTPClient.Builder.compiledJsonCodec(true)}. Run it with
+ * {@code -prof gc} to see the allocation per message.
+ *
+ * <p>The payload is the descriptor of {@link Struct}'s file: a generated message with nested
+ * messages, repeated fields, enums and strings, and none of the well-known types the compiled
+ * codec hands back to {@code JsonFormat}.
+ *
+ * <pre>
+ * java -jar jmh/target/benchmarks.jar JsonCodecBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+    private FileDescriptorProto message;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidProtocolBufferException {
+        message = Struct.getDescriptor().getFile().toProto();
+        json = JsonCodec.print(message, false);
+    }
+
+    @Benchmark
+    public byte[] printJsonFormat() throws InvalidProtocolBufferException {
+        return JsonCodec.print(message, false);
+    }
+
+    @Benchmark
+    public byte[] printCompiled() throws InvalidProtocolBufferException {
+        return JsonCodec.print(message, true);
+    }
+
+    @Benchmark
+    public FileDescriptorProto parseJsonFormat() throws InvalidProtocolBufferException {
+        FileDescriptorProto.Builder builder = FileDescriptorProto.newBuilder();
+        JsonCodec.merge(json, 0, json.length, builder, false);
+        return builder.build();
+    }
+
+    @Benchmark
+    public FileDescriptorProto parseCompiled() throws InvalidProtocolBufferException {
+        FileDescriptorProto.Builder builder = FileDescriptorProto.newBuilder();
+        JsonCodec.merge(json, 0, json.length, builder, true);
+        return builder.build();
+    }
+}
@@ -0,0 +1,133 @@
+package com.vendasta.vax;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Compares the token assertion path before and after the signer, header and assertion were
+ * reused and keys were parsed with the JDK's key factories.
+ *
+ * <p>The {@code legacy} benchmarks reproduce what {@code VAXCredentialsManager} used to do:
+ * parse the key with BouncyCastle's {@code PEMParser}, and build a new {@code ECDSASigner},
+ * header and claims set for every assertion.
+ *
+ * <pre>
+ * java -jar jmh/target/benchmarks.jar JwtSigningBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtSigningBenchmark {
+    private static final JWSHeader HEADER = new JWSHeader(JWSAlgorithm.ES256);
+
+    private String pem;
+    private ECPrivateKey legacyKey;
+    private ECDSASigner signer;
+    private VAXCredentialsRegistry registry;
+    private VAXCredentialsManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        // Service accounts carry SEC1 keys with their public key, the only form the legacy parser accepted
+        ECPrivateKey privateKey = (ECPrivateKey) keyPair.getPrivate();
+        SubjectPublicKeyInfo publicKey = SubjectPublicKeyInfo.getInstance(keyPair.getPublic().getEncoded());
+        byte[] sec1 = new org.bouncycastle.asn1.sec.ECPrivateKey(256, privateKey.getS(), publicKey.getPublicKeyData(),
+                SECObjectIdentifiers.secp256r1).getEncoded();
+        StringWriter out = new StringWriter();
+        try (PemWriter writer = new PemWriter(out)) {
+            writer.writeObject(new PemObject("EC PRIVATE KEY", sec1));
+        }
+        pem = out.toString();
+
+        legacyKey = parseKeyBouncyCastle();
+        signer = new ECDSASigner(ECKeys.parsePrivateKey(pem));
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+        manager = registry.acquire(new VAXCredentials.Credentials("benchmark-key", pem, "benchmark@vax.local", "http://localhost/token"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registry.close();
+    }
+
+    private static JWTClaimsSet claims() {
+        return new JWTClaimsSet.Builder()
+                .audience("vendasta.com")
+                .subject("benchmark@vax.local")
+                .expirationTime(new Date(System.currentTimeMillis() + 60 * 1000))
+                .claim("kid", "benchmark-key")
+                .build();
+    }
+
+    @Benchmark
+    public ECPrivateKey parseKeyBouncyCastle() throws IOException {
+        Object parsed = new PEMParser(new StringReader(pem)).readObject();
+        return (ECPrivateKey) new JcaPEMKeyConverter().getKeyPair((PEMKeyPair) parsed).getPrivate();
+    }
+
+    @Benchmark
+    public ECPrivateKey parseKeyNative() {
+        return ECKeys.parsePrivateKey(pem);
+    }
+
+    @Benchmark
+    public String signLegacy() throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.ES256), claims());
+        jwt.sign(new ECDSASigner(legacyKey));
+        return jwt.serialize();
+    }
+
+    @Benchmark
+    public String signReusedSigner() throws JOSEException {
+        SignedJWT jwt = new SignedJWT(HEADER, claims());
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+
+    @Benchmark
+    public String buildJWT() {
+        // Refreshes within an assertion's validity reuse the signed assertion
+        return manager.buildJWT();
+    }
+}
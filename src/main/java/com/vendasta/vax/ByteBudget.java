@@ -0,0 +1,295 @@
+package com.vendasta.vax;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.Status;
+
+/**
+ * Bounds how many request and response bytes are in memory at once.
+ *
+ * <p>Before a request is serialized it reserves its estimated size, taken from
+ * {@link com.google.protobuf.MessageLite#getSerializedSize()}, plus a fixed reservation for
+ * its response. The reservation is released once the response has been parsed. A request
+ * that does not fit in what is left of the budget either waits for other requests to finish
+ * ({@link Mode#BLOCK}) or fails right away ({@link Mode#FAIL_FAST}). Waiting requests are
+ * admitted in arrival order, so a large request is not starved by a stream of small ones, and
+ * a request larger than the whole budget is admitted once nothing else is in flight.
+ *
+ * <p>A request waits at most its own timeout; the time spent waiting counts against it.
+ * Requests that time out while queued fail with status {@link Status.Code#DEADLINE_EXCEEDED},
+ * and requests rejected in fail-fast mode with {@link Status.Code#RESOURCE_EXHAUSTED}.
+ * A budget may be shared by several clients to bound their combined memory use.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * ByteBudget budget = ByteBudget.builder()
+ *     .maxInFlightBytes(256L * 1024 * 1024)
+ *     .responseReservation(1024 * 1024)
+ *     .build();
+ *
+ * HTTPClient client = HTTPClient.builder()
+ *     .host("api.example.com")
+ *     .byteBudget(budget)
+ *     .build();
+ * }</pre>
+ */
+public final class ByteBudget {
+    /**
+     * What a request does when the budget has no room for it.
+     */
+    public enum Mode {
+        /** Wait, in arrival order, until enough bytes are released. */
+        BLOCK,
+        /** Fail right away. */
+        FAIL_FAST
+    }
+
+    private final Mode mode;
+    private final long maxInFlightBytes;
+    private final long responseReservation;
+    private final SDKException exhausted;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private long inFlightBytes;
+
+    private ByteBudget(Builder builder) {
+        this.mode = builder.mode;
+        this.maxInFlightBytes = builder.maxInFlightBytes;
+        this.responseReservation = builder.responseReservation;
+        this.exhausted = SDKException.preallocated("In-flight byte budget of " + maxInFlightBytes + " bytes exhausted",
+                Status.Code.RESOURCE_EXHAUSTED);
+    }
+
+    /**
+     * Reserves bytes for a request, waiting for room if the mode allows it.
+     *
+     * <p>Every successful call must be paired with a call to {@link #release} for the same
+     * number of bytes.
+     *
+     * @param bytes the number of bytes to reserve
+     * @param timeoutNanos how long the request may wait
+     * @return how long the request waited, in nanoseconds
+     * @throws SDKException with status RESOURCE_EXHAUSTED if the budget is full in fail-fast
+     *                      mode, or DEADLINE_EXCEEDED if no room became available in time or
+     *                      if interrupted while waiting
+     */
+    public long acquire(long bytes, long timeoutNanos) throws SDKException {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && fits(bytes)) {
+                inFlightBytes += bytes;
+                return 0;
+            }
+            if (mode == Mode.FAIL_FAST) {
+                throw exhausted;
+            }
+
+            long startNanos = System.nanoTime();
+            Waiter waiter = new Waiter(bytes, lock.newCondition());
+            waiters.addLast(waiter);
+            long remainingNanos = timeoutNanos;
+            try {
+                while (!waiter.admitted) {
+                    if (remainingNanos <= 0) {
+                        waiters.remove(waiter);
+                        // The waiter may have been holding back smaller requests behind it
+                        admitWaiters();
+                        throw new SDKException("Timed out waiting for " + bytes + " bytes of in-flight budget",
+                                Status.Code.DEADLINE_EXCEEDED.value());
+                    }
+                    remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    release(bytes);
+                } else {
+                    waiters.remove(waiter);
+                    admitWaiters();
+                }
+                Thread.currentThread().interrupt();
+                throw new SDKException("Interrupted while waiting for in-flight budget: " + e.getMessage(), e);
+            }
+            return System.nanoTime() - startNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts bytes that are already in memory, without waiting, for example a response that
+     * turned out larger than its reservation. They are released with {@link #release}.
+     *
+     * @param bytes the number of bytes to count
+     */
+    void charge(long bytes) {
+        lock.lock();
+        try {
+            inFlightBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases bytes reserved by {@link #acquire} and admits waiting requests that now fit.
+     *
+     * @param bytes the number of bytes to release
+     */
+    public void release(long bytes) {
+        lock.lock();
+        try {
+            inFlightBytes -= bytes;
+            admitWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes currently reserved.
+     *
+     * @return the in-flight byte count
+     */
+    public long getInFlightBytes() {
+        lock.lock();
+        try {
+            return inFlightBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for room in the budget.
+     *
+     * @return the queued request count
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how many bytes may be in flight at once.
+     *
+     * @return the byte limit
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Returns how many bytes each request reserves for its response.
+     *
+     * @return the response reservation in bytes
+     */
+    public long getResponseReservation() {
+        return responseReservation;
+    }
+
+    private boolean fits(long bytes) {
+        // A request larger than the whole budget runs on its own rather than never
+        return inFlightBytes == 0 || inFlightBytes + bytes <= maxInFlightBytes;
+    }
+
+    private void admitWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.peekFirst()) != null && fits(waiter.bytes)) {
+            waiters.pollFirst();
+            inFlightBytes += waiter.bytes;
+            waiter.admitted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private static final class Waiter {
+        private final long bytes;
+        private final Condition condition;
+        private boolean admitted;
+
+        Waiter(long bytes, Condition condition) {
+            this.bytes = bytes;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Builder for configuring ByteBudget instances.
+     */
+    public static class Builder {
+        private Mode mode = Mode.BLOCK;
+        private long maxInFlightBytes = 64L * 1024 * 1024;
+        private long responseReservation = 64 * 1024;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets what a request does when the budget has no room for it.
+         *
+         * @param mode the budget mode (default: {@link Mode#BLOCK})
+         * @return this builder instance
+         */
+        public Builder mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how many request and response bytes may be in memory at once.
+         *
+         * @param maxInFlightBytes the byte limit (default: 64 MiB)
+         * @return this builder instance
+         */
+        public Builder maxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        /**
+         * Sets how many bytes each request reserves for its response.
+         *
+         * @param responseReservation the response reservation in bytes (default: 64 KiB)
+         * @return this builder instance
+         */
+        public Builder responseReservation(long responseReservation) {
+            this.responseReservation = responseReservation;
+            return this;
+        }
+
+        /**
+         * Builds the ByteBudget instance.
+         *
+         * @return configured ByteBudget instance
+         * @throws IllegalArgumentException if the limit is less than 1 or the reservation is negative
+         */
+        public ByteBudget build() {
+            if (maxInFlightBytes < 1) {
+                throw new IllegalArgumentException("maxInFlightBytes must be at least 1");
+            }
+            if (responseReservation < 0) {
+                throw new IllegalArgumentException("responseReservation cannot be negative");
+            }
+            return new ByteBudget(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ByteBudget.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,80 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.MessageLite;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Deadline;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Applies a {@link ByteBudget} to gRPC calls.
+ *
+ * <p>Each request message reserves its serialized size plus the budget's response
+ * reservation before it is sent, waiting within the call's deadline if the budget is full,
+ * and the reservation is released when the call closes.
+ */
+final class ByteBudgetInterceptor implements ClientInterceptor {
+    // Marks a call that has closed, so reservations made after that are returned right away
+    private static final long CLOSED = -1;
+
+    private final ByteBudget byteBudget;
+
+    ByteBudgetInterceptor(ByteBudget byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        Deadline deadline = callOptions.getDeadline();
+        AtomicLong reservedBytes = new AtomicLong();
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        long bytes = reservedBytes.getAndSet(CLOSED);
+                        if (bytes > 0) {
+                            byteBudget.release(bytes);
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                long bytes = byteBudget.getResponseReservation();
+                if (message instanceof MessageLite request) {
+                    bytes += request.getSerializedSize();
+                }
+                long timeoutNanos = deadline != null ? deadline.timeRemaining(TimeUnit.NANOSECONDS) : Long.MAX_VALUE;
+                try {
+                    byteBudget.acquire(bytes, timeoutNanos);
+                } catch (SDKException e) {
+                    throw e.getStatus().withDescription(e.getMessage()).asRuntimeException();
+                }
+                // The call may have been closed, by its deadline for example, while this waited
+                long previous;
+                do {
+                    previous = reservedBytes.get();
+                    if (previous == CLOSED) {
+                        byteBudget.release(bytes);
+                        break;
+                    }
+                } while (!reservedBytes.compareAndSet(previous, previous + bytes));
+                super.sendMessage(message);
+            }
+        };
+    }
+}
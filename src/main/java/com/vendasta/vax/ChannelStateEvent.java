@@ -0,0 +1,27 @@
+package com.vendasta.vax;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a gRPC channel changing its connectivity state.
+ */
+@Name("com.vendasta.vax.ChannelState")
+@Label("VAX Channel State")
+@Category("VAX SDK")
+@Description("A gRPC channel changed its connectivity state")
+@StackTrace(false)
+final class ChannelStateEvent extends Event {
+    @Label("Target")
+    String target;
+
+    @Label("Previous State")
+    String previousState;
+
+    @Label("State")
+    String state;
+}
@@ -0,0 +1,171 @@
+package com.vendasta.vax;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+
+/**
+ * Follows a channel's connectivity state and reconnects it promptly after failures.
+ *
+ * <p>Every state change is recorded as a {@link ChannelStateEvent} and wakes callers waiting
+ * for the channel to become ready. When a connection attempt fails the channel is asked to
+ * reconnect after an exponential backoff capped at {@value #MAX_BACKOFF_MILLIS} ms, which is
+ * much shorter than gRPC's own, so a recovered backend is picked up quickly. The monitor
+ * stops once the channel is shut down.
+ */
+final class ChannelStateMonitor implements Runnable {
+    private static final long INITIAL_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final double BACKOFF_JITTER = 0.2;
+
+    private static final Map<ManagedChannel, ChannelStateMonitor> MONITORS = new ConcurrentHashMap<>();
+
+    private final ManagedChannel channel;
+    private final String target;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    private ConnectivityState state;
+    private Instant stateSince;
+    private Instant lastReady;
+    private int reconnectAttempts;
+    private ScheduledFuture<?> reconnect;
+
+    private ChannelStateMonitor(ManagedChannel channel, String target) {
+        this.channel = channel;
+        this.target = target;
+    }
+
+    static void watch(ManagedChannel channel, String target) {
+        ChannelStateMonitor monitor = new ChannelStateMonitor(channel, target);
+        monitor.state = channel.getState(false);
+        monitor.stateSince = Instant.now();
+        MONITORS.put(channel, monitor);
+        channel.notifyWhenStateChanged(monitor.state, monitor);
+    }
+
+    /**
+     * Returns the monitor of a channel created by {@link GRPCClient#newChannel}, or null if it
+     * has none or has been shut down.
+     */
+    static ChannelStateMonitor forChannel(ManagedChannel channel) {
+        return MONITORS.get(channel);
+    }
+
+    @Override
+    public void run() {
+        ConnectivityState previous;
+        ConnectivityState current = channel.getState(false);
+        lock.lock();
+        try {
+            previous = state;
+            state = current;
+            stateSince = Instant.now();
+            if (current == ConnectivityState.READY) {
+                lastReady = stateSince;
+                reconnectAttempts = 0;
+                cancelReconnect();
+            } else if (current == ConnectivityState.TRANSIENT_FAILURE && reconnect == null) {
+                scheduleReconnect();
+            } else if (current == ConnectivityState.SHUTDOWN) {
+                cancelReconnect();
+            }
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        ChannelStateEvent event = new ChannelStateEvent();
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.previousState = previous.name();
+            event.state = current.name();
+            event.commit();
+        }
+        if (current == ConnectivityState.SHUTDOWN) {
+            MONITORS.remove(channel, this);
+        } else {
+            channel.notifyWhenStateChanged(current, this);
+        }
+    }
+
+    private void scheduleReconnect() {
+        long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(reconnectAttempts, 16));
+        double jitter = 1 + BACKOFF_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        reconnect = VAXExecutors.scheduler().schedule(this::reconnect, (long) (backoffMillis * jitter), TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        lock.lock();
+        try {
+            reconnect = null;
+            // The channel stays in TRANSIENT_FAILURE while it retries, so there is no state
+            // change to wait for; keep nudging it until it connects or is shut down
+            if (channel.getState(false) == ConnectivityState.TRANSIENT_FAILURE) {
+                reconnectAttempts++;
+                channel.resetConnectBackoff();
+                scheduleReconnect();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancelReconnect() {
+        if (reconnect != null) {
+            reconnect.cancel(false);
+            reconnect = null;
+        }
+    }
+
+    /**
+     * Returns whether the channel is ready, asking it to connect if it is idle.
+     */
+    boolean isReady() {
+        return channel.getState(true) == ConnectivityState.READY;
+    }
+
+    /**
+     * Asks the channel to connect and waits until it is ready.
+     *
+     * @param timeoutNanos how long to wait
+     * @return true if the channel became ready in time, false if not or if it was shut down
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitReady(long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = timeoutNanos;
+            // The channel is polled as well, since the state may change before this monitor hears
+            // of it, and asked to connect again if it went idle in the meantime
+            while (channel.getState(true) != ConnectivityState.READY) {
+                if (state == ConnectivityState.SHUTDOWN || remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = stateChanged.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the channel's current connectivity.
+     */
+    ConnectivitySnapshot snapshot() {
+        lock.lock();
+        try {
+            return new ConnectivitySnapshot(target, state, stateSince, lastReady, reconnectAttempts);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
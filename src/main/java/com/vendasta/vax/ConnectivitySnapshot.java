@@ -0,0 +1,87 @@
+package com.vendasta.vax;
+
+import java.time.Instant;
+
+import io.grpc.ConnectivityState;
+
+/**
+ * A point-in-time view of a gRPC client's connection.
+ *
+ * <p>Obtained from {@link GRPCClient#getConnectivity()}. For clients that fail over between
+ * environments it describes the environment currently receiving calls.
+ */
+public final class ConnectivitySnapshot {
+    private final String target;
+    private final ConnectivityState state;
+    private final Instant stateSince;
+    private final Instant lastReady;
+    private final int reconnectAttempts;
+
+    ConnectivitySnapshot(String target, ConnectivityState state, Instant stateSince, Instant lastReady, int reconnectAttempts) {
+        this.target = target;
+        this.state = state;
+        this.stateSince = stateSince;
+        this.lastReady = lastReady;
+        this.reconnectAttempts = reconnectAttempts;
+    }
+
+    /**
+     * Returns the host the channel connects to.
+     *
+     * @return the target host
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the channel's connectivity state.
+     *
+     * @return the current state
+     */
+    public ConnectivityState getState() {
+        return state;
+    }
+
+    /**
+     * Returns whether calls can be sent without waiting for a connection.
+     *
+     * @return true if the channel is {@link ConnectivityState#READY}
+     */
+    public boolean isReady() {
+        return state == ConnectivityState.READY;
+    }
+
+    /**
+     * Returns when the channel entered its current state.
+     *
+     * @return the time of the last state change
+     */
+    public Instant getStateSince() {
+        return stateSince;
+    }
+
+    /**
+     * Returns when the channel was last connected.
+     *
+     * @return the last time the channel was ready, or null if it never was
+     */
+    public Instant getLastReady() {
+        return lastReady;
+    }
+
+    /**
+     * Returns how many times the channel has been asked to reconnect since it was last ready.
+     *
+     * @return the number of reconnect attempts
+     */
+    public int getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectivitySnapshot{target=" + target + ", state=" + state + ", stateSince=" + stateSince
+                + ", lastReady=" + lastReady + ", reconnectAttempts=" + reconnectAttempts + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Turns a per-stub timeout into a deadline when each call starts.
+ *
+ * <p>A deadline is an absolute point in time, so a stub configured with
+ * {@code withDeadlineAfter} can only be used for one call. Stubs carrying a
+ * {@link #TIMEOUT_NANOS} option instead can be built once and reused for every call.
+ */
+final class DeadlineInterceptor implements ClientInterceptor {
+    static final CallOptions.Key<Long> TIMEOUT_NANOS = CallOptions.Key.create("vax-timeout-nanos");
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        Long timeoutNanos = callOptions.getOption(TIMEOUT_NANOS);
+        if (timeoutNanos != null && callOptions.getDeadline() == null) {
+            callOptions = callOptions.withDeadlineAfter(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        return next.newCall(method, callOptions);
+    }
+}
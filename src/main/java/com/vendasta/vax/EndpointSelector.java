@@ -0,0 +1,251 @@
+package com.vendasta.vax;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Picks one of several equivalent endpoints for each request, favouring fast and healthy ones.
+ *
+ * <p>Every endpoint tracks a peak-sensitive, time-decayed moving average of its latency and
+ * the number of requests it has in flight. A request goes to the cheaper of two randomly
+ * chosen endpoints, where the cost is the average latency scaled by the load. Choosing
+ * between two random endpoints rather than always taking the best one keeps a single fast
+ * endpoint from being flooded the moment it looks good.
+ *
+ * <p>An endpoint that fails several requests in a row is ejected for a cooldown period.
+ * Afterwards it is tried again; if every endpoint is ejected, requests still go to one of
+ * them rather than failing outright.
+ *
+ * <p>In failover mode the endpoints are separate environments in order of preference
+ * instead of equivalent hosts. Every request then goes to the first environment a
+ * {@link FailoverRouter} considers healthy.
+ */
+final class EndpointSelector implements AutoCloseable {
+    // Latency observations lose half their weight about every 7 seconds (1/e after 10 seconds)
+    private static final double DECAY_NANOS = 10_000_000_000d;
+
+    private final Endpoint[] endpoints;
+    private final int maxConsecutiveErrors;
+    private final long ejectionNanos;
+    private final FailoverRouter router;
+
+    EndpointSelector(List<String> hosts, boolean secure, int maxConsecutiveErrors, long ejectionNanos) {
+        this.endpoints = new Endpoint[hosts.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new Endpoint(i, hosts.get(i), secure);
+        }
+        this.maxConsecutiveErrors = maxConsecutiveErrors;
+        this.ejectionNanos = ejectionNanos;
+        this.router = null;
+    }
+
+    /**
+     * Creates a selector that fails over between environments in order of preference.
+     *
+     * @param environments the environments, primary first
+     * @param policy how environments are probed
+     * @param probe checks one endpoint, see {@link FailoverRouter}
+     */
+    EndpointSelector(List<EnvironmentConfig> environments, FailoverPolicy policy, Function<Endpoint, CompletableFuture<Boolean>> probe) {
+        this.endpoints = new Endpoint[environments.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            EnvironmentConfig config = environments.get(i);
+            endpoints[i] = new Endpoint(i, config.getHost(), config.isSecure());
+        }
+        // The router decides about health, so endpoints are never ejected on their own
+        this.maxConsecutiveErrors = Integer.MAX_VALUE;
+        this.ejectionNanos = 0;
+        this.router = new FailoverRouter(endpoints.length, policy, i -> probe.apply(endpoints[i]));
+    }
+
+    /**
+     * Returns every endpoint, for example to warm all of them up.
+     */
+    List<Endpoint> getEndpoints() {
+        return List.of(endpoints);
+    }
+
+    /**
+     * Picks the endpoint for the next request.
+     *
+     * <p>The caller must report the outcome through {@link Endpoint#onSuccess(long)} or
+     * {@link Endpoint#onFailure()}.
+     */
+    Endpoint select() {
+        Endpoint selected;
+        if (router != null) {
+            router.start();
+            selected = endpoints[router.active()];
+        } else {
+            selected = endpoints.length == 1 ? endpoints[0] : choose(System.nanoTime());
+        }
+        selected.inFlight.incrementAndGet();
+        return selected;
+    }
+
+    /**
+     * Picks another environment to retry a request on after the given endpoint could not be
+     * reached, or returns null if there is none. Only applies in failover mode.
+     */
+    Endpoint fallback(Endpoint failed) {
+        int index = router != null ? router.fallback(failed.index) : -1;
+        if (index < 0) {
+            return null;
+        }
+        Endpoint selected = endpoints[index];
+        selected.inFlight.incrementAndGet();
+        return selected;
+    }
+
+    /**
+     * Starts health probing in failover mode, if it has not started yet. Probing also starts
+     * with the first {@link #select()}.
+     */
+    void startProbing() {
+        if (router != null) {
+            router.start();
+        }
+    }
+
+    /**
+     * Stops health probing in failover mode.
+     */
+    @Override
+    public void close() {
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    private Endpoint choose(long now) {
+        int healthy = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now)) {
+                healthy++;
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (healthy == 0) {
+            // Everything is ejected; trying something beats failing every request
+            return endpoints[random.nextInt(endpoints.length)];
+        }
+        if (healthy == 1) {
+            return healthyEndpoint(0, now);
+        }
+
+        int first = random.nextInt(healthy);
+        int second = random.nextInt(healthy - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = healthyEndpoint(first, now);
+        Endpoint b = healthyEndpoint(second, now);
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    private Endpoint healthyEndpoint(int index, long now) {
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now) && index-- == 0) {
+                return endpoint;
+            }
+        }
+        // An endpoint was ejected concurrently; any endpoint will do
+        return endpoints[0];
+    }
+
+    /**
+     * A single endpoint and its observed latency, load and health.
+     */
+    final class Endpoint {
+        private final int index;
+        private final String host;
+        private final boolean secure;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Request URLs for this endpoint, keyed by path
+        private final Map<String, URI> urls = new ConcurrentHashMap<>();
+        private double latencyNanos;
+        private long lastUpdateNanos;
+        private int consecutiveErrors;
+        private volatile long ejectedUntilNanos;
+
+        private Endpoint(int index, String host, boolean secure) {
+            this.index = index;
+            this.host = host;
+            this.secure = secure;
+            this.lastUpdateNanos = System.nanoTime();
+            this.ejectedUntilNanos = lastUpdateNanos;
+        }
+
+        String getHost() {
+            return host;
+        }
+
+        boolean isSecure() {
+            return secure;
+        }
+
+        Map<String, URI> getUrls() {
+            return urls;
+        }
+
+        /**
+         * Records a completed request and its latency.
+         */
+        void onSuccess(long elapsedNanos) {
+            inFlight.decrementAndGet();
+            long now = System.nanoTime();
+            synchronized (this) {
+                consecutiveErrors = 0;
+                if (elapsedNanos > latencyNanos) {
+                    // React to slowdowns immediately and forget them gradually
+                    latencyNanos = elapsedNanos;
+                } else {
+                    double weight = Math.exp(-(now - lastUpdateNanos) / DECAY_NANOS);
+                    latencyNanos = latencyNanos * weight + elapsedNanos * (1 - weight);
+                }
+                lastUpdateNanos = now;
+            }
+        }
+
+        /**
+         * Records a failed request, ejecting the endpoint after too many failures in a row.
+         */
+        void onFailure() {
+            inFlight.decrementAndGet();
+            if (router != null) {
+                router.onRequestFailure(index);
+                return;
+            }
+            synchronized (this) {
+                consecutiveErrors++;
+                if (consecutiveErrors >= maxConsecutiveErrors && endpoints.length > 1) {
+                    consecutiveErrors = 0;
+                    ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+                }
+            }
+        }
+
+        /**
+         * Releases the request slot without judging the endpoint, for example after throttling.
+         */
+        void onComplete() {
+            inFlight.decrementAndGet();
+        }
+
+        boolean isEjected(long now) {
+            return now - ejectedUntilNanos < 0;
+        }
+
+        private synchronized double cost(long now) {
+            // Unmeasured endpoints cost nothing, so they are probed early
+            double weight = Math.exp(-(now - lastUpdateNanos) / DECAY_NANOS);
+            return latencyNanos * weight * (inFlight.get() + 1);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.vendasta.vax;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+
+/**
+ * A channel that fails over between environments in order of preference.
+ *
+ * <p>Each environment has its own channel. Calls go to the first environment the
+ * {@link FailoverRouter} considers healthy, unless a call is pinned to an environment with
+ * {@link #TARGET}. Health is judged from each channel's connectivity state, so probing does
+ * not send any RPCs. Probing starts with the first call or the first request to connect, so
+ * constructing the channel builds no transport. Lifecycle methods apply to every channel.
+ */
+final class FailoverChannel extends ManagedChannel {
+    /**
+     * Pins a call to the environment with this index instead of the active one.
+     */
+    static final CallOptions.Key<Integer> TARGET = CallOptions.Key.create("vax-failover-target");
+
+    /**
+     * Records whether a call was handed to a transport, after which the server may have seen it.
+     */
+    static final CallOptions.Key<Dispatch> DISPATCH = CallOptions.Key.create("vax-failover-dispatch");
+
+    private final ManagedChannel[] channels;
+    private final FailoverRouter router;
+
+    FailoverChannel(List<EnvironmentConfig> environments, FailoverPolicy policy) {
+        this.channels = new ManagedChannel[environments.size()];
+        for (int i = 0; i < channels.length; i++) {
+            EnvironmentConfig config = environments.get(i);
+            channels[i] = GRPCClient.newChannel(config.getHost(), config.isSecure());
+        }
+        this.router = new FailoverRouter(channels.length, policy, this::probe);
+    }
+
+    private CompletableFuture<Boolean> probe(int target) {
+        ManagedChannel channel = channels[target];
+        switch (channel.getState(true)) {
+            case READY:
+                return CompletableFuture.completedFuture(true);
+            case TRANSIENT_FAILURE:
+                // Reconnect on the next probe rather than after the channel's own backoff,
+                // so a recovered environment is noticed promptly
+                channel.resetConnectBackoff();
+                return CompletableFuture.completedFuture(false);
+            case SHUTDOWN:
+                return CompletableFuture.completedFuture(false);
+            default:
+                // Idle channels start connecting now; the next probe sees the outcome
+                return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Returns the index of the environment that currently receives calls.
+     */
+    int active() {
+        return router.active();
+    }
+
+    /**
+     * Returns the preferred healthy environment other than the given one, or -1 if there is none.
+     */
+    int fallback(int failed) {
+        return router.fallback(failed);
+    }
+
+    /**
+     * Records a call that could not reach an environment.
+     */
+    void onFailure(int target) {
+        router.onRequestFailure(target);
+    }
+
+    /**
+     * Returns the connectivity of the environment that currently receives calls.
+     */
+    ConnectivitySnapshot connectivity() {
+        ManagedChannel channel = channels[router.active()];
+        ChannelStateMonitor monitor = ChannelStateMonitor.forChannel(channel);
+        return monitor != null ? monitor.snapshot() : GRPCClient.unmonitoredSnapshot(channel, authority());
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        Integer target = callOptions.getOption(TARGET);
+        Dispatch dispatch = callOptions.getOption(DISPATCH);
+        if (dispatch != null) {
+            callOptions = callOptions.withStreamTracerFactory(dispatch);
+        }
+        router.start();
+        return channels[target != null ? target : router.active()].newCall(method, callOptions);
+    }
+
+    @Override
+    public String authority() {
+        return channels[router.active()].authority();
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        if (requestConnection) {
+            router.start();
+        }
+        return channels[router.active()].getState(requestConnection);
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        channels[router.active()].notifyWhenStateChanged(source, callback);
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        for (ManagedChannel channel : channels) {
+            channel.resetConnectBackoff();
+        }
+    }
+
+    @Override
+    public void enterIdle() {
+        for (ManagedChannel channel : channels) {
+            channel.enterIdle();
+        }
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        router.close();
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        router.close();
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tracks whether any attempt of a call got a stream on a connected transport.
+     *
+     * <p>Calls that fail before that, because no connection could be established for
+     * example, never sent anything to the server and can be replayed elsewhere safely.
+     */
+    static final class Dispatch extends ClientStreamTracer.Factory {
+        private volatile boolean started;
+
+        /**
+         * Returns whether the call may have reached the server.
+         */
+        boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+            return new ClientStreamTracer() {
+                @Override
+                public void streamCreated(Attributes transportAttrs, Metadata headers) {
+                    started = true;
+                }
+            };
+        }
+    }
+}
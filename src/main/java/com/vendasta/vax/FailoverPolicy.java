@@ -0,0 +1,172 @@
+package com.vendasta.vax;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Health-probing settings for clients that fail over between several environments.
+ *
+ * <p>Every configured environment is probed in the background. An environment is marked
+ * unhealthy after {@code failureThreshold} failed probes in a row and healthy again after
+ * {@code recoveryThreshold} successful ones. Requests go to the first healthy environment
+ * in the configured order, so traffic returns to the primary only once it has been stable
+ * for a while.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * HTTPClient client = HTTPClient.builder()
+ *     .failover(List.of(primaryConfig, secondaryConfig))
+ *     .failoverPolicy(FailoverPolicy.builder()
+ *         .probeInterval(Duration.ofSeconds(2))
+ *         .recoveryThreshold(5)
+ *         .build())
+ *     .build();
+ * }</pre>
+ */
+public final class FailoverPolicy {
+    private static final FailoverPolicy DEFAULT = builder().build();
+
+    private final Duration probeInterval;
+    private final Duration probeTimeout;
+    private final int failureThreshold;
+    private final int recoveryThreshold;
+
+    private FailoverPolicy(Builder builder) {
+        this.probeInterval = builder.probeInterval;
+        this.probeTimeout = builder.probeTimeout;
+        this.failureThreshold = builder.failureThreshold;
+        this.recoveryThreshold = builder.recoveryThreshold;
+    }
+
+    /**
+     * Returns the policy used when none is configured.
+     *
+     * @return the default policy
+     */
+    public static FailoverPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns how often each environment is probed.
+     *
+     * @return the probe interval
+     */
+    public Duration getProbeInterval() {
+        return probeInterval;
+    }
+
+    /**
+     * Returns how long a probe may take before it counts as failed.
+     *
+     * @return the probe timeout
+     */
+    public Duration getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Returns how many failed probes in a row mark an environment unhealthy.
+     *
+     * @return the failure threshold
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Returns how many successful probes in a row mark an environment healthy again.
+     *
+     * @return the recovery threshold
+     */
+    public int getRecoveryThreshold() {
+        return recoveryThreshold;
+    }
+
+    /**
+     * Builder for configuring FailoverPolicy instances.
+     */
+    public static class Builder {
+        private Duration probeInterval = Duration.ofSeconds(5);
+        private Duration probeTimeout = Duration.ofSeconds(2);
+        private int failureThreshold = 2;
+        private int recoveryThreshold = 3;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets how often each environment is probed.
+         *
+         * @param probeInterval the probe interval (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder probeInterval(Duration probeInterval) {
+            this.probeInterval = Objects.requireNonNull(probeInterval, "Probe interval cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long a probe may take before it counts as failed.
+         *
+         * @param probeTimeout the probe timeout (default: 2 seconds)
+         * @return this builder instance
+         */
+        public Builder probeTimeout(Duration probeTimeout) {
+            this.probeTimeout = Objects.requireNonNull(probeTimeout, "Probe timeout cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how many failed probes in a row mark an environment unhealthy.
+         *
+         * @param failureThreshold the failure threshold (default: 2)
+         * @return this builder instance
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how many successful probes in a row mark an environment healthy again.
+         *
+         * @param recoveryThreshold the recovery threshold (default: 3)
+         * @return this builder instance
+         */
+        public Builder recoveryThreshold(int recoveryThreshold) {
+            this.recoveryThreshold = recoveryThreshold;
+            return this;
+        }
+
+        /**
+         * Builds the FailoverPolicy instance.
+         *
+         * @return configured FailoverPolicy instance
+         * @throws IllegalArgumentException if the configuration is invalid
+         */
+        public FailoverPolicy build() {
+            if (probeInterval.isNegative() || probeInterval.isZero()) {
+                throw new IllegalArgumentException("probeInterval must be positive");
+            }
+            if (probeTimeout.isNegative() || probeTimeout.isZero()) {
+                throw new IllegalArgumentException("probeTimeout must be positive");
+            }
+            if (failureThreshold < 1 || recoveryThreshold < 1) {
+                throw new IllegalArgumentException("Thresholds must be at least 1");
+            }
+            return new FailoverPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for FailoverPolicy.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,152 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Tracks the health of an ordered list of targets and decides which one receives traffic.
+ *
+ * <p>Targets are probed in the background according to a {@link FailoverPolicy}, so requests
+ * never wait for a dead target to time out before traffic moves. Traffic goes to the first
+ * healthy target in order; if none is healthy it stays where it is. Failed requests count as
+ * failed probes, so a target that drops connections is noticed before its next probe.
+ *
+ * <p>Probing starts with {@link #start()}, which clients call on their first request or
+ * warm-up, so constructing a client does not touch the network.
+ */
+final class FailoverRouter implements AutoCloseable {
+    private final FailoverPolicy policy;
+    private final IntFunction<CompletableFuture<Boolean>> probe;
+    private final Health[] health;
+    private volatile boolean started;
+    private ScheduledFuture<?> probes;
+    private volatile int active;
+
+    /**
+     * Creates a router. Targets are not probed until {@link #start()} is called.
+     *
+     * @param targets the number of targets, in order of preference
+     * @param policy the probing policy
+     * @param probe checks one target; completes with true if healthy, false if not,
+     *              or null if the result is inconclusive
+     */
+    FailoverRouter(int targets, FailoverPolicy policy, IntFunction<CompletableFuture<Boolean>> probe) {
+        this.policy = policy;
+        this.probe = probe;
+        this.health = new Health[targets];
+        for (int i = 0; i < targets; i++) {
+            health[i] = new Health();
+        }
+    }
+
+    /**
+     * Starts probing in the background, unless it has already started or the router is closed.
+     */
+    void start() {
+        if (started) {
+            return;
+        }
+        synchronized (this) {
+            if (!started) {
+                started = true;
+                long intervalNanos = policy.getProbeInterval().toNanos();
+                probes = VAXExecutors.scheduler().scheduleWithFixedDelay(this::probeAll, 0, intervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Returns the target that should receive traffic.
+     */
+    int active() {
+        return active;
+    }
+
+    /**
+     * Returns the preferred healthy target other than the given one, or -1 if there is none.
+     */
+    int fallback(int failed) {
+        for (int i = 0; i < health.length; i++) {
+            if (i != failed && health[i].healthy) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a request that could not reach a target.
+     */
+    void onRequestFailure(int target) {
+        record(target, false);
+    }
+
+    boolean isHealthy(int target) {
+        return health[target].healthy;
+    }
+
+    private void probeAll() {
+        for (int i = 0; i < health.length; i++) {
+            int target = i;
+            CompletableFuture<Boolean> result;
+            try {
+                result = probe.apply(target);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.completedFuture(false);
+            }
+            result.orTimeout(policy.getProbeTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((healthy, error) -> {
+                    if (error != null) {
+                        record(target, false);
+                    } else if (healthy != null) {
+                        record(target, healthy);
+                    }
+                });
+        }
+    }
+
+    private synchronized void record(int target, boolean success) {
+        Health state = health[target];
+        if (success) {
+            state.failures = 0;
+            if (!state.healthy && ++state.successes >= policy.getRecoveryThreshold()) {
+                state.healthy = true;
+                state.successes = 0;
+            }
+        } else {
+            state.successes = 0;
+            if (state.healthy && ++state.failures >= policy.getFailureThreshold()) {
+                state.healthy = false;
+                state.failures = 0;
+            }
+        }
+
+        for (int i = 0; i < health.length; i++) {
+            if (health[i].healthy) {
+                active = i;
+                return;
+            }
+        }
+        // Nothing is healthy: keep sending to the current target rather than flapping
+    }
+
+    /**
+     * Stops probing, or prevents it from starting.
+     */
+    @Override
+    public synchronized void close() {
+        started = true;
+        if (probes != null) {
+            probes.cancel(false);
+        }
+    }
+
+    private static final class Health {
+        // Targets start out healthy so traffic flows to the primary straight away
+        private volatile boolean healthy = true;
+        private int failures;
+        private int successes;
+    }
+}
@@ -0,0 +1,252 @@
+package com.vendasta.vax;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Objects;
+
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * File-backed cache of access tokens shared between processes on the same host.
+ *
+ * <p>Each service account gets its own file holding the raw access token. The token is a
+ * JWT, so its expiry is read from the embedded {@code exp} claim rather than stored
+ * separately. Writes go to a temporary file that atomically replaces the previous token,
+ * so readers never observe a partial write, and refreshes are serialized across processes
+ * with a lock file so that a fleet of workers starting together fetches a single token.
+ *
+ * <p>Cached tokens are only handed out while they remain valid for at least the
+ * configured minimum validity. On POSIX file systems the cache files are readable by the
+ * owner only.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * VAXCredentialsRegistry registry = VAXCredentialsRegistry.builder()
+ *     .tokenCache(FileTokenCache.create(Path.of("/var/cache/vax")))
+ *     .build();
+ * }</pre>
+ *
+ * <p>The default registry uses a cache in the directory named by the
+ * {@code VENDASTA_TOKEN_CACHE_DIR} environment variable when it is set.
+ */
+public final class FileTokenCache {
+    private static final Duration DEFAULT_MIN_VALIDITY = Duration.ofSeconds(60);
+    private static final String TOKEN_SUFFIX = ".token";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private final Path directory;
+    private final Duration minValidity;
+
+    private FileTokenCache(Path directory, Duration minValidity) {
+        this.directory = directory;
+        this.minValidity = minValidity;
+    }
+
+    /**
+     * Creates a token cache in the given directory, creating the directory if needed.
+     *
+     * @param directory the directory that holds the cache files
+     * @return the token cache
+     * @throws SDKException if the directory cannot be created
+     */
+    public static FileTokenCache create(Path directory) throws SDKException {
+        return create(directory, DEFAULT_MIN_VALIDITY);
+    }
+
+    /**
+     * Creates a token cache in the given directory, creating the directory if needed.
+     *
+     * @param directory the directory that holds the cache files
+     * @param minValidity how long a cached token must remain valid to be used (default: 60 seconds)
+     * @return the token cache
+     * @throws SDKException if the directory cannot be created
+     */
+    public static FileTokenCache create(Path directory, Duration minValidity) throws SDKException {
+        Objects.requireNonNull(directory, "Directory cannot be null");
+        Objects.requireNonNull(minValidity, "Minimum validity cannot be null");
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SDKException("Could not create token cache directory: " + e.getMessage(), e);
+        }
+        return new FileTokenCache(directory, minValidity);
+    }
+
+    static FileTokenCache fromEnvironment() {
+        String cacheDir = System.getenv("VENDASTA_TOKEN_CACHE_DIR");
+        if (cacheDir == null || cacheDir.isBlank()) {
+            return null;
+        }
+        try {
+            return create(Path.of(cacheDir));
+        } catch (RuntimeException e) {
+            // The cache is an optimization, so a bad directory must not prevent startup
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached token for an account if it is still valid.
+     *
+     * @param email the service account email
+     * @param privateKeyID the service account key identifier
+     * @param tokenURI the token endpoint the account's tokens come from
+     * @return the cached token, or null if none is cached or it is about to expire
+     */
+    CachedToken read(String email, String privateKeyID, String tokenURI) {
+        Path file = directory.resolve(fileName(email, privateKeyID, tokenURI) + TOKEN_SUFFIX);
+        String token;
+        try {
+            token = Files.readString(file, StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            // A missing or unreadable file simply means there is no cached token
+            return null;
+        }
+
+        Date expiry;
+        try {
+            expiry = SignedJWT.parse(token).getJWTClaimsSet().getExpirationTime();
+        } catch (Exception e) {
+            return null;
+        }
+        if (expiry == null || expiry.getTime() - System.currentTimeMillis() < minValidity.toMillis()) {
+            return null;
+        }
+        return new CachedToken(token, expiry);
+    }
+
+    /**
+     * Stores the token for an account, atomically replacing any previous one.
+     *
+     * <p>Failures are ignored; the cache only ever saves a token request.
+     *
+     * @param email the service account email
+     * @param privateKeyID the service account key identifier
+     * @param tokenURI the token endpoint the account's tokens come from
+     * @param token the raw access token
+     */
+    void write(String email, String privateKeyID, String tokenURI, String token) {
+        String name = fileName(email, privateKeyID, tokenURI);
+        Path tmp = null;
+        try {
+            tmp = createPrivateFile(directory.resolve(name + "." + ProcessHandle.current().pid() + "." + System.nanoTime() + ".tmp"));
+            Files.writeString(tmp, token, StandardCharsets.US_ASCII);
+            Path target = directory.resolve(name + TOKEN_SUFFIX);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            // Ignore, the next refresh will try again
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Best effort cleanup
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the cross-process refresh lock for an account, blocking until it is available.
+     *
+     * @param email the service account email
+     * @param privateKeyID the service account key identifier
+     * @param tokenURI the token endpoint the account's tokens come from
+     * @return the held lock, to be closed once the refresh is complete
+     */
+    RefreshLock lock(String email, String privateKeyID, String tokenURI) {
+        Path lockFile = directory.resolve(fileName(email, privateKeyID, tokenURI) + LOCK_SUFFIX);
+        FileChannel channel = null;
+        try {
+            try {
+                createPrivateFile(lockFile);
+            } catch (FileAlreadyExistsException e) {
+                // Lock files are never deleted so they can be shared between processes
+            }
+            channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+            FileLock lock = channel.lock();
+            return new RefreshLock(channel, lock);
+        } catch (IOException | OverlappingFileLockException e) {
+            // Fall back to refreshing without coordinating with other processes
+            closeQuietly(channel);
+            return new RefreshLock(null, null);
+        }
+    }
+
+    private static Path createPrivateFile(Path file) throws IOException {
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return Files.createFile(file);
+    }
+
+    private static String fileName(String email, String privateKeyID, String tokenURI) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((email + "\n" + privateKeyID + "\n" + tokenURI).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * A token read from the cache together with its expiry.
+     */
+    record CachedToken(String token, Date expiry) {}
+
+    /**
+     * A held cross-process refresh lock.
+     */
+    static final class RefreshLock implements AutoCloseable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private RefreshLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            if (lock != null) {
+                try {
+                    lock.release();
+                } catch (IOException ignored) {
+                    // Closing the channel releases the lock as well
+                }
+            }
+            closeQuietly(channel);
+        }
+    }
+}
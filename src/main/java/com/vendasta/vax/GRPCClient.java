@@ -1,12 +1,29 @@
 package com.vendasta.vax;
 
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 
 /**
  * Abstract gRPC client for making gRPC requests to VAX services.
@@ -23,38 +40,93 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
     private static final int INSECURE_PORT = 80;
     private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
     private static final long DEFAULT_TIMEOUT_MINUTES = 10;
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final SDKException CLIENT_CLOSED = SDKException.preallocated("gRPC client has been closed", Status.Code.UNAVAILABLE);
+    // Bounds the stub cache for clients that use many distinct timeouts
+    private static final int MAX_CONFIGURED_STUBS = 64;
     
     private final String host;
     private final boolean secure;
     private final VAXCredentials credentialsManager;
-    private ManagedChannel channel;
+    private final SharedResource<ManagedChannel> sharedChannel;
+    private final RateLimiter rateLimiter;
+    private final ByteBudget byteBudget;
+    private final Duration shutdownGracePeriod;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final ConcurrentHashMap<RequestOptions, T> configuredStubs = new ConcurrentHashMap<>();
+    private final List<EnvironmentConfig> failover;
+    private final FailoverPolicy failoverPolicy;
+    private final FailoverChannel failoverChannel;
+    private final ManagedChannel channel;
+    private final ReadinessPolicy readinessPolicy;
+    private final ChannelStateMonitor readinessMonitor;
+    private final boolean lightweightErrors;
     /**
      * The configured gRPC blocking stub for making synchronous calls.
+     * 
+     * <p>Set once during construction, so it is safe to read from any thread.
      */
-    protected T blockingStub;
+    protected final T blockingStub;
+    private volatile CompletableFuture<Void> warmUpFuture;
 
     // Protected constructor used by Builder and subclasses
     protected GRPCClient(Builder builder) throws SDKException {
-        super(builder.defaultTimeout);
-        this.host = Objects.requireNonNull(builder.host, "Host cannot be null");
-        if (builder.host.trim().isEmpty()) {
-            throw new SDKException("Host cannot be empty");
+        super(builder.defaultTimeout, builder.priorityScheduler);
+        this.failover = List.copyOf(builder.failover);
+        this.failoverPolicy = builder.failoverPolicy;
+        if (failover.isEmpty()) {
+            this.host = Objects.requireNonNull(builder.host, "Host cannot be null");
+            if (builder.host.trim().isEmpty()) {
+                throw new SDKException("Host cannot be empty");
+            }
+        } else {
+            this.host = failover.get(0).getHost();
         }
         this.secure = builder.secure;
+        // Failover clients own one channel per environment and never share them
+        this.sharedChannel = builder.sharedChannel != null && failover.isEmpty() ? builder.sharedChannel.retain() : null;
+        this.rateLimiter = builder.rateLimiter;
+        this.byteBudget = builder.byteBudget;
+        this.shutdownGracePeriod = builder.shutdownGracePeriod;
+        this.readinessPolicy = builder.readinessPolicy;
+        this.lightweightErrors = builder.lightweightErrors;
+        // Waiting for a dead environment would hide the outage from failover, so failover clients always fail fast
+        boolean waitForReady = failover.isEmpty() && readinessPolicy.getMode() == ReadinessPolicy.Mode.WAIT_FOR_READY;
         
+        FailoverChannel failoverChannel = null;
+        ManagedChannel channel = null;
         try {
             // Initialize credentials based on what was provided
-            if (builder.credentials != null) {
-                this.credentialsManager = new VAXCredentials(builder.credentials);
+            if (builder.vaxCredentials != null) {
+                this.credentialsManager = builder.vaxCredentials;
+            } else if (builder.credentials != null) {
+                this.credentialsManager = new VAXCredentials(builder.credentials, builder.credentialsRegistry);
             } else if (builder.serviceAccount != null) {
-                this.credentialsManager = new VAXCredentials(builder.serviceAccount);
+                this.credentialsManager = new VAXCredentials(builder.serviceAccount, builder.credentialsRegistry);
+            } else {
+                this.credentialsManager = new VAXCredentials(builder.credentialsRegistry);
+            }
+            if (!this.failover.isEmpty()) {
+                failoverChannel = new FailoverChannel(this.failover, this.failoverPolicy);
+                channel = failoverChannel;
             } else {
-                this.credentialsManager = new VAXCredentials();
+                channel = this.sharedChannel != null ? this.sharedChannel.get() : newChannel(this.host, this.secure);
             }
-            this.initializeChannel();
+            this.blockingStub = this.initializeStub(channel, waitForReady);
         } catch (Exception e) {
+            if (this.sharedChannel != null) {
+                this.sharedChannel.release();
+            } else if (channel != null) {
+                // The client never became usable, so nothing is waiting on the channel
+                channel.shutdownNow();
+            }
             throw new SDKException("Failed to initialize gRPC client: " + e.getMessage(), e);
         }
+        // Final fields, so every thread sees the fully built channel and stub
+        this.failoverChannel = failoverChannel;
+        this.channel = channel;
+        this.readinessMonitor = waitForReady ? ChannelStateMonitor.forChannel(channel) : null;
     }
 
 
@@ -70,6 +142,18 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
         private float defaultTimeout = 10000; // Default timeout
         private VAXCredentials.Credentials credentials;
         private InputStream serviceAccount;
+        private VAXCredentialsRegistry credentialsRegistry = VAXCredentialsRegistry.getDefault();
+        private boolean warmUpOnBuild;
+        private VAXCredentials vaxCredentials;
+        private SharedResource<ManagedChannel> sharedChannel;
+        private RateLimiter rateLimiter;
+        private Duration shutdownGracePeriod = Duration.ofSeconds(SHUTDOWN_TIMEOUT_SECONDS);
+        private final List<EnvironmentConfig> failover = new ArrayList<>();
+        private FailoverPolicy failoverPolicy = FailoverPolicy.getDefault();
+        private PriorityScheduler priorityScheduler;
+        private ReadinessPolicy readinessPolicy = ReadinessPolicy.getDefault();
+        private boolean lightweightErrors;
+        private ByteBudget byteBudget;
         
         /**
          * Creates a new builder instance.
@@ -79,6 +163,9 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
         /**
          * Sets the hostname for the gRPC client.
          * 
+         * <p>The port defaults to 443 for secure and 80 for insecure connections and can be
+         * overridden with a {@code host:port} value.
+         * 
          * @param host the hostname (required)
          * @return this builder instance
          */
@@ -133,6 +220,166 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
             return this;
         }
 
+        /**
+         * Sets the registry used to share credentials and tokens between clients.
+         * 
+         * <p>Clients using the same registry and service account share one access token.
+         * 
+         * @param credentialsRegistry the credentials registry (default: {@link VAXCredentialsRegistry#getDefault()})
+         * @return this builder instance
+         */
+        public Builder credentialsRegistry(VAXCredentialsRegistry credentialsRegistry) {
+            this.credentialsRegistry = Objects.requireNonNull(credentialsRegistry, "Credentials registry cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets whether to start warming up the client as soon as it is built.
+         * 
+         * <p>Building does not wait for the warm-up; use {@link GRPCClient#warmUp()} to
+         * obtain its result. This applies to clients created by {@link #build()}; subclasses
+         * constructed from a builder call {@link GRPCClient#warmUp()} themselves once they are
+         * fully constructed.
+         * 
+         * @param warmUpOnBuild true to start warming up on build (default: false)
+         * @return this builder instance
+         */
+        public Builder warmUpOnBuild(boolean warmUpOnBuild) {
+            this.warmUpOnBuild = warmUpOnBuild;
+            return this;
+        }
+
+        /**
+         * Sets a client-side rate limiter applied per gRPC method.
+         * 
+         * <p>The limiter is told about {@code RESOURCE_EXHAUSTED} responses and
+         * {@code grpc-retry-pushback-ms} trailers so it can back off as the server asks.
+         * 
+         * @param rateLimiter the rate limiter, or null to disable rate limiting (default: null)
+         * @return this builder instance
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that admits requests by their {@link RequestOptions.Priority}.
+         * 
+         * <p>Without a scheduler requests are sent as soon as they are made. Sharing one
+         * scheduler between clients bounds their combined concurrency.
+         * 
+         * @param priorityScheduler the scheduler, or null to disable scheduling (default: null)
+         * @return this builder instance
+         */
+        public Builder priorityScheduler(PriorityScheduler priorityScheduler) {
+            this.priorityScheduler = priorityScheduler;
+            return this;
+        }
+
+        /**
+         * Sets how long {@link GRPCClient#shutdown()} waits for in-flight calls before cancelling them.
+         * 
+         * @param shutdownGracePeriod the grace period (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder shutdownGracePeriod(Duration shutdownGracePeriod) {
+            this.shutdownGracePeriod = Objects.requireNonNull(shutdownGracePeriod, "Shutdown grace period cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets environments to fail over between, replacing {@link #host(String)} and {@link #secure(boolean)}.
+         * 
+         * <p>Calls go to the first environment in the list that is healthy. Each environment
+         * gets its own channel whose connectivity is probed in the background from the first call
+         * or warm-up on, so an outage is detected without calls timing out first.
+         * 
+         * <p>A call failing with {@code UNAVAILABLE} is retried once on the next healthy
+         * environment, within its original deadline, if it never reached the server: no
+         * connection to the environment could be used, so nothing was sent. Calls that failed
+         * after they were sent, for example because the connection was reset mid-call or the
+         * server itself returned {@code UNAVAILABLE}, may already have been processed and are
+         * only retried if marked with {@link RequestOptions.Builder#setIdempotent(boolean)}.
+         * 
+         * @param environments the environments, primary first
+         * @return this builder instance
+         * @see FailoverPolicy
+         */
+        public Builder failover(List<EnvironmentConfig> environments) {
+            Objects.requireNonNull(environments, "Environments cannot be null");
+            this.failover.clear();
+            this.failover.addAll(environments);
+            return this;
+        }
+
+        /**
+         * Sets how environments configured with {@link #failover(List)} are probed.
+         * 
+         * @param failoverPolicy the failover policy (default: {@link FailoverPolicy#getDefault()})
+         * @return this builder instance
+         */
+        public Builder failoverPolicy(FailoverPolicy failoverPolicy) {
+            this.failoverPolicy = Objects.requireNonNull(failoverPolicy, "Failover policy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets what calls do while the channel is not connected.
+         * 
+         * <p>Calls either fail fast with {@code UNAVAILABLE} or wait a bounded time for the
+         * channel to connect. Clients configured with {@link #failover(List)} always fail fast.
+         * 
+         * @param readinessPolicy the readiness policy (default: {@link ReadinessPolicy#getDefault()})
+         * @return this builder instance
+         */
+        public Builder readinessPolicy(ReadinessPolicy readinessPolicy) {
+            this.readinessPolicy = Objects.requireNonNull(readinessPolicy, "Readiness policy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets whether expected failures are reported with lightweight exceptions.
+         * 
+         * <p>When enabled, calls failing with {@code UNAVAILABLE}, {@code DEADLINE_EXCEEDED} or
+         * {@code RESOURCE_EXHAUSTED} throw {@link SDKException}s without a stack trace whose
+         * message is only formatted when it is read, and calls on a closed client throw a
+         * shared instance. The status, and the underlying gRPC exception, are kept.
+         * 
+         * @param lightweightErrors true to use lightweight exceptions (default: false)
+         * @return this builder instance
+         */
+        public Builder lightweightErrors(boolean lightweightErrors) {
+            this.lightweightErrors = lightweightErrors;
+            return this;
+        }
+
+        /**
+         * Sets the budget bounding how many request and response bytes are in memory at once.
+         * 
+         * <p>Each request message reserves its serialized size plus the budget's response
+         * reservation before it is sent, and releases it when the call completes. Time spent
+         * waiting for the budget counts against the call's deadline. Sharing one budget
+         * between clients bounds their combined memory use.
+         * 
+         * @param byteBudget the budget, or null to disable the limit (default: null)
+         * @return this builder instance
+         */
+        public Builder byteBudget(ByteBudget byteBudget) {
+            this.byteBudget = byteBudget;
+            return this;
+        }
+
+        Builder vaxCredentials(VAXCredentials vaxCredentials) {
+            this.vaxCredentials = vaxCredentials;
+            return this;
+        }
+
+        Builder sharedChannel(SharedResource<ManagedChannel> sharedChannel) {
+            this.sharedChannel = sharedChannel;
+            return this;
+        }
+
         /**
          * Builds the GRPCClient instance.
          * 
@@ -141,16 +388,24 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
          * @throws SDKException if configuration is invalid
          */
         public <T extends io.grpc.stub.AbstractStub<T>> GRPCClient<T> build() throws SDKException {
-            if (host == null || host.trim().isEmpty()) {
+            if (failover.contains(null)) {
+                throw new SDKException("Failover environments cannot be null");
+            }
+            if (failover.isEmpty() && (host == null || host.trim().isEmpty())) {
                 throw new SDKException("Host cannot be null or empty");
             }
-            return new GRPCClient<T>(this) {
+            GRPCClient<T> client = new GRPCClient<T>(this) {
                 @Override
                 protected T newBlockingStub(ManagedChannel channel) {
                     // This will be implemented by concrete subclasses
                     throw new UnsupportedOperationException("newBlockingStub must be implemented by subclass");
                 }
             };
+            // Started only once the client is fully constructed
+            if (warmUpOnBuild) {
+                client.warmUp();
+            }
+            return client;
         }
     }
 
@@ -163,14 +418,132 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
         return new Builder();
     }
 
-    private void initializeChannel() {
-        int port = this.secure ? SECURE_PORT : INSECURE_PORT;
-        this.channel = ManagedChannelBuilder.forAddress(this.host, port).build();
+    static ManagedChannel newChannel(String host, boolean secure) {
+        String address = host;
+        int port = secure ? SECURE_PORT : INSECURE_PORT;
+        // Allow an explicit port such as "localhost:8443", but leave bare IPv6 addresses alone
+        int colon = host.lastIndexOf(':');
+        if (colon > 0 && host.indexOf(':') == colon) {
+            try {
+                port = Integer.parseInt(host.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new SDKException("Invalid port in host: " + host, e);
+            }
+            address = host.substring(0, colon);
+        }
+
+        String channelAddress = address;
+        int channelPort = port;
+        // The same authority the real channel derives from the address and port
+        String authority = (address.indexOf(':') >= 0 ? "[" + address + "]" : address) + ":" + port;
+        // The transport is only loaded and built once the channel is first used
+        ManagedChannel channel = new LazyChannel(authority, () -> {
+            ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(channelAddress, channelPort);
+            if (!secure) {
+                channelBuilder.usePlaintext();
+            }
+            return channelBuilder.build();
+        });
+        ChannelStateMonitor.watch(channel, host);
+        return channel;
+    }
+
+    private T initializeStub(ManagedChannel channel, boolean waitForReady) {
         T stub = this.newBlockingStub(channel);
         if (stub == null) {
             throw new IllegalStateException("newBlockingStub() returned null");
         }
-        this.blockingStub = stub.withWaitForReady();
+        if (waitForReady) {
+            stub = stub.withWaitForReady();
+        }
+        if (this.byteBudget != null) {
+            stub = stub.withInterceptors(new ByteBudgetInterceptor(this.byteBudget));
+        }
+        if (this.rateLimiter != null) {
+            stub = stub.withInterceptors(new RateLimitInterceptor(this.rateLimiter));
+        }
+        stub = stub.withInterceptors(new RequestEventInterceptor());
+        // Outermost, so the deadline covers time spent waiting in the other interceptors
+        return stub.withInterceptors(new DeadlineInterceptor());
+    }
+
+    /**
+     * Prepares the client for traffic by fetching an access token and connecting the channel.
+     * 
+     * <p>The warm-up runs in the background and is only performed once; later calls return
+     * the same future unless the previous attempt failed. The channel is asked to connect
+     * immediately and the future completes once it reaches {@link ConnectivityState#READY},
+     * so it can be used to gate readiness probes. Combine it with
+     * {@link CompletableFuture#orTimeout} to bound the wait.
+     * 
+     * @return a future that completes when the client is ready, or completes exceptionally
+     *         with an {@link SDKException} if the token could not be fetched or the channel
+     *         was shut down
+     */
+    public CompletableFuture<Void> warmUp() {
+        CompletableFuture<Void> future = warmUpFuture;
+        if (future == null || future.isCompletedExceptionally()) {
+            synchronized (this) {
+                future = warmUpFuture;
+                if (future == null || future.isCompletedExceptionally()) {
+                    future = warmUp(List.of());
+                    warmUpFuture = future;
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Prepares the client for traffic and additionally runs protobuf round trips of the
+     * given sample messages so their serialization code is compiled before real requests arrive.
+     * 
+     * @param samples representative request or response messages
+     * @return a future that completes when the client is ready
+     */
+    public CompletableFuture<Void> warmUp(Collection<? extends MessageLite> samples) {
+        Objects.requireNonNull(samples, "Samples cannot be null");
+
+        CompletableFuture<Void> token = credentialsManager.prefetchToken();
+
+        CompletableFuture<Void> connection = new CompletableFuture<>();
+        awaitReady(connection);
+
+        CompletableFuture<Void> serialization = samples.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                        for (MessageLite sample : samples) {
+                            try {
+                                sample.getParserForType().parseFrom(sample.toByteString());
+                            } catch (InvalidProtocolBufferException e) {
+                                throw new SDKException("Failed to parse warm-up sample: " + e.getMessage(), e);
+                            }
+                        }
+                    }
+                }, VAXExecutors.shared());
+
+        return CompletableFuture.allOf(token, connection, serialization)
+                .exceptionallyCompose(GRPCClient::warmUpFailure);
+    }
+
+    private void awaitReady(CompletableFuture<Void> ready) {
+        ConnectivityState state = channel.getState(true);
+        if (state == ConnectivityState.READY) {
+            ready.complete(null);
+        } else if (state == ConnectivityState.SHUTDOWN) {
+            ready.completeExceptionally(new SDKException("Channel was shut down before it became ready"));
+        } else {
+            channel.notifyWhenStateChanged(state, () -> awaitReady(ready));
+        }
+    }
+
+    private static CompletableFuture<Void> warmUpFailure(Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof SDKException) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        return CompletableFuture.failedFuture(new SDKException("Warm-up failed: " + cause, cause));
     }
 
     @Override
@@ -181,17 +554,54 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
     /**
      * Shuts down the gRPC channel.
      * 
-     * @throws SDKException if shutdown fails or is interrupted
+     * <p>New calls are rejected right away. Calls already in flight may complete within the
+     * configured shutdown grace period; any still running after it are cancelled. A channel
+     * shared with other clients is only shut down once the last of them is closed.
+     * 
+     * @throws SDKException if shutdown is interrupted
      */
     public void shutdown() throws SDKException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (this.sharedChannel != null) {
+            // Shared channels are shut down once the last client using them is closed
+            this.sharedChannel.release();
+            return;
+        }
         if (this.channel != null && !this.channel.isShutdown()) {
-            try {
-                this.channel.shutdown().awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new SDKException("Channel shutdown was interrupted: " + e.getMessage(), e);
-            }
+            Lifecycle.shutdownGracefully(this.channel, this.shutdownGracePeriod);
+        }
+    }
+
+    /**
+     * Returns the current state of the client's connection.
+     * 
+     * <p>For clients that fail over between environments this describes the environment
+     * currently receiving calls.
+     * 
+     * @return a snapshot of the channel's connectivity
+     */
+    public ConnectivitySnapshot getConnectivity() {
+        if (failoverChannel != null) {
+            return failoverChannel.connectivity();
         }
+        ChannelStateMonitor monitor = ChannelStateMonitor.forChannel(channel);
+        return monitor != null ? monitor.snapshot() : unmonitoredSnapshot(channel, host);
+    }
+
+    static ConnectivitySnapshot unmonitoredSnapshot(ManagedChannel channel, String target) {
+        // Monitors are dropped once a channel is shut down
+        return new ConnectivitySnapshot(target, channel.getState(false), null, null, 0);
+    }
+
+    /**
+     * Returns the number of calls this client currently has in flight.
+     * 
+     * @return the in-flight call count
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
     }
 
     /**
@@ -206,20 +616,39 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
     protected abstract T newBlockingStub(ManagedChannel channel);
 
     /**
-     * Configures a stub with timeout and credentials based on request options
+     * Returns a stub configured with the timeout and credentials of the request options.
+     * 
+     * <p>Configured stubs are cached per distinct options, so calls do not build new stubs.
      */
-    private T configureStub(RequestOptions options) {
+    T configureStub(RequestOptions options) {
         Objects.requireNonNull(options, "Request options cannot be null");
         Objects.requireNonNull(blockingStub, "Blocking stub has not been initialized");
-        
-        T stub;
+
+        T stub = configuredStubs.get(options);
+        if (stub == null) {
+            stub = newConfiguredStub(options);
+            if (configuredStubs.size() < MAX_CONFIGURED_STUBS) {
+                T existing = configuredStubs.putIfAbsent(options, stub);
+                if (existing != null) {
+                    stub = existing;
+                }
+            }
+        }
+        return stub;
+    }
+
+    private T newConfiguredStub(RequestOptions options) {
+        long timeoutNanos;
         if (options.getTimeout() > 0) {
-            // Convert timeout from seconds to milliseconds
-            stub = blockingStub.withDeadlineAfter((long) (options.getTimeout() * 1000), TimeUnit.MILLISECONDS);
+            timeoutNanos = options.getTimeoutDuration().toNanos();
         } else {
             // Use reasonable default timeout instead of 1 day
-            stub = blockingStub.withDeadlineAfter(DEFAULT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            timeoutNanos = TimeUnit.MINUTES.toNanos(DEFAULT_TIMEOUT_MINUTES);
         }
+        // The deadline is set when each call starts, so the stub can be reused
+        T stub = blockingStub
+                .withOption(DeadlineInterceptor.TIMEOUT_NANOS, timeoutNanos)
+                .withOption(RequestEventInterceptor.PRIORITY, options.getPriority());
 
         if (options.getIncludeToken()) {
             stub = stub.withCallCredentials(credentialsManager);
@@ -245,14 +674,132 @@ public abstract class GRPCClient<T extends io.grpc.stub.AbstractStub<T>> extends
         Objects.requireNonNull(methodCall, "Method call function cannot be null");
         Objects.requireNonNull(builder, "Request options builder cannot be null");
         
+        if (closed.get()) {
+            throw lightweightErrors ? CLIENT_CLOSED : new SDKException("gRPC client has been closed");
+        }
+        
         RequestOptions options = this.buildVAXOptions(builder);
         T stub = configureStub(options);
 
+        long timeoutNanos = stub.getCallOptions().getOption(DeadlineInterceptor.TIMEOUT_NANOS);
+        long waitedNanos = admit(options);
+        inFlightRequests.incrementAndGet();
         try {
+            if (readinessMonitor != null) {
+                waitedNanos += awaitReady(timeoutNanos - waitedNanos);
+            }
+            if (waitedNanos > 0) {
+                // Time spent waiting for the scheduler or the connection counts against the call's deadline
+                stub = stub.withOption(DeadlineInterceptor.TIMEOUT_NANOS, timeoutNanos - waitedNanos);
+            }
+            if (failoverChannel != null) {
+                return doFailoverRequest(methodCall, stub, options);
+            }
             // No reflection needed - direct method call with full type safety
             return methodCall.apply(stub);
+        } catch (StatusRuntimeException e) {
+            if (lightweightErrors && SDKException.isExpected(e.getStatus().getCode())) {
+                throw SDKException.lightweight(e.getStatus(),
+                        () -> closed.get() ? "gRPC client has been closed" : "gRPC request failed: " + e.getMessage(), e);
+            }
+            if (closed.get()) {
+                throw new SDKException("gRPC client has been closed", e);
+            }
+            throw new SDKException("gRPC request failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SDKException("Interrupted while waiting for the channel to connect: " + e.getMessage(), e);
         } catch (Exception e) {
             throw new SDKException("gRPC request failed: " + e.getMessage(), e);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            release(options);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Waits, within the readiness policy's limit, for the channel to connect.
+     * 
+     * @return how long the call waited, in nanoseconds
+     * @throws StatusRuntimeException with status UNAVAILABLE if the channel did not connect in time
+     */
+    private long awaitReady(long remainingNanos) throws InterruptedException {
+        if (readinessMonitor.isReady()) {
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        long maxWaitNanos = Math.min(readinessPolicy.getMaxWait().toNanos(), remainingNanos);
+        if (!readinessMonitor.awaitReady(maxWaitNanos)) {
+            throw Status.UNAVAILABLE
+                    .withDescription("Channel to " + host + " not ready after " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms")
+                    .asRuntimeException();
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    private <V> V doFailoverRequest(Function<T, V> methodCall, T stub, RequestOptions options) {
+        long startNanos = System.nanoTime();
+        int target = failoverChannel.active();
+        FailoverChannel.Dispatch dispatch = new FailoverChannel.Dispatch();
+        try {
+            return methodCall.apply(stub.withOption(FailoverChannel.TARGET, target).withOption(FailoverChannel.DISPATCH, dispatch));
+        } catch (StatusRuntimeException e) {
+            if (e.getStatus().getCode() != Status.Code.UNAVAILABLE) {
+                throw e;
+            }
+            failoverChannel.onFailure(target);
+            // A call that may have reached the server is only replayed if repeating it is safe
+            if (dispatch.isStarted() && !options.isIdempotent()) {
+                throw e;
+            }
+            // Retry elsewhere only within what is left of the original deadline
+            long remainingNanos = stub.getCallOptions().getOption(DeadlineInterceptor.TIMEOUT_NANOS) - (System.nanoTime() - startNanos);
+            int fallback = failoverChannel.fallback(target);
+            if (fallback < 0 || remainingNanos <= 0) {
+                throw e;
+            }
+            return methodCall.apply(stub
+                    .withOption(FailoverChannel.TARGET, fallback)
+                    .withOption(DeadlineInterceptor.TIMEOUT_NANOS, remainingNanos)
+                    .withOption(RequestEventInterceptor.RETRIES, 1));
+        }
+    }
+
+    /**
+     * Walks a cursor-paginated RPC, returning its responses as a lazy stream.
+     * 
+     * <p>Pages are requested with {@link #doRequest} until the cursor extracted from a
+     * response is empty. Up to {@code prefetchPages} pages are fetched in the background
+     * while the caller processes the current one. The stream should be closed (for example
+     * with try-with-resources) if it is not consumed completely, so background fetching stops.
+     * Background fetching also stops once the caller has taken no page for the request
+     * timeout; any remaining pages are then fetched on the caller's thread.
+     * 
+     * <pre>{@code
+     * try (Stream<ListResponse> pages = paginate(request, (stub, req) -> stub.list(req),
+     *         ListResponse::getNextCursor,
+     *         (req, cursor) -> req.toBuilder().setCursor(cursor).build(),
+     *         new RequestOptions.Builder(), 2)) {
+     *     pages.flatMap(page -> page.getItemsList().stream()).forEach(this::process);
+     * }
+     * }</pre>
+     * 
+     * @param <R> the request type
+     * @param <V> the response type
+     * @param request the request for the first page
+     * @param methodCall the gRPC method to call for each page
+     * @param cursorExtractor extracts the next-page cursor from a response
+     * @param requestUpdater creates the next request from the previous request and cursor
+     * @param builder the request options builder
+     * @param prefetchPages how many pages to fetch ahead, zero to fetch each page on demand
+     * @return the stream of pages
+     */
+    protected <R, V> Stream<V> paginate(R request, BiFunction<T, R, V> methodCall, Function<V, String> cursorExtractor,
+                                        BiFunction<R, String, R> requestUpdater, RequestOptions.Builder builder,
+                                        int prefetchPages) throws SDKException {
+        Objects.requireNonNull(methodCall, "Method call function cannot be null");
+        Objects.requireNonNull(builder, "Request options builder cannot be null");
+        return PagePrefetcher.stream(request, req -> doRequest(stub -> methodCall.apply(stub, req), builder),
+                cursorExtractor, requestUpdater, prefetchPages, PagePrefetcher.idleTimeout(buildVAXOptions(builder)));
+    }
+}
@@ -2,19 +2,39 @@ package com.vendasta.vax;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.ConnectException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import com.google.protobuf.AbstractMessage;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.util.JsonFormat;
+
+import io.grpc.Status;
 
 /**
  * Abstract HTTP client for making HTTP requests to VAX services.
@@ -34,30 +54,67 @@ import com.google.protobuf.util.JsonFormat;
  */
 public abstract class HTTPClient extends VAXClient implements AutoCloseable {
     private static final Gson GSON = new Gson();
+    // Bounds the URL cache for clients that put identifiers in their paths
+    private static final int MAX_CACHED_URLS = 256;
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_UNAVAILABLE = 503;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_BAD_GATEWAY = 502;
+    private static final int HTTP_GATEWAY_TIMEOUT = 504;
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String STREAMING_CONTENT_TYPES = "application/x-ndjson, application/x-protobuf";
+    private static final SDKException CLIENT_CLOSED = SDKException.preallocated("HTTP client has been closed", Status.Code.UNAVAILABLE);
     
-    private final String host;
-    private final boolean secure;
     private final VAXCredentials credentialsManager;
-    private final HttpClient httpClient;
+    private final Lazy<HttpClient> httpClient;
+    private final SharedResource<Lazy<HttpClient>> sharedHttpClient;
+    private final RateLimiter rateLimiter;
+    private final ByteBudget byteBudget;
+    private final Duration shutdownGracePeriod;
+    private final boolean lightweightErrors;
+    private final boolean compiledJsonCodec;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final EndpointSelector endpointSelector;
+    private volatile CompletableFuture<Void> warmUpFuture;
 
     // Protected constructor used by Builder and subclasses  
     protected HTTPClient(Builder builder) throws SDKException {
-        super(builder.defaultTimeout);
-        this.host = Objects.requireNonNull(builder.host, "Host cannot be null");
-        this.secure = builder.secure;
+        super(builder.defaultTimeout, builder.priorityScheduler);
+        this.rateLimiter = builder.rateLimiter;
+        this.byteBudget = builder.byteBudget;
+        this.shutdownGracePeriod = builder.shutdownGracePeriod;
+        this.lightweightErrors = builder.lightweightErrors;
+        this.compiledJsonCodec = builder.compiledJsonCodec;
         
         // Initialize credentials based on what was provided
-        if (builder.credentials != null) {
-            this.credentialsManager = new VAXCredentials(builder.credentials);
+        if (builder.vaxCredentials != null) {
+            this.credentialsManager = builder.vaxCredentials;
+        } else if (builder.credentials != null) {
+            this.credentialsManager = new VAXCredentials(builder.credentials, builder.credentialsRegistry);
         } else if (builder.serviceAccount != null) {
-            this.credentialsManager = new VAXCredentials(builder.serviceAccount);
+            this.credentialsManager = new VAXCredentials(builder.serviceAccount, builder.credentialsRegistry);
         } else {
-            this.credentialsManager = new VAXCredentials();
+            this.credentialsManager = new VAXCredentials(builder.credentialsRegistry);
         }
         
-        this.httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofMillis((long)(builder.defaultTimeout * 1000)))
-            .build();
+        if (builder.sharedHttpClient != null) {
+            this.sharedHttpClient = builder.sharedHttpClient.retain();
+            this.httpClient = this.sharedHttpClient.get();
+        } else {
+            this.sharedHttpClient = null;
+            this.httpClient = new Lazy<>(() -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis((long)(builder.defaultTimeout * 1000)))
+                .build());
+        }
+
+        // Failover probes only start with the first request or warm-up
+        if (builder.failover.isEmpty()) {
+            this.endpointSelector = new EndpointSelector(builder.hosts(), builder.secure, builder.maxConsecutiveErrors, builder.ejectionCooldown.toNanos());
+        } else {
+            this.endpointSelector = new EndpointSelector(builder.failover, builder.failoverPolicy, this::probe);
+        }
     }
 
 
@@ -73,6 +130,21 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
         private float defaultTimeout = 10000; // Default timeout
         private VAXCredentials.Credentials credentials;
         private InputStream serviceAccount;
+        private VAXCredentialsRegistry credentialsRegistry = VAXCredentialsRegistry.getDefault();
+        private boolean warmUpOnBuild;
+        private boolean lightweightErrors;
+        private boolean compiledJsonCodec;
+        private ByteBudget byteBudget;
+        private VAXCredentials vaxCredentials;
+        private SharedResource<Lazy<HttpClient>> sharedHttpClient;
+        private RateLimiter rateLimiter;
+        private Duration shutdownGracePeriod = Duration.ofSeconds(5);
+        private final List<String> hosts = new ArrayList<>();
+        private int maxConsecutiveErrors = 5;
+        private Duration ejectionCooldown = Duration.ofSeconds(30);
+        private final List<EnvironmentConfig> failover = new ArrayList<>();
+        private FailoverPolicy failoverPolicy = FailoverPolicy.getDefault();
+        private PriorityScheduler priorityScheduler;
         
         /**
          * Creates a new builder instance.
@@ -82,6 +154,8 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
         /**
          * Sets the hostname for the HTTP client.
          * 
+         * <p>A port may be included as {@code host:port}.
+         * 
          * @param host the hostname (required)
          * @return this builder instance
          */
@@ -90,6 +164,106 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets several equivalent hosts to spread requests across, replacing {@link #host(String)}.
+         * 
+         * <p>Each request goes to the faster of two randomly picked hosts, judged by their recent
+         * latency and the requests they have in flight. Hosts that fail too many requests in a
+         * row are skipped for a cooldown period.
+         * 
+         * @param hosts the hostnames, each optionally with a {@code :port}
+         * @return this builder instance
+         */
+        public Builder hosts(Collection<String> hosts) {
+            Objects.requireNonNull(hosts, "Hosts cannot be null");
+            this.hosts.clear();
+            this.hosts.addAll(hosts);
+            return this;
+        }
+
+        /**
+         * Sets several equivalent hosts to spread requests across, replacing {@link #host(String)}.
+         * 
+         * @param hosts the hostnames, each optionally with a {@code :port}
+         * @return this builder instance
+         * @see #hosts(Collection)
+         */
+        public Builder hosts(String... hosts) {
+            return hosts(Arrays.asList(hosts));
+        }
+
+        /**
+         * Sets how many requests in a row a host may fail before it is ejected.
+         * 
+         * <p>Network errors and 5xx responses other than 503 count as failures. Only applies
+         * when several hosts are configured.
+         * 
+         * @param maxConsecutiveErrors the failure threshold (default: 5)
+         * @return this builder instance
+         */
+        public Builder maxConsecutiveErrors(int maxConsecutiveErrors) {
+            this.maxConsecutiveErrors = maxConsecutiveErrors;
+            return this;
+        }
+
+        /**
+         * Sets how long an ejected host is skipped before it receives requests again.
+         * 
+         * @param ejectionCooldown the cooldown (default: 30 seconds)
+         * @return this builder instance
+         */
+        public Builder ejectionCooldown(Duration ejectionCooldown) {
+            this.ejectionCooldown = Objects.requireNonNull(ejectionCooldown, "Ejection cooldown cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets environments to fail over between, replacing {@link #host(String)}, {@link #hosts(Collection)}
+         * and {@link #secure(boolean)}.
+         * 
+         * <p>Requests go to the first environment in the list that is healthy. Environments are
+         * probed in the background from the first request or warm-up on, so an outage is
+         * detected without requests timing out first.
+         * 
+         * <p>A request that cannot connect is retried once on the next healthy environment if
+         * its deadline allows, since nothing was sent. Requests that failed after they were
+         * sent, for example because the connection was reset, may already have been processed
+         * and are only retried if marked with {@link RequestOptions.Builder#setIdempotent(boolean)}.
+         * 
+         * @param environments the environments, primary first
+         * @return this builder instance
+         * @see FailoverPolicy
+         */
+        public Builder failover(List<EnvironmentConfig> environments) {
+            Objects.requireNonNull(environments, "Environments cannot be null");
+            this.failover.clear();
+            this.failover.addAll(environments);
+            return this;
+        }
+
+        /**
+         * Sets how environments configured with {@link #failover(List)} are probed.
+         * 
+         * @param failoverPolicy the failover policy (default: {@link FailoverPolicy#getDefault()})
+         * @return this builder instance
+         */
+        public Builder failoverPolicy(FailoverPolicy failoverPolicy) {
+            this.failoverPolicy = Objects.requireNonNull(failoverPolicy, "Failover policy cannot be null");
+            return this;
+        }
+
+        private List<String> hosts() throws SDKException {
+            if (hosts.isEmpty()) {
+                return List.of(Objects.requireNonNull(host, "Host cannot be null"));
+            }
+            for (String h : hosts) {
+                if (h == null || h.trim().isEmpty()) {
+                    throw new SDKException("Hosts cannot be null or empty");
+                }
+            }
+            return List.copyOf(hosts);
+        }
+
         /**
          * Sets whether to use HTTPS.
          * 
@@ -136,6 +310,134 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets the registry used to share credentials and tokens between clients.
+         * 
+         * <p>Clients using the same registry and service account share one access token.
+         * 
+         * @param credentialsRegistry the credentials registry (default: {@link VAXCredentialsRegistry#getDefault()})
+         * @return this builder instance
+         */
+        public Builder credentialsRegistry(VAXCredentialsRegistry credentialsRegistry) {
+            this.credentialsRegistry = Objects.requireNonNull(credentialsRegistry, "Credentials registry cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets whether to start warming up the client as soon as it is built.
+         * 
+         * <p>Building does not wait for the warm-up; use {@link HTTPClient#warmUp()} to
+         * obtain its result. This applies to clients created by {@link #build()}; subclasses
+         * constructed from a builder call {@link HTTPClient#warmUp()} themselves once they are
+         * fully constructed.
+         * 
+         * @param warmUpOnBuild true to start warming up on build (default: false)
+         * @return this builder instance
+         */
+        public Builder warmUpOnBuild(boolean warmUpOnBuild) {
+            this.warmUpOnBuild = warmUpOnBuild;
+            return this;
+        }
+
+        /**
+         * Sets whether expected failures are reported with lightweight exceptions.
+         * 
+         * <p>When enabled, network errors and {@code 429}, {@code 502}, {@code 503} and
+         * {@code 504} responses throw {@link SDKException}s without a stack trace whose message
+         * is only formatted, from at most the start of the response body, when it is read.
+         * Requests on a closed client throw a shared instance. Status codes are unaffected.
+         * This keeps error storms during outages from turning into CPU and GC storms.
+         * 
+         * @param lightweightErrors true to use lightweight exceptions (default: false)
+         * @return this builder instance
+         */
+        public Builder lightweightErrors(boolean lightweightErrors) {
+            this.lightweightErrors = lightweightErrors;
+            return this;
+        }
+
+        /**
+         * Sets whether messages are converted to and from JSON with a codec compiled once per
+         * message type instead of {@link com.google.protobuf.util.JsonFormat}.
+         * 
+         * <p>The compiled codec follows the same proto3 JSON mapping, but streams straight to
+         * and from UTF-8 bytes without looking up each field's descriptor on every call, which
+         * cuts serialization time and allocation for large messages. Well-known types such as
+         * {@code Timestamp} and {@code Struct} always go through {@code JsonFormat}.
+         * 
+         * @param compiledJsonCodec true to use the compiled codec (default: false)
+         * @return this builder instance
+         */
+        public Builder compiledJsonCodec(boolean compiledJsonCodec) {
+            this.compiledJsonCodec = compiledJsonCodec;
+            return this;
+        }
+
+        /**
+         * Sets a client-side rate limiter applied per request path.
+         * 
+         * <p>The limiter is told about {@code 429} responses, and {@code 503} responses with a
+         * {@code Retry-After} header, so it can back off as the server asks.
+         * 
+         * @param rateLimiter the rate limiter, or null to disable rate limiting (default: null)
+         * @return this builder instance
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that admits requests by their {@link RequestOptions.Priority}.
+         * 
+         * <p>Without a scheduler requests are sent as soon as they are made. Sharing one
+         * scheduler between clients bounds their combined concurrency.
+         * 
+         * @param priorityScheduler the scheduler, or null to disable scheduling (default: null)
+         * @return this builder instance
+         */
+        public Builder priorityScheduler(PriorityScheduler priorityScheduler) {
+            this.priorityScheduler = priorityScheduler;
+            return this;
+        }
+
+        /**
+         * Sets the budget bounding how many request and response bytes are in memory at once.
+         * 
+         * <p>Each request reserves its estimated size plus the budget's response reservation
+         * before it is serialized; responses larger than the reservation are counted at their
+         * actual size until they have been parsed. Streaming requests only reserve the request.
+         * Sharing one budget between clients bounds their combined memory use.
+         * 
+         * @param byteBudget the budget, or null to disable the limit (default: null)
+         * @return this builder instance
+         */
+        public Builder byteBudget(ByteBudget byteBudget) {
+            this.byteBudget = byteBudget;
+            return this;
+        }
+
+        /**
+         * Sets how long {@link HTTPClient#close()} waits for in-flight requests before cancelling them.
+         * 
+         * @param shutdownGracePeriod the grace period (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder shutdownGracePeriod(Duration shutdownGracePeriod) {
+            this.shutdownGracePeriod = Objects.requireNonNull(shutdownGracePeriod, "Shutdown grace period cannot be null");
+            return this;
+        }
+
+        Builder vaxCredentials(VAXCredentials vaxCredentials) {
+            this.vaxCredentials = vaxCredentials;
+            return this;
+        }
+
+        Builder sharedHttpClient(SharedResource<Lazy<HttpClient>> sharedHttpClient) {
+            this.sharedHttpClient = sharedHttpClient;
+            return this;
+        }
+
         /**
          * Builds the HTTPClient instance.
          * 
@@ -143,10 +445,21 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
          * @throws SDKException if configuration is invalid
          */
         public HTTPClient build() throws SDKException {
-            if (host == null || host.trim().isEmpty()) {
+            if (failover.contains(null)) {
+                throw new SDKException("Failover environments cannot be null");
+            }
+            if (failover.isEmpty() && hosts.isEmpty() && (host == null || host.trim().isEmpty())) {
                 throw new SDKException("Host cannot be null or empty");
             }
-            return new HTTPClient(this) {};
+            if (maxConsecutiveErrors < 1) {
+                throw new SDKException("maxConsecutiveErrors must be at least 1");
+            }
+            HTTPClient client = new HTTPClient(this) {};
+            // Started only once the client is fully constructed
+            if (warmUpOnBuild) {
+                client.warmUp();
+            }
+            return client;
         }
     }
 
@@ -159,29 +472,164 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
         return new Builder();
     }
 
+    /**
+     * Closes the client and releases its connections.
+     * 
+     * <p>New requests are rejected right away. Requests already in flight may complete within
+     * the configured shutdown grace period; any still running after it are cancelled. When the
+     * connection pool is shared with other clients it is only closed once the last of them is
+     * closed.
+     * 
+     * @throws SDKException if interrupted while waiting for in-flight requests
+     */
     @Override
-    public void close() {
-        // HttpClient in Java 11+ doesn't require explicit closing, but we implement this for consistency
-        // The connection pool will be cleaned up when the HttpClient is garbage collected
-        // This is needed to satisfy the AutoCloseable interface
+    public void close() throws SDKException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        endpointSelector.close();
+        if (sharedHttpClient != null) {
+            // Shared connection pools are closed once the last client using them is closed
+            sharedHttpClient.release();
+            return;
+        }
+        httpClient.ifCreated(client -> Lifecycle.closeGracefully(client, shutdownGracePeriod));
+    }
+
+    /**
+     * Returns the number of requests this client currently has in flight.
+     * 
+     * @return the in-flight request count
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
     }
 
-    private URI buildUrl(String path) throws SDKException {
+    /**
+     * Prepares the client for traffic by fetching an access token and opening a
+     * connection to the host.
+     * 
+     * <p>The warm-up runs in the background and is only performed once; later calls return
+     * the same future unless the previous attempt failed. The returned future can be used
+     * to gate readiness probes.
+     * 
+     * @return a future that completes when the client is ready, or completes exceptionally
+     *         with an {@link SDKException} if the token or connection could not be obtained
+     */
+    public CompletableFuture<Void> warmUp() {
+        CompletableFuture<Void> future = warmUpFuture;
+        if (future == null || future.isCompletedExceptionally()) {
+            synchronized (this) {
+                future = warmUpFuture;
+                if (future == null || future.isCompletedExceptionally()) {
+                    future = warmUp(List.of());
+                    warmUpFuture = future;
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Prepares the client for traffic and additionally runs JSON round trips of the given
+     * sample messages so their serialization code is compiled before real requests arrive.
+     * 
+     * @param samples representative request or response messages
+     * @return a future that completes when the client is ready
+     */
+    public CompletableFuture<Void> warmUp(Collection<? extends AbstractMessage> samples) {
+        Objects.requireNonNull(samples, "Samples cannot be null");
+
+        CompletableFuture<Void> token = credentialsManager.prefetchToken();
+        endpointSelector.startProbing();
+
+        // Any response means the connection (and TLS session) is established and pooled
+        CompletableFuture<?>[] connections = endpointSelector.getEndpoints().stream()
+                .map(endpoint -> {
+                    try {
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .uri(buildUrl(endpoint, "/"))
+                                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                                .build();
+                        return httpClient.get().sendAsync(request, HttpResponse.BodyHandlers.discarding());
+                    } catch (SDKException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<Void> connection = CompletableFuture.allOf(connections);
+
+        CompletableFuture<Void> serialization = samples.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                        for (AbstractMessage sample : samples) {
+                            try {
+                                byte[] json = toJson(sample);
+                                JsonCodec.merge(json, 0, json.length, sample.newBuilderForType(), compiledJsonCodec);
+                            } catch (InvalidProtocolBufferException e) {
+                                throw new SDKException("Failed to parse warm-up sample: " + e.getMessage(), e);
+                            }
+                        }
+                    }
+                }, VAXExecutors.shared());
+
+        return CompletableFuture.allOf(token, connection, serialization)
+                .exceptionallyCompose(HTTPClient::warmUpFailure);
+    }
+
+    private static CompletableFuture<Void> warmUpFailure(Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof SDKException) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        return CompletableFuture.failedFuture(new SDKException("Warm-up failed: " + cause, cause));
+    }
+
+    private CompletableFuture<Boolean> probe(EndpointSelector.Endpoint endpoint) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder()
+                    .uri(buildUrl(endpoint, "/"))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+        } catch (SDKException e) {
+            return CompletableFuture.completedFuture(false);
+        }
+        // Any answer short of a server error means the environment is reachable and serving
+        return httpClient.get().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> response.statusCode() < HTTP_SERVER_ERROR);
+    }
+
+    static URI buildUrl(EndpointSelector.Endpoint endpoint, String path) throws SDKException {
+        Map<String, URI> urls = endpoint.getUrls();
+        URI url = urls.get(path);
+        if (url == null) {
+            url = newUrl(endpoint.getHost(), endpoint.isSecure(), path);
+            if (urls.size() < MAX_CACHED_URLS) {
+                urls.putIfAbsent(path, url);
+            }
+        }
+        return url;
+    }
+
+    static URI newUrl(String host, boolean secure, String path) throws SDKException {
         try {
             String scheme = secure ? "https" : "http";
             // Ensure path doesn't start with '/' to avoid double slashes
             String cleanPath = path.startsWith("/") ? path.substring(1) : path;
             // Ensure host doesn't end with '/' to avoid double slashes
             String cleanHost = host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
-            return new URI(scheme, null, cleanHost, -1, "/" + cleanPath, null, null);
+            // The host is used as the authority so an explicit "host:port" is honoured
+            return new URI(scheme, cleanHost, "/" + cleanPath, null, null);
         } catch (URISyntaxException e) {
             throw new SDKException("Invalid URL construction: " + e.getMessage(), e);
         }
     }
 
-    private String toJson(com.google.protobuf.AbstractMessage msg) throws SDKException {
+    private byte[] toJson(com.google.protobuf.AbstractMessage msg) throws SDKException {
         try {
-            return JsonFormat.printer().print(msg);
+            return JsonCodec.print(msg, compiledJsonCodec);
         } catch (InvalidProtocolBufferException e) {
             throw new SDKException("Failed to serialize protobuf message to JSON: " + e.getMessage(), e);
         }
@@ -218,19 +666,164 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
         Objects.requireNonNull(req, "Request cannot be null");
         Objects.requireNonNull(responseType, "Response type cannot be null");
         Objects.requireNonNull(builder, "Request options builder cannot be null");
-        
+        if (closed.get()) {
+            throw closedError();
+        }
+
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        try {
+            return doRequest(path, req, responseType, builder, event);
+        } catch (RuntimeException e) {
+            if (event.isEnabled()) {
+                event.error = e.getMessage();
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.transport = "HTTP";
+                event.path = path;
+                event.commit();
+            }
+        }
+    }
+
+    private <V extends AbstractMessage.Builder<V>> V doRequest(String path, com.google.protobuf.AbstractMessage req, V responseType, RequestOptions.Builder builder, RequestEvent event) throws SDKException {
         RequestOptions options = this.buildVAXOptions(builder);
-        URI url = buildUrl(path);
-        
-        // Convert timeout from float seconds to Duration
-        Duration timeout = Duration.ofMillis((long)(options.getTimeout() * 1000));
+        long reservedBytes = byteBudget != null ? req.getSerializedSize() + byteBudget.getResponseReservation() : 0;
+        long waitedNanos = reserveBytes(reservedBytes, options);
+        try {
+            HttpResponse<byte[]> response = exchange(path, req, options, waitedNanos, JSON_CONTENT_TYPE, HttpResponse.BodyHandlers.ofByteArray(), event);
+            byte[] responseBody = response.body();
+            int statusCode = response.statusCode();
+            event.responseBytes = responseBody.length;
+            if (byteBudget != null && responseBody.length > byteBudget.getResponseReservation()) {
+                // Already in memory, so it can only be counted, not waited for
+                long excess = responseBody.length - byteBudget.getResponseReservation();
+                byteBudget.charge(excess);
+                reservedBytes += excess;
+            }
+            
+            if (statusCode < 400) {
+                try {
+                    long parseStart = System.nanoTime();
+                    JsonCodec.merge(responseBody, 0, responseBody.length, responseType, compiledJsonCodec);
+                    event.serializationNanos += System.nanoTime() - parseStart;
+                    return responseType;
+                } catch (InvalidProtocolBufferException e) {
+                    throw new SDKException("Failed to parse response JSON into protobuf: " + e.getMessage(), e);
+                }
+            }
+            throw httpError(statusCode, responseBody);
+        } finally {
+            releaseBytes(reservedBytes);
+        }
+    }
+
+    /**
+     * Executes an HTTP request whose response is a stream of messages, returning them as a
+     * lazy stream that reads the response body as it arrives.
+     * 
+     * <p>The response may be newline-delimited JSON, one message per line, or length-delimited
+     * protobuf as written by {@link com.google.protobuf.MessageLite#writeDelimitedTo}; the
+     * format is chosen from the response's {@code Content-Type}. Messages are parsed one at a
+     * time as the caller consumes the stream, so memory use does not grow with the size of the
+     * response and the first message is available as soon as it has been received. The server
+     * is only read from as fast as the caller consumes messages.
+     * 
+     * <p>The request timeout applies until the response headers arrive; after that the stream
+     * stays open for as long as the server keeps sending. The stream should be closed (for
+     * example with try-with-resources) if it is not consumed completely, so the connection is
+     * released.
+     * 
+     * <pre>{@code
+     * try (Stream<Event.Builder> events = doStreamingRequest("/events", request, Event::newBuilder,
+     *         new RequestOptions.Builder())) {
+     *     events.forEach(this::process);
+     * }
+     * }</pre>
+     * 
+     * @param <V> the message type
+     * @param path the API path
+     * @param req the request protobuf message
+     * @param responseType supplies a new builder for each message
+     * @param builder the request options builder
+     * @return the stream of messages
+     * @throws SDKException if the request fails before the response starts
+     */
+    protected <V extends AbstractMessage.Builder<V>> Stream<V> doStreamingRequest(String path, com.google.protobuf.AbstractMessage req, Supplier<V> responseType, RequestOptions.Builder builder) throws SDKException {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Objects.requireNonNull(req, "Request cannot be null");
+        Objects.requireNonNull(responseType, "Response type cannot be null");
+        Objects.requireNonNull(builder, "Request options builder cannot be null");
+        if (closed.get()) {
+            throw closedError();
+        }
+
+        // The event covers the exchange up to the response headers; messages are read later
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        HttpResponse<InputStream> response;
+        // Messages are parsed one at a time, so only the request needs room in the budget
+        long reservedBytes = byteBudget != null ? req.getSerializedSize() : 0;
+        try {
+            RequestOptions options = this.buildVAXOptions(builder);
+            long waitedNanos = reserveBytes(reservedBytes, options);
+            try {
+                response = exchange(path, req, options, waitedNanos, STREAMING_CONTENT_TYPES, HttpResponse.BodyHandlers.ofInputStream(), event);
+            } finally {
+                releaseBytes(reservedBytes);
+            }
+        } catch (RuntimeException e) {
+            if (event.isEnabled()) {
+                event.error = e.getMessage();
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.transport = "HTTP";
+                event.path = path;
+                event.commit();
+            }
+        }
+
+        int statusCode = response.statusCode();
+        if (statusCode >= 400) {
+            byte[] errorBody;
+            try (InputStream body = response.body()) {
+                errorBody = body.readAllBytes();
+            } catch (IOException e) {
+                throw new SDKException("HTTP " + statusCode + ": failed to read error response: " + e.getMessage(), statusCode);
+            }
+            throw httpError(statusCode, errorBody);
+        }
+        ResponseStream.Format format = ResponseStream.Format.forContentType(response.headers().firstValue("Content-Type").orElse(null));
+        return ResponseStream.stream(response.body(), format, responseType, compiledJsonCodec);
+    }
+
+    /**
+     * Sends a request and waits for the response headers.
+     * 
+     * <p>This applies everything requests have in common: authorization, rate limiting,
+     * priority admission, endpoint selection, failover to another environment when the chosen
+     * one cannot be reached, and endpoint and rate limiter feedback. {@code waitedNanos} is the
+     * time the caller already spent waiting for the byte budget.
+     */
+    private <T> HttpResponse<T> exchange(String path, com.google.protobuf.AbstractMessage req, RequestOptions options, long waitedNanos,
+                                         String accept, HttpResponse.BodyHandler<T> bodyHandler, RequestEvent event) throws SDKException {
+        event.priority = options.getPriority().name();
         
         // Build the HTTP request
+        long serializationStart = System.nanoTime();
+        byte[] body = toJson(req);
+        event.serializationNanos = System.nanoTime() - serializationStart;
+        event.requestBytes = body.length;
         HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(url)
-                .timeout(timeout)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(toJson(req)));
+                .header("Content-Type", JSON_CONTENT_TYPE)
+                .header("Accept", accept)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
         
         // Add authorization header if required
         if (options.getIncludeToken()) {
@@ -240,44 +833,229 @@ public abstract class HTTPClient extends VAXClient implements AutoCloseable {
                 throw new SDKException("Failed to get authorization token: " + e.getMessage(), e);
             }
         }
+
+        if (rateLimiter != null) {
+            rateLimiter.acquire(path);
+        }
+
+        // Time spent waiting for the budget and the scheduler counts against the request's timeout
+        waitedNanos += admit(options);
+        Duration timeout = waitedNanos > 0 ? options.getTimeoutDuration().minusNanos(waitedNanos) : options.getTimeoutDuration();
+        if (waitedNanos > 0 && !timeout.isPositive()) {
+            release(options);
+            throw new SDKException("Timed out waiting for request capacity", Status.Code.DEADLINE_EXCEEDED.value());
+        }
         
-        HttpRequest request = requestBuilder.build();
-        
-        // Execute the request
-        HttpResponse<String> response;
+        // Execute the request against the endpoint that currently looks fastest
+        EndpointSelector.Endpoint endpoint;
+        HttpResponse<T> response;
+        long startNanos;
+        inFlightRequests.incrementAndGet();
         try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException e) {
-            throw new SDKException("Network error during HTTP request: " + e.getMessage(), e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new SDKException("HTTP request was interrupted: " + e.getMessage(), e);
+            // Selecting inside the try releases the admission if no endpoint can take the request
+            endpoint = endpointSelector.select();
+            event.host = endpoint.getHost();
+            startNanos = System.nanoTime();
+            try {
+                HttpRequest request = requestBuilder.uri(buildUrl(endpoint, path)).timeout(timeout).build();
+                try {
+                    response = httpClient.get().send(request, bodyHandler);
+                } catch (IOException e) {
+                    // Only a request that never reached the server, or that is safe to repeat, goes to another environment
+                    boolean notSent = e instanceof ConnectException || e instanceof HttpConnectTimeoutException;
+                    if (closed.get() || (!notSent && !options.isIdempotent())) {
+                        throw e;
+                    }
+                    Duration remaining = timeout.minusNanos(System.nanoTime() - startNanos);
+                    EndpointSelector.Endpoint fallback = remaining.isNegative() || remaining.isZero() ? null : endpointSelector.fallback(endpoint);
+                    if (fallback == null) {
+                        throw e;
+                    }
+                    endpoint.onFailure();
+                    endpoint = fallback;
+                    event.host = endpoint.getHost();
+                    event.retries = 1;
+                    startNanos = System.nanoTime();
+                    request = requestBuilder.uri(buildUrl(endpoint, path)).timeout(remaining).build();
+                    response = httpClient.get().send(request, bodyHandler);
+                }
+            } catch (IOException e) {
+                if (closed.get()) {
+                    // Cancelled by close(); the endpoint is not to blame
+                    endpoint.onComplete();
+                    throw lightweightErrors ? SDKException.lightweight(Status.UNAVAILABLE, () -> "HTTP client has been closed", e)
+                            : new SDKException("HTTP client has been closed", e);
+                }
+                endpoint.onFailure();
+                if (lightweightErrors) {
+                    throw SDKException.lightweight(Status.UNAVAILABLE, () -> "Network error during HTTP request: " + e.getMessage(), e);
+                }
+                throw new SDKException("Network error during HTTP request: " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                endpoint.onComplete();
+                Thread.currentThread().interrupt();
+                throw new SDKException("HTTP request was interrupted: " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                endpoint.onComplete();
+                throw e;
+            }
+        } finally {
+            inFlightRequests.decrementAndGet();
+            release(options);
         }
         
-        String responseBody = response.body();
         int statusCode = response.statusCode();
-        
-        if (statusCode < 400) {
-            try {
-                JsonFormat.parser().ignoringUnknownFields().merge(responseBody, responseType);
-                return responseType;
-            } catch (InvalidProtocolBufferException e) {
-                throw new SDKException("Failed to parse response JSON into protobuf: " + e.getMessage(), e);
-            }
+        event.status = statusCode;
+        if (statusCode >= HTTP_SERVER_ERROR && statusCode != HTTP_UNAVAILABLE) {
+            endpoint.onFailure();
+        } else if (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_UNAVAILABLE) {
+            // Throttling says nothing about how fast the endpoint is
+            endpoint.onComplete();
         } else {
-            // Handle error response
-            HttpError error;
+            endpoint.onSuccess(System.nanoTime() - startNanos);
+        }
+
+        if (rateLimiter != null) {
+            if (statusCode == HTTP_TOO_MANY_REQUESTS || (statusCode == HTTP_UNAVAILABLE && response.headers().firstValue("Retry-After").isPresent())) {
+                rateLimiter.onThrottled(path, retryAfter(response));
+            } else if (statusCode < 400) {
+                rateLimiter.onSuccess(path);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Reserves room in the byte budget, returning how long that took in nanoseconds. Every
+     * call must be paired with {@link #releaseBytes}.
+     */
+    private long reserveBytes(long bytes, RequestOptions options) throws SDKException {
+        if (byteBudget == null) {
+            return 0;
+        }
+        long timeoutNanos = options.getTimeout() > 0 ? options.getTimeoutDuration().toNanos() : Long.MAX_VALUE;
+        return byteBudget.acquire(bytes, timeoutNanos);
+    }
+
+    private void releaseBytes(long bytes) {
+        if (byteBudget != null) {
+            byteBudget.release(bytes);
+        }
+    }
+
+    private SDKException closedError() {
+        return lightweightErrors ? CLIENT_CLOSED : new SDKException("HTTP client has been closed");
+    }
+
+    private SDKException httpError(int statusCode, byte[] responseBody) {
+        // Throttling keeps its meaning so callers can tell it apart from other failures
+        int errorCode = statusCode == HTTP_TOO_MANY_REQUESTS ? Status.Code.RESOURCE_EXHAUSTED.value() : statusCode;
+        if (lightweightErrors && (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_BAD_GATEWAY
+                || statusCode == HTTP_UNAVAILABLE || statusCode == HTTP_GATEWAY_TIMEOUT)) {
+            return lightweightHttpError(statusCode, errorCode, responseBody);
+        }
+        String errorBody = new String(responseBody, StandardCharsets.UTF_8);
+        HttpError error;
+        try {
+            error = GSON.fromJson(errorBody, HttpError.class);
+        } catch (Exception e) {
+            // If we can't parse the error response, create a generic error
+            error = null;
+        }
+        if (error == null) {
+            return new SDKException("HTTP " + statusCode + ": " + errorBody, errorCode);
+        }
+        return new SDKException(error.getMessage(), error.getCode() != 0 ? error.getCode() : errorCode);
+    }
+
+    /**
+     * Builds the same error as {@link #httpError} without a stack trace, reading no more of
+     * the body than the message can hold.
+     */
+    private static SDKException lightweightHttpError(int statusCode, int errorCode, byte[] responseBody) {
+        // Only a JSON object can hold an error code; anything else, such as an HTML page from a
+        // proxy, is not worth decoding
+        HttpError error = null;
+        if (startsWithObject(responseBody)) {
             try {
-                error = GSON.fromJson(responseBody, HttpError.class);
-                if (error == null) {
-                    throw new SDKException("HTTP " + statusCode + ": " + responseBody, statusCode);
-                }
+                error = GSON.fromJson(new String(responseBody, StandardCharsets.UTF_8), HttpError.class);
             } catch (Exception e) {
-                // If we can't parse the error response, create a generic error
-                throw new SDKException("HTTP " + statusCode + ": " + responseBody, statusCode);
+                // Reported with the raw body below
             }
-            
-            throw new SDKException(error.getMessage(), error.getCode() != 0 ? error.getCode() : statusCode);
         }
+        if (error == null) {
+            int length = Math.min(responseBody.length, SDKException.MAX_LIGHTWEIGHT_MESSAGE_LENGTH);
+            return SDKException.lightweight(Status.fromCodeValue(errorCode),
+                    () -> "HTTP " + statusCode + ": " + new String(responseBody, 0, length, StandardCharsets.UTF_8), null);
+        }
+        HttpError parsed = error;
+        return SDKException.lightweight(Status.fromCodeValue(parsed.getCode() != 0 ? parsed.getCode() : errorCode), parsed::getMessage, null);
+    }
+
+    private static boolean startsWithObject(byte[] body) {
+        for (byte b : body) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    private static Duration retryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be an HTTP date
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Walks a cursor-paginated endpoint, returning its pages as a lazy stream.
+     * 
+     * <p>Pages are requested with {@link #doRequest} until the cursor extracted from a page
+     * is empty. Up to {@code prefetchPages} pages are fetched in the background while the
+     * caller processes the current one. The stream should be closed (for example with
+     * try-with-resources) if it is not consumed completely, so background fetching stops.
+     * Background fetching also stops once the caller has taken no page for the request
+     * timeout; any remaining pages are then fetched on the caller's thread.
+     * 
+     * <pre>{@code
+     * try (Stream<ListResponse.Builder> pages = paginate("/list", request, ListResponse::newBuilder,
+     *         ListResponse.Builder::getNextCursor,
+     *         (req, cursor) -> req.toBuilder().setCursor(cursor).build(),
+     *         new RequestOptions.Builder(), 2)) {
+     *     pages.flatMap(page -> page.getItemsList().stream()).forEach(this::process);
+     * }
+     * }</pre>
+     * 
+     * @param <R> the request type
+     * @param <V> the response type
+     * @param path the API path
+     * @param request the request for the first page
+     * @param responseType supplies a new response builder for each page
+     * @param cursorExtractor extracts the next-page cursor from a response
+     * @param requestUpdater creates the next request from the previous request and cursor
+     * @param builder the request options builder
+     * @param prefetchPages how many pages to fetch ahead, zero to fetch each page on demand
+     * @return the stream of pages
+     */
+    protected <R extends AbstractMessage, V extends AbstractMessage.Builder<V>> Stream<V> paginate(
+            String path, R request, Supplier<V> responseType, Function<V, String> cursorExtractor,
+            BiFunction<R, String, R> requestUpdater, RequestOptions.Builder builder, int prefetchPages) throws SDKException {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Objects.requireNonNull(responseType, "Response type cannot be null");
+        Objects.requireNonNull(builder, "Request options builder cannot be null");
+        return PagePrefetcher.stream(request, req -> doRequest(path, req, responseType.get(), builder),
+                cursorExtractor, requestUpdater, prefetchPages, PagePrefetcher.idleTimeout(buildVAXOptions(builder)));
     }
 }
@@ -0,0 +1,884 @@
+package com.vendasta.vax;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.OneofDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+
+/**
+ * Converts protobuf messages to and from JSON following the proto3 JSON mapping.
+ *
+ * <p>{@link JsonFormat} looks up every field's descriptor, type and JSON name on every call,
+ * and parses into an intermediate tree before merging it into the message. This codec does
+ * that work once per message type: the first time a type is seen its fields are compiled
+ * into a table of encoders and decoders, which is cached and reused, and messages are then
+ * streamed straight to and from UTF-8 bytes.
+ *
+ * <p>Output is equivalent to {@code JsonFormat.printer()} without insignificant whitespace,
+ * and parsing matches {@code JsonFormat.parser().ignoringUnknownFields()}: fields are printed
+ * by their JSON name and accepted by either name, 64-bit integers are quoted, enums are
+ * printed by name and accepted by name or number, and unknown fields and enum values are
+ * skipped. Well-known types with a special JSON form, such as {@code Timestamp} and
+ * {@code Struct}, are delegated to {@link JsonFormat}.
+ *
+ * <p>Clients only use the compiled codec when they opt in; otherwise every message goes
+ * through {@link JsonFormat}, via the {@code compiled} flag of {@link #print(MessageOrBuilder, boolean)}
+ * and {@link #merge(byte[], int, int, Message.Builder, boolean)}.
+ */
+final class JsonCodec {
+    private static final JsonFormat.Printer JSON_FORMAT_PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+    private static final JsonFormat.Parser JSON_FORMAT_PARSER = JsonFormat.parser().ignoringUnknownFields();
+
+    private static final Set<String> WELL_KNOWN_TYPES = Set.of(
+            "google.protobuf.Any",
+            "google.protobuf.Duration",
+            "google.protobuf.FieldMask",
+            "google.protobuf.ListValue",
+            "google.protobuf.Struct",
+            "google.protobuf.Timestamp",
+            "google.protobuf.Value",
+            "google.protobuf.BoolValue",
+            "google.protobuf.BytesValue",
+            "google.protobuf.DoubleValue",
+            "google.protobuf.FloatValue",
+            "google.protobuf.Int32Value",
+            "google.protobuf.Int64Value",
+            "google.protobuf.StringValue",
+            "google.protobuf.UInt32Value",
+            "google.protobuf.UInt64Value");
+    private static final String NULL_VALUE = "google.protobuf.NullValue";
+    private static final String VALUE = "google.protobuf.Value";
+
+    private static final Map<Descriptor, MessageCodec> CODECS = new ConcurrentHashMap<>();
+
+    private JsonCodec() {}
+
+    /**
+     * Prints a message as UTF-8 encoded JSON, with the compiled codec or with {@link JsonFormat}.
+     *
+     * @param message the message to print
+     * @param compiled true to use the compiled codec, false for {@link JsonFormat}
+     * @return the JSON bytes
+     * @throws InvalidProtocolBufferException if the message cannot be represented as JSON
+     */
+    static byte[] print(MessageOrBuilder message, boolean compiled) throws InvalidProtocolBufferException {
+        return compiled ? print(message) : JSON_FORMAT_PRINTER.print(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses part of an array of UTF-8 encoded JSON into a message builder, with the compiled
+     * codec or with {@link JsonFormat}.
+     *
+     * @param json the buffer holding the JSON
+     * @param offset where the JSON starts
+     * @param length the length of the JSON in bytes
+     * @param builder the builder to merge the parsed fields into
+     * @param compiled true to use the compiled codec, false for {@link JsonFormat}
+     * @throws InvalidProtocolBufferException if the input is not valid JSON for the message type
+     */
+    static void merge(byte[] json, int offset, int length, Message.Builder builder, boolean compiled) throws InvalidProtocolBufferException {
+        if (compiled) {
+            merge(json, offset, length, builder);
+        } else {
+            JSON_FORMAT_PARSER.merge(new String(json, offset, length, StandardCharsets.UTF_8), builder);
+        }
+    }
+
+    /**
+     * Prints a message as UTF-8 encoded JSON.
+     *
+     * @param message the message to print
+     * @return the JSON bytes
+     * @throws InvalidProtocolBufferException if the message cannot be represented as JSON
+     */
+    static byte[] print(MessageOrBuilder message) throws InvalidProtocolBufferException {
+        Descriptor descriptor = message.getDescriptorForType();
+        if (isWellKnown(descriptor)) {
+            return JSON_FORMAT_PRINTER.print(message).getBytes(StandardCharsets.UTF_8);
+        }
+        StringBuilderWriter text = new StringBuilderWriter();
+        try (JsonWriter out = new JsonWriter(text)) {
+            // JsonFormat escapes strings with Gson's defaults, which include <, >, &, = and '
+            out.setHtmlSafe(true);
+            codec(descriptor).write(out, message);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException("Failed to print " + descriptor.getFullName() + ": " + e.getMessage());
+        }
+        // Encoding the finished text in one pass is much cheaper than encoding each write
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses UTF-8 encoded JSON into a message builder.
+     *
+     * @param json the JSON bytes
+     * @param builder the builder to merge the parsed fields into
+     * @throws InvalidProtocolBufferException if the input is not valid JSON for the message type
+     */
+    static void merge(byte[] json, Message.Builder builder) throws InvalidProtocolBufferException {
+        merge(json, 0, json.length, builder);
+    }
+
+    /**
+     * Parses part of an array of UTF-8 encoded JSON into a message builder.
+     *
+     * @param json the buffer holding the JSON
+     * @param offset where the JSON starts
+     * @param length the length of the JSON in bytes
+     * @param builder the builder to merge the parsed fields into
+     * @throws InvalidProtocolBufferException if the input is not valid JSON for the message type
+     */
+    static void merge(byte[] json, int offset, int length, Message.Builder builder) throws InvalidProtocolBufferException {
+        Descriptor descriptor = builder.getDescriptorForType();
+        if (isWellKnown(descriptor)) {
+            JSON_FORMAT_PARSER.merge(new String(json, offset, length, StandardCharsets.UTF_8), builder);
+            return;
+        }
+        try {
+            JsonReader in = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json, offset, length), StandardCharsets.UTF_8));
+            codec(descriptor).read(in, builder);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException | IllegalStateException | IllegalArgumentException | ArithmeticException e) {
+            // Malformed JSON, or a value of the wrong type for its field
+            InvalidProtocolBufferException error = new InvalidProtocolBufferException(
+                    "Failed to parse " + descriptor.getFullName() + ": " + e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    private static boolean isWellKnown(Descriptor descriptor) {
+        return WELL_KNOWN_TYPES.contains(descriptor.getFullName());
+    }
+
+    private static MessageCodec codec(Descriptor descriptor) {
+        MessageCodec codec = CODECS.get(descriptor);
+        if (codec == null) {
+            // Nested types are compiled lazily, so compiling never re-enters the cache
+            codec = CODECS.computeIfAbsent(descriptor, MessageCodec::new);
+        }
+        return codec;
+    }
+
+    /**
+     * An unsynchronized {@link java.io.StringWriter}.
+     */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder builder = new StringBuilder(256);
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            builder.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            builder.append(str, offset, offset + length);
+        }
+
+        @Override
+        public Writer append(CharSequence chars) {
+            builder.append(chars);
+            return this;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The compiled field table of one message type.
+     */
+    private static final class MessageCodec {
+        private final FieldCodec[] fields;
+        private final Map<String, FieldCodec> byName;
+
+        MessageCodec(Descriptor descriptor) {
+            List<FieldDescriptor> sorted = new ArrayList<>(descriptor.getFields());
+            // JsonFormat prints fields in field number order
+            sorted.sort(Comparator.comparingInt(FieldDescriptor::getNumber));
+            this.fields = new FieldCodec[sorted.size()];
+            this.byName = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                FieldDescriptor field = sorted.get(i);
+                FieldCodec codec;
+                if (field.isMapField()) {
+                    codec = new MapFieldCodec(field);
+                } else if (field.isRepeated()) {
+                    codec = new RepeatedFieldCodec(field);
+                } else {
+                    codec = new SingularFieldCodec(field);
+                }
+                fields[i] = codec;
+                byName.put(field.getJsonName(), codec);
+                byName.put(field.getName(), codec);
+            }
+        }
+
+        void write(JsonWriter out, MessageOrBuilder message) throws IOException {
+            out.beginObject();
+            for (FieldCodec field : fields) {
+                field.write(out, message);
+            }
+            out.endObject();
+        }
+
+        void read(JsonReader in, Message.Builder builder) throws IOException {
+            // The name each field was read under, allocated once a known field is seen
+            String[] seen = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                FieldCodec field = byName.get(name);
+                if (field == null) {
+                    in.skipValue();
+                    continue;
+                }
+                if (seen == null) {
+                    seen = new String[fields.length];
+                }
+                if (name.equals(seen[field.field.getIndex()])) {
+                    // JsonFormat reads objects into a map first, so the last repeated key wins
+                    builder.clearField(field.field);
+                } else {
+                    seen[field.field.getIndex()] = name;
+                    // Like JsonFormat, a field may be named twice only if the first value left it unset
+                    if (field.field.isRepeated() ? builder.getRepeatedFieldCount(field.field) > 0 : builder.hasField(field.field)) {
+                        throw new InvalidProtocolBufferException("Field " + field.field.getFullName() + " has already been set.");
+                    }
+                }
+                if (in.peek() == JsonToken.NULL && !field.value.acceptsNull()) {
+                    // null means the field is not present
+                    in.nextNull();
+                } else {
+                    field.read(in, builder);
+                }
+            }
+            in.endObject();
+        }
+    }
+
+    private abstract static class FieldCodec {
+        final FieldDescriptor field;
+        final String jsonName;
+        final ValueCodec value;
+
+        FieldCodec(FieldDescriptor field, ValueCodec value) {
+            this.field = field;
+            this.jsonName = field.getJsonName();
+            this.value = value;
+        }
+
+        abstract void write(JsonWriter out, MessageOrBuilder message) throws IOException;
+
+        abstract void read(JsonReader in, Message.Builder builder) throws IOException;
+    }
+
+    private static final class SingularFieldCodec extends FieldCodec {
+        private final OneofDescriptor oneof;
+
+        SingularFieldCodec(FieldDescriptor field) {
+            super(field, valueCodec(field));
+            this.oneof = field.getRealContainingOneof();
+        }
+
+        @Override
+        void write(JsonWriter out, MessageOrBuilder message) throws IOException {
+            Object fieldValue;
+            if (field.hasPresence()) {
+                if (!message.hasField(field)) {
+                    return;
+                }
+                fieldValue = message.getField(field);
+            } else {
+                // Proto3 fields without presence are omitted when they hold their default
+                fieldValue = message.getField(field);
+                if (fieldValue.equals(field.getDefaultValue())) {
+                    return;
+                }
+            }
+            out.name(jsonName);
+            value.write(out, fieldValue);
+        }
+
+        @Override
+        void read(JsonReader in, Message.Builder builder) throws IOException {
+            if (oneof != null && builder.hasOneof(oneof) && builder.getOneofFieldDescriptor(oneof) != field) {
+                throw new InvalidProtocolBufferException("Cannot set field " + field.getFullName()
+                        + " because another field of oneof " + oneof.getName() + " is already set");
+            }
+            Object parsed = value.read(in, builder, field);
+            if (parsed != null) {
+                builder.setField(field, parsed);
+            }
+        }
+    }
+
+    private static final class RepeatedFieldCodec extends FieldCodec {
+        RepeatedFieldCodec(FieldDescriptor field) {
+            super(field, valueCodec(field));
+        }
+
+        @Override
+        void write(JsonWriter out, MessageOrBuilder message) throws IOException {
+            int count = message.getRepeatedFieldCount(field);
+            if (count == 0) {
+                return;
+            }
+            out.name(jsonName);
+            out.beginArray();
+            for (int i = 0; i < count; i++) {
+                value.write(out, message.getRepeatedField(field, i));
+            }
+            out.endArray();
+        }
+
+        @Override
+        void read(JsonReader in, Message.Builder builder) throws IOException {
+            in.beginArray();
+            while (in.hasNext()) {
+                if (in.peek() == JsonToken.NULL && !value.acceptsNull()) {
+                    throw new InvalidProtocolBufferException("Repeated field " + field.getFullName() + " cannot contain null");
+                }
+                Object parsed = value.read(in, builder, field);
+                if (parsed != null) {
+                    builder.addRepeatedField(field, parsed);
+                }
+            }
+            in.endArray();
+        }
+    }
+
+    private static final class MapFieldCodec extends FieldCodec {
+        private final FieldDescriptor keyField;
+        private final FieldDescriptor valueField;
+
+        MapFieldCodec(FieldDescriptor field) {
+            this(field, field.getMessageType().findFieldByNumber(1), field.getMessageType().findFieldByNumber(2));
+        }
+
+        private MapFieldCodec(FieldDescriptor field, FieldDescriptor keyField, FieldDescriptor valueField) {
+            super(field, valueCodec(valueField));
+            this.keyField = keyField;
+            this.valueField = valueField;
+        }
+
+        @Override
+        void write(JsonWriter out, MessageOrBuilder message) throws IOException {
+            int count = message.getRepeatedFieldCount(field);
+            if (count == 0) {
+                return;
+            }
+            out.name(jsonName);
+            out.beginObject();
+            for (int i = 0; i < count; i++) {
+                Message entry = (Message) message.getRepeatedField(field, i);
+                out.name(keyToString(entry.getField(keyField)));
+                value.write(out, entry.getField(valueField));
+            }
+            out.endObject();
+        }
+
+        private String keyToString(Object key) {
+            switch (keyField.getType()) {
+                case UINT32:
+                case FIXED32:
+                    return Integer.toUnsignedString((Integer) key);
+                case UINT64:
+                case FIXED64:
+                    return Long.toUnsignedString((Long) key);
+                default:
+                    return key.toString();
+            }
+        }
+
+        @Override
+        void read(JsonReader in, Message.Builder builder) throws IOException {
+            in.beginObject();
+            while (in.hasNext()) {
+                Object key = parseKey(in.nextName());
+                if (in.peek() == JsonToken.NULL && !value.acceptsNull()) {
+                    throw new InvalidProtocolBufferException("Map field " + field.getFullName() + " cannot contain null values");
+                }
+                Message.Builder entry = builder.newBuilderForField(field);
+                Object parsed = value.read(in, entry, valueField);
+                if (parsed != null) {
+                    entry.setField(keyField, key);
+                    entry.setField(valueField, parsed);
+                    builder.addRepeatedField(field, entry.build());
+                }
+            }
+            in.endObject();
+        }
+
+        private Object parseKey(String key) throws InvalidProtocolBufferException {
+            switch (keyField.getType()) {
+                case BOOL:
+                    if (key.equals("true")) {
+                        return true;
+                    } else if (key.equals("false")) {
+                        return false;
+                    }
+                    throw new InvalidProtocolBufferException("Invalid bool map key: " + key);
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    return parseInt32(key);
+                case UINT32:
+                case FIXED32:
+                    return parseUint32(key);
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    return parseInt64(key);
+                case UINT64:
+                case FIXED64:
+                    return parseUint64(key);
+                default:
+                    return key;
+            }
+        }
+    }
+
+    /**
+     * Encodes and decodes the values of one field.
+     */
+    private interface ValueCodec {
+        void write(JsonWriter out, Object value) throws IOException;
+
+        /**
+         * Reads a value, or returns null if it should be skipped, such as an unknown enum name.
+         */
+        Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException;
+
+        default boolean acceptsNull() {
+            return false;
+        }
+    }
+
+    private static ValueCodec valueCodec(FieldDescriptor field) {
+        switch (field.getType()) {
+            case INT32:
+            case SINT32:
+            case SFIXED32:
+                return Int32Codec.INSTANCE;
+            case UINT32:
+            case FIXED32:
+                return Uint32Codec.INSTANCE;
+            case INT64:
+            case SINT64:
+            case SFIXED64:
+                return Int64Codec.INSTANCE;
+            case UINT64:
+            case FIXED64:
+                return Uint64Codec.INSTANCE;
+            case FLOAT:
+                return FloatCodec.INSTANCE;
+            case DOUBLE:
+                return DoubleCodec.INSTANCE;
+            case BOOL:
+                return BoolCodec.INSTANCE;
+            case STRING:
+                return StringCodec.INSTANCE;
+            case BYTES:
+                return BytesCodec.INSTANCE;
+            case ENUM:
+                return field.getEnumType().getFullName().equals(NULL_VALUE)
+                        ? NullValueCodec.INSTANCE
+                        : new EnumCodec(field.getEnumType());
+            default:
+                return isWellKnown(field.getMessageType())
+                        ? new WellKnownCodec(field.getMessageType())
+                        : new MessageCodecRef(field.getMessageType());
+        }
+    }
+
+    private static final class Int32Codec implements ValueCodec {
+        static final Int32Codec INSTANCE = new Int32Codec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.jsonValue(value.toString());
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return parseInt32(in.nextString());
+        }
+    }
+
+    private static final class Uint32Codec implements ValueCodec {
+        static final Uint32Codec INSTANCE = new Uint32Codec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.jsonValue(Integer.toUnsignedString((Integer) value));
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return parseUint32(in.nextString());
+        }
+    }
+
+    private static final class Int64Codec implements ValueCodec {
+        static final Int64Codec INSTANCE = new Int64Codec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            // 64-bit integers are quoted so JavaScript clients do not lose precision
+            out.value(value.toString());
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return parseInt64(in.nextString());
+        }
+    }
+
+    private static final class Uint64Codec implements ValueCodec {
+        static final Uint64Codec INSTANCE = new Uint64Codec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.value(Long.toUnsignedString((Long) value));
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return parseUint64(in.nextString());
+        }
+    }
+
+    private static final class FloatCodec implements ValueCodec {
+        static final FloatCodec INSTANCE = new FloatCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            float f = (Float) value;
+            if (Float.isNaN(f) || Float.isInfinite(f)) {
+                out.value(value.toString());
+            } else {
+                out.jsonValue(value.toString());
+            }
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            String text = in.nextString();
+            double value = parseDouble(text);
+            if (!Double.isInfinite(value) && Math.abs(value) > Float.MAX_VALUE * (1.0 + 1e-6)) {
+                throw new InvalidProtocolBufferException("Out of range float value: " + text);
+            }
+            return (float) value;
+        }
+    }
+
+    private static final class DoubleCodec implements ValueCodec {
+        static final DoubleCodec INSTANCE = new DoubleCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            double d = (Double) value;
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                out.value(value.toString());
+            } else {
+                out.jsonValue(value.toString());
+            }
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return parseDouble(in.nextString());
+        }
+    }
+
+    private static final class BoolCodec implements ValueCodec {
+        static final BoolCodec INSTANCE = new BoolCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.value((Boolean) value);
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            if (in.peek() == JsonToken.BOOLEAN) {
+                return in.nextBoolean();
+            }
+            String text = in.nextString();
+            if (text.equals("true")) {
+                return true;
+            } else if (text.equals("false")) {
+                return false;
+            }
+            throw new InvalidProtocolBufferException("Invalid bool value: " + text);
+        }
+    }
+
+    private static final class StringCodec implements ValueCodec {
+        static final StringCodec INSTANCE = new StringCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.value((String) value);
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            return in.nextString();
+        }
+    }
+
+    private static final class BytesCodec implements ValueCodec {
+        static final BytesCodec INSTANCE = new BytesCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            // Base64 padding is written as is, where HTML-safe escaping would turn it into \u003d
+            out.jsonValue('"' + Base64.getEncoder().encodeToString(((ByteString) value).toByteArray()) + '"');
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            String text = in.nextString();
+            try {
+                return ByteString.copyFrom(Base64.getDecoder().decode(text));
+            } catch (IllegalArgumentException e) {
+                // Both the standard and the URL-safe alphabet are accepted
+                return ByteString.copyFrom(Base64.getUrlDecoder().decode(text));
+            }
+        }
+    }
+
+    private static final class EnumCodec implements ValueCodec {
+        private final EnumDescriptor type;
+
+        EnumCodec(EnumDescriptor type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+            if (enumValue.getIndex() == -1) {
+                // Open enums may hold numbers that have no name
+                out.jsonValue(Integer.toString(enumValue.getNumber()));
+            } else {
+                out.value(enumValue.getName());
+            }
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            String text = in.nextString();
+            EnumValueDescriptor value = type.findValueByName(text);
+            if (value == null) {
+                int number;
+                try {
+                    number = parseInt32(text);
+                } catch (InvalidProtocolBufferException | NumberFormatException | ArithmeticException e) {
+                    // Unknown names are skipped like unknown fields
+                    return null;
+                }
+                value = type.isClosed() ? type.findValueByNumber(number) : type.findValueByNumberCreatingIfUnknown(number);
+            }
+            return value;
+        }
+    }
+
+    private static final class NullValueCodec implements ValueCodec {
+        static final NullValueCodec INSTANCE = new NullValueCodec();
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.nullValue();
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return field.getEnumType().findValueByNumber(0);
+            }
+            return new EnumCodec(field.getEnumType()).read(in, parent, field);
+        }
+
+        @Override
+        public boolean acceptsNull() {
+            return true;
+        }
+    }
+
+    private static final class MessageCodecRef implements ValueCodec {
+        private final Descriptor type;
+        private MessageCodec codec;
+
+        MessageCodecRef(Descriptor type) {
+            this.type = type;
+        }
+
+        private MessageCodec codec() {
+            // Racy but benign: every thread resolves the same cached codec
+            MessageCodec resolved = codec;
+            if (resolved == null) {
+                resolved = JsonCodec.codec(type);
+                codec = resolved;
+            }
+            return resolved;
+        }
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            codec().write(out, (MessageOrBuilder) value);
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            Message.Builder builder = parent.newBuilderForField(field);
+            codec().read(in, builder);
+            return builder.build();
+        }
+    }
+
+    private static final class WellKnownCodec implements ValueCodec {
+        private final boolean acceptsNull;
+
+        WellKnownCodec(Descriptor type) {
+            this.acceptsNull = type.getFullName().equals(VALUE);
+        }
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.jsonValue(JSON_FORMAT_PRINTER.print((MessageOrBuilder) value));
+        }
+
+        @Override
+        public Object read(JsonReader in, Message.Builder parent, FieldDescriptor field) throws IOException {
+            JsonElement element = JsonParser.parseReader(in);
+            Message.Builder builder = parent.newBuilderForField(field);
+            JSON_FORMAT_PARSER.merge(element.toString(), builder);
+            return builder.build();
+        }
+
+        @Override
+        public boolean acceptsNull() {
+            return acceptsNull;
+        }
+    }
+
+    private static int parseInt32(String text) throws InvalidProtocolBufferException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            // Exponents and integral fractions such as "1e3" or "2.0" are allowed
+            return parseDecimal(text).intValueExact();
+        }
+    }
+
+    private static int parseUint32(String text) throws InvalidProtocolBufferException {
+        long value = parseInt64(text);
+        if (value < 0 || value > 0xFFFFFFFFL) {
+            throw new InvalidProtocolBufferException("Out of range uint32 value: " + text);
+        }
+        return (int) value;
+    }
+
+    private static long parseInt64(String text) throws InvalidProtocolBufferException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return parseDecimal(text).longValueExact();
+        }
+    }
+
+    private static long parseUint64(String text) throws InvalidProtocolBufferException {
+        BigInteger value;
+        try {
+            long parsed = Long.parseLong(text);
+            if (parsed >= 0) {
+                return parsed;
+            }
+            value = BigInteger.valueOf(parsed);
+        } catch (NumberFormatException e) {
+            value = parseDecimal(text).toBigIntegerExact();
+        }
+        if (value.signum() < 0 || value.bitLength() > 64) {
+            throw new InvalidProtocolBufferException("Out of range uint64 value: " + text);
+        }
+        return value.longValue();
+    }
+
+    private static BigDecimal parseDecimal(String text) throws InvalidProtocolBufferException {
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            throw new InvalidProtocolBufferException("Not a number: " + text);
+        }
+    }
+
+    private static double parseDouble(String text) throws InvalidProtocolBufferException {
+        switch (text) {
+            case "NaN":
+                return Double.NaN;
+            case "Infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-Infinity":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                double value;
+                try {
+                    value = Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    throw new InvalidProtocolBufferException("Not a number: " + text);
+                }
+                if (Double.isInfinite(value)) {
+                    throw new InvalidProtocolBufferException("Out of range double value: " + text);
+                }
+                return value;
+        }
+    }
+}
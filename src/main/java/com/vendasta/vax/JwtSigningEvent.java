@@ -0,0 +1,19 @@
+package com.vendasta.vax;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for signing the assertion exchanged for an access token.
+ */
+@Name("com.vendasta.vax.JwtSigning")
+@Label("VAX JWT Signing")
+@Category("VAX SDK")
+@Description("Signing of a JWT assertion; reused assertions are not recorded")
+final class JwtSigningEvent extends Event {
+    @Label("Service Account")
+    String account;
+}
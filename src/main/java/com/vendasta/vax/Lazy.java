@@ -0,0 +1,50 @@
+package com.vendasta.vax;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A value that is only created when it is first needed.
+ *
+ * <p>Used for resources such as connection pools that are expensive to set up and that a
+ * client may never use, so building clients stays cheap.
+ *
+ * @param <T> the type of the value
+ */
+final class Lazy<T> implements Supplier<T> {
+    private final Supplier<T> factory;
+    private volatile T value;
+
+    Lazy(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the value, creating it on first use.
+     */
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = factory.get();
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Passes the value to an action if it has been created; a value that was never needed
+     * needs no cleanup either.
+     */
+    void ifCreated(Consumer<T> action) {
+        T result = value;
+        if (result != null) {
+            action.accept(result);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.vendasta.vax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * A channel that builds its transport on first use.
+ *
+ * <p>Building a channel loads and initializes the whole transport stack, which dominates
+ * the cost of constructing a client. Until a call is made, or the channel is asked to
+ * connect, this channel reports {@link ConnectivityState#IDLE} and remembers state change
+ * callbacks so they can be registered with the real channel once it exists. A channel shut
+ * down before it was ever used never builds its transport: its calls fail with
+ * {@code UNAVAILABLE}, as they would on a real channel that has been shut down.
+ */
+final class LazyChannel extends ManagedChannel {
+    private final String authority;
+    private final Supplier<ManagedChannel> factory;
+    private final List<PendingCallback> pendingCallbacks = new ArrayList<>();
+    private volatile ManagedChannel delegate;
+    private boolean shutdown;
+
+    LazyChannel(String authority, Supplier<ManagedChannel> factory) {
+        this.authority = authority;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the real channel, building it if needed, or null if this channel was shut down
+     * before it was built.
+     */
+    private ManagedChannel delegate() {
+        ManagedChannel channel = delegate;
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (this) {
+            if (delegate == null) {
+                if (shutdown) {
+                    return null;
+                }
+                channel = factory.get();
+                for (PendingCallback pending : pendingCallbacks) {
+                    channel.notifyWhenStateChanged(pending.source, pending.callback);
+                }
+                pendingCallbacks.clear();
+                delegate = channel;
+            }
+            return delegate;
+        }
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        ManagedChannel channel = delegate();
+        if (channel == null) {
+            return new ShutdownCall<>();
+        }
+        return channel.newCall(method, callOptions);
+    }
+
+    @Override
+    public String authority() {
+        ManagedChannel channel = delegate;
+        return channel != null ? channel.authority() : authority;
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        ManagedChannel channel = delegate;
+        if (channel == null) {
+            synchronized (this) {
+                if (shutdown) {
+                    return ConnectivityState.SHUTDOWN;
+                }
+                if (!requestConnection) {
+                    return ConnectivityState.IDLE;
+                }
+            }
+            channel = delegate();
+            if (channel == null) {
+                return ConnectivityState.SHUTDOWN;
+            }
+        }
+        return channel.getState(requestConnection);
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        synchronized (this) {
+            if (delegate == null) {
+                ConnectivityState current = shutdown ? ConnectivityState.SHUTDOWN : ConnectivityState.IDLE;
+                if (current == source) {
+                    pendingCallbacks.add(new PendingCallback(source, callback));
+                    return;
+                }
+            }
+        }
+        if (delegate == null) {
+            // The state has already moved on from the caller's source
+            VAXExecutors.shared().execute(callback);
+            return;
+        }
+        delegate.notifyWhenStateChanged(source, callback);
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        ManagedChannel channel = delegate;
+        if (channel != null) {
+            channel.resetConnectBackoff();
+        }
+    }
+
+    @Override
+    public void enterIdle() {
+        ManagedChannel channel = delegate;
+        if (channel != null) {
+            channel.enterIdle();
+        }
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        List<PendingCallback> callbacks = markShutdown();
+        if (callbacks == null) {
+            delegate.shutdown();
+        } else {
+            callbacks.forEach(pending -> pending.callback.run());
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        List<PendingCallback> callbacks = markShutdown();
+        if (callbacks == null) {
+            delegate.shutdownNow();
+        } else {
+            callbacks.forEach(pending -> pending.callback.run());
+        }
+        return this;
+    }
+
+    /**
+     * Marks the channel shut down, returning the callbacks to run if it was never built, or
+     * null if the real channel has to be shut down instead.
+     */
+    private synchronized List<PendingCallback> markShutdown() {
+        shutdown = true;
+        if (delegate != null) {
+            return null;
+        }
+        List<PendingCallback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        return callbacks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        ManagedChannel channel = delegate;
+        if (channel != null) {
+            return channel.isShutdown();
+        }
+        synchronized (this) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        // A channel that was never built has nothing left to terminate once it is shut down
+        return isShutdown() && (delegate == null || delegate.isTerminated());
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ManagedChannel channel = delegate;
+        if (channel != null) {
+            return channel.awaitTermination(timeout, unit);
+        }
+        return isShutdown();
+    }
+
+    private record PendingCallback(ConnectivityState source, Runnable callback) {}
+
+    /**
+     * A call on a channel that was shut down before it was built.
+     */
+    private static final class ShutdownCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        @Override
+        public void start(Listener<RespT> listener, Metadata headers) {
+            listener.onClose(Status.UNAVAILABLE.withDescription("Channel shutdown invoked"), new Metadata());
+        }
+
+        @Override
+        public void request(int numMessages) {}
+
+        @Override
+        public void cancel(String message, Throwable cause) {}
+
+        @Override
+        public void halfClose() {}
+
+        @Override
+        public void sendMessage(ReqT message) {}
+    }
+}
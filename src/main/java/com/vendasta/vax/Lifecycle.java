@@ -0,0 +1,70 @@
+package com.vendasta.vax;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ManagedChannel;
+
+/**
+ * Graceful shutdown of the transports owned by clients.
+ *
+ * <p>A transport first stops accepting new work and gets a grace period in which requests
+ * already in flight may complete. Whatever is still running after that is cancelled, so
+ * connections and their threads are released deterministically rather than when the
+ * transport is garbage collected.
+ */
+final class Lifecycle {
+    // How long to wait for cancelled work to wind down after a forced shutdown
+    private static final Duration FORCED_SHUTDOWN_WAIT = Duration.ofSeconds(1);
+
+    private Lifecycle() {}
+
+    /**
+     * Closes an HTTP client, letting in-flight requests finish within the grace period.
+     *
+     * @param httpClient the HTTP client to close
+     * @param gracePeriod how long in-flight requests may take to complete
+     * @return true if every request completed before the grace period ended
+     * @throws SDKException if interrupted while waiting; the client is then shut down forcibly
+     */
+    static boolean closeGracefully(HttpClient httpClient, Duration gracePeriod) throws SDKException {
+        httpClient.shutdown();
+        try {
+            if (httpClient.awaitTermination(gracePeriod)) {
+                return true;
+            }
+            httpClient.shutdownNow();
+            httpClient.awaitTermination(FORCED_SHUTDOWN_WAIT);
+            return false;
+        } catch (InterruptedException e) {
+            httpClient.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new SDKException("HTTP client shutdown was interrupted: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Shuts a channel down, letting in-flight calls finish within the grace period.
+     *
+     * @param channel the channel to shut down
+     * @param gracePeriod how long in-flight calls may take to complete
+     * @return true if every call completed before the grace period ended
+     * @throws SDKException if interrupted while waiting; the channel is then shut down forcibly
+     */
+    static boolean shutdownGracefully(ManagedChannel channel, Duration gracePeriod) throws SDKException {
+        channel.shutdown();
+        try {
+            if (channel.awaitTermination(gracePeriod.toNanos(), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            channel.shutdownNow();
+            channel.awaitTermination(FORCED_SHUTDOWN_WAIT.toNanos(), TimeUnit.NANOSECONDS);
+            return false;
+        } catch (InterruptedException e) {
+            channel.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new SDKException("Channel shutdown was interrupted: " + e.getMessage(), e);
+        }
+    }
+}
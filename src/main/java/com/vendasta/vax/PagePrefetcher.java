@@ -0,0 +1,293 @@
+package com.vendasta.vax;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks a cursor-paginated list endpoint, optionally fetching pages ahead of the caller.
+ *
+ * <p>A page is the last one when its cursor is null, empty, or the same as the previous
+ * cursor. With a prefetch depth of zero every page is fetched on the caller's thread when it
+ * is needed. Otherwise a background task keeps up to {@code prefetchPages} pages buffered
+ * while the caller processes the current one; it pauses once the buffer is full, so memory
+ * use stays bounded no matter how long the list is.
+ *
+ * <p>If the caller takes no page for longer than the idle timeout, for example because it
+ * abandoned the stream without closing it, the background task hands its position over and
+ * ends rather than holding a pool thread indefinitely. A caller that does come back fetches
+ * the remaining pages on its own thread.
+ *
+ * @param <R> the request type
+ * @param <V> the page type
+ */
+final class PagePrefetcher<R, V> implements Iterator<V>, AutoCloseable {
+    private static final Object END = new Object();
+    // Wakes a caller waiting on an empty buffer after the producer handed over
+    private static final Object HANDED_OVER = new Object();
+    private static final long OFFER_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // How long background fetching waits for a caller whose requests have no timeout
+    private static final Duration UNBOUNDED_IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+    private final Function<R, V> fetch;
+    private final Function<V, String> cursorExtractor;
+    private final BiFunction<R, String, R> requestUpdater;
+    private final long idleTimeoutNanos;
+    private final BlockingQueue<Object> buffer;
+    private final Future<?> producer;
+    private volatile boolean closed;
+    // Set by the producer when it stops because the caller stopped taking pages
+    private volatile Handoff<R> handoff;
+
+    // Only used when pages are fetched on the caller's thread
+    private boolean prefetching;
+    private R nextRequest;
+    private String previousCursor;
+    private boolean exhausted;
+    // Fetched by the producer before it handed over, but never buffered
+    private V handedOverPage;
+
+    private Object next;
+
+    private PagePrefetcher(R firstRequest, Function<R, V> fetch, Function<V, String> cursorExtractor,
+                           BiFunction<R, String, R> requestUpdater, int prefetchPages, Duration idleTimeout) {
+        this.fetch = fetch;
+        this.cursorExtractor = cursorExtractor;
+        this.requestUpdater = requestUpdater;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.nextRequest = firstRequest;
+        this.prefetching = prefetchPages > 0;
+        if (prefetching) {
+            this.buffer = new ArrayBlockingQueue<>(prefetchPages);
+            this.producer = VAXExecutors.shared().submit(() -> produce(firstRequest));
+        } else {
+            this.buffer = null;
+            this.producer = null;
+        }
+    }
+
+    /**
+     * Creates a lazy stream over every page of a paginated endpoint.
+     *
+     * <p>The stream must be closed when it is not fully consumed so background fetching stops.
+     *
+     * @param firstRequest the request for the first page
+     * @param fetch performs a single page request
+     * @param cursorExtractor extracts the next-page cursor from a page
+     * @param requestUpdater creates the request for the next page from the previous request and cursor
+     * @param prefetchPages how many pages to fetch ahead of the caller, zero to disable prefetching
+     * @param idleTimeout how long background fetching waits for the caller to take a page
+     * @return the stream of pages
+     */
+    static <R, V> Stream<V> stream(R firstRequest, Function<R, V> fetch, Function<V, String> cursorExtractor,
+                                   BiFunction<R, String, R> requestUpdater, int prefetchPages, Duration idleTimeout) {
+        Objects.requireNonNull(firstRequest, "Request cannot be null");
+        Objects.requireNonNull(fetch, "Fetch function cannot be null");
+        Objects.requireNonNull(cursorExtractor, "Cursor extractor cannot be null");
+        Objects.requireNonNull(requestUpdater, "Request updater cannot be null");
+        Objects.requireNonNull(idleTimeout, "Idle timeout cannot be null");
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages cannot be negative");
+        }
+
+        PagePrefetcher<R, V> pages = new PagePrefetcher<>(firstRequest, fetch, cursorExtractor, requestUpdater, prefetchPages, idleTimeout);
+        Spliterator<V> spliterator = Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(pages::close);
+    }
+
+    /**
+     * Returns how long background fetching waits for the caller: the request timeout, since a
+     * page left unbuffered for longer would have timed out had it been fetched on demand.
+     */
+    static Duration idleTimeout(RequestOptions options) {
+        return options.getTimeout() > 0 ? options.getTimeoutDuration() : UNBOUNDED_IDLE_TIMEOUT;
+    }
+
+    private void produce(R firstRequest) {
+        R request = firstRequest;
+        String previous = null;
+        try {
+            while (!closed) {
+                V page = fetch.apply(request);
+                if (!put(page)) {
+                    handOver(page, request, previous);
+                    return;
+                }
+                String cursor = cursorExtractor.apply(page);
+                if (isLastCursor(cursor, previous)) {
+                    break;
+                }
+                previous = cursor;
+                request = requestUpdater.apply(request, cursor);
+            }
+            if (!put(END)) {
+                handOver(END, null, null);
+            }
+        } catch (Throwable t) {
+            Failure failure = new Failure(t);
+            if (!put(failure)) {
+                handOver(failure, null, null);
+            }
+        }
+    }
+
+    /**
+     * Buffers an item, returning false if the stream was closed or the caller took no page
+     * within the idle timeout.
+     */
+    private boolean put(Object item) {
+        long deadline = System.nanoTime() + idleTimeoutNanos;
+        try {
+            while (!closed) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                if (buffer.offer(item, Math.min(remainingNanos, OFFER_SLICE_NANOS), TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void handOver(Object item, R request, String previous) {
+        if (closed) {
+            return;
+        }
+        handoff = new Handoff<>(item, request, previous);
+        // Fails only if the buffer is full, in which case the caller sees the handoff once it is drained
+        buffer.offer(HANDED_OVER);
+    }
+
+    private static boolean isLastCursor(String cursor, String previous) {
+        return cursor == null || cursor.isEmpty() || cursor.equals(previous);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != END;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        return (V) item;
+    }
+
+    private Object advance() {
+        if (closed) {
+            return END;
+        }
+        if (!prefetching) {
+            return fetchOnCallerThread();
+        }
+
+        Object item;
+        try {
+            do {
+                // Read before polling: once the producer has handed over, the buffer only drains
+                Handoff<R> handedOver = handoff;
+                item = buffer.poll();
+                if (item == null) {
+                    if (handedOver != null) {
+                        return resume(handedOver);
+                    }
+                    item = buffer.take();
+                }
+            } while (item == HANDED_OVER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SDKException("Interrupted while waiting for the next page", e);
+        }
+        return unwrap(item);
+    }
+
+    /**
+     * Carries on from where the producer stopped, fetching on the caller's thread.
+     */
+    @SuppressWarnings("unchecked")
+    private Object resume(Handoff<R> handedOver) {
+        prefetching = false;
+        if (handedOver.item() == END || handedOver.item() instanceof Failure) {
+            exhausted = true;
+            return unwrap(handedOver.item());
+        }
+        nextRequest = handedOver.request();
+        previousCursor = handedOver.previousCursor();
+        handedOverPage = (V) handedOver.item();
+        return fetchOnCallerThread();
+    }
+
+    private Object unwrap(Object item) {
+        if (item instanceof Failure failure) {
+            close();
+            throw failure.toException();
+        }
+        return item;
+    }
+
+    private Object fetchOnCallerThread() {
+        if (exhausted) {
+            return END;
+        }
+        V page = handedOverPage;
+        if (page != null) {
+            handedOverPage = null;
+        } else {
+            page = fetch.apply(nextRequest);
+        }
+        String cursor = cursorExtractor.apply(page);
+        if (isLastCursor(cursor, previousCursor)) {
+            exhausted = true;
+        } else {
+            previousCursor = cursor;
+            nextRequest = requestUpdater.apply(nextRequest, cursor);
+        }
+        return page;
+    }
+
+    /**
+     * Stops background fetching and drops any buffered pages.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (producer != null) {
+            producer.cancel(true);
+            buffer.clear();
+        }
+    }
+
+    private record Handoff<R>(Object item, R request, String previousCursor) {}
+
+    private record Failure(Throwable cause) {
+        RuntimeException toException() {
+            if (cause instanceof RuntimeException runtimeException) {
+                return runtimeException;
+            }
+            return new SDKException("Failed to fetch page: " + cause.getMessage(), cause);
+        }
+    }
+}
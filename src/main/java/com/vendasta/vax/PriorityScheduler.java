@@ -0,0 +1,327 @@
+package com.vendasta.vax;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.Status;
+
+/**
+ * Admits requests by priority so latency-critical calls get capacity before bulk traffic.
+ *
+ * <p>The scheduler bounds how many requests may be in flight at once, overall and per
+ * {@link RequestOptions.Priority priority lane}. A request that finds no free capacity
+ * waits in its lane's queue. Whenever capacity is released the next request is chosen
+ * either strictly by priority ({@link Mode#STRICT}) or by weighted round robin between the
+ * lanes that have waiters ({@link Mode#WEIGHTED}), which keeps bulk traffic moving under
+ * sustained interactive load. Capping the bulk lane below the overall limit keeps capacity
+ * free for interactive calls even when bulk requests are slow.
+ *
+ * <p>A request waits at most its own timeout; the time spent waiting counts against it.
+ * Requests that time out while queued fail with status {@link Status.Code#DEADLINE_EXCEEDED}.
+ * A scheduler may be shared by several clients to bound their combined concurrency.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * PriorityScheduler scheduler = PriorityScheduler.builder()
+ *     .maxConcurrency(64)
+ *     .laneConcurrency(RequestOptions.Priority.BULK, 16)
+ *     .build();
+ *
+ * HTTPClient client = HTTPClient.builder()
+ *     .host("api.example.com")
+ *     .priorityScheduler(scheduler)
+ *     .build();
+ * }</pre>
+ */
+public final class PriorityScheduler {
+    private static final RequestOptions.Priority[] LANES = RequestOptions.Priority.values();
+
+    /**
+     * How the next request is chosen when several lanes have waiters.
+     */
+    public enum Mode {
+        /** Always serve the most urgent lane first. */
+        STRICT,
+        /** Share capacity between lanes in proportion to their weights. */
+        WEIGHTED
+    }
+
+    private final Mode mode;
+    private final int maxConcurrency;
+    private final int[] laneConcurrency;
+    private final int[] weights;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int[] laneActive = new int[LANES.length];
+    private final int[] currentWeights = new int[LANES.length];
+    private final List<ArrayDeque<Waiter>> waiters;
+    private int active;
+
+    private PriorityScheduler(Builder builder) {
+        this.mode = builder.mode;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.laneConcurrency = new int[LANES.length];
+        this.weights = new int[LANES.length];
+        this.waiters = new ArrayList<>(LANES.length);
+        for (RequestOptions.Priority lane : LANES) {
+            laneConcurrency[lane.ordinal()] = builder.laneConcurrency.getOrDefault(lane, maxConcurrency);
+            weights[lane.ordinal()] = builder.weights.get(lane);
+            waiters.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Waits for capacity in a lane.
+     *
+     * <p>Every successful call must be paired with a call to {@link #release}.
+     *
+     * @param priority the request's lane
+     * @param timeoutNanos how long the request may wait
+     * @return how long the request waited, in nanoseconds
+     * @throws SDKException with status DEADLINE_EXCEEDED if no capacity became available in
+     *                      time, or if interrupted while waiting
+     */
+    public long acquire(RequestOptions.Priority priority, long timeoutNanos) throws SDKException {
+        int lane = priority.ordinal();
+        lock.lock();
+        try {
+            if (waiters.get(lane).isEmpty() && hasCapacity(lane)) {
+                admit(lane);
+                return 0;
+            }
+
+            long startNanos = System.nanoTime();
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiters.get(lane).addLast(waiter);
+            long remainingNanos = timeoutNanos;
+            try {
+                while (!waiter.admitted) {
+                    if (remainingNanos <= 0) {
+                        waiters.get(lane).remove(waiter);
+                        throw new SDKException("Timed out waiting for " + priority + " request capacity",
+                                Status.Code.DEADLINE_EXCEEDED.value());
+                    }
+                    remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    release(priority);
+                } else {
+                    waiters.get(lane).remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new SDKException("Interrupted while waiting for request capacity: " + e.getMessage(), e);
+            }
+            return System.nanoTime() - startNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases capacity taken by {@link #acquire} and admits the next waiting request, if any.
+     *
+     * @param priority the lane the capacity was taken in
+     */
+    public void release(RequestOptions.Priority priority) {
+        int lane = priority.ordinal();
+        lock.lock();
+        try {
+            active--;
+            laneActive[lane]--;
+            while (active < maxConcurrency) {
+                int next = nextLane();
+                if (next < 0) {
+                    break;
+                }
+                Waiter waiter = waiters.get(next).pollFirst();
+                admit(next);
+                waiter.admitted = true;
+                waiter.condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests in flight in a lane.
+     *
+     * @param priority the lane
+     * @return the in-flight request count
+     */
+    public int getActive(RequestOptions.Priority priority) {
+        lock.lock();
+        try {
+            return laneActive[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for capacity in a lane.
+     *
+     * @param priority the lane
+     * @return the queued request count
+     */
+    public int getQueued(RequestOptions.Priority priority) {
+        lock.lock();
+        try {
+            return waiters.get(priority.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasCapacity(int lane) {
+        return active < maxConcurrency && laneActive[lane] < laneConcurrency[lane];
+    }
+
+    private void admit(int lane) {
+        active++;
+        laneActive[lane]++;
+    }
+
+    /**
+     * Picks the lane whose first waiter is admitted next, or -1 if no waiter may be admitted.
+     */
+    private int nextLane() {
+        if (mode == Mode.STRICT) {
+            for (int lane = 0; lane < LANES.length; lane++) {
+                if (!waiters.get(lane).isEmpty() && laneActive[lane] < laneConcurrency[lane]) {
+                    return lane;
+                }
+            }
+            return -1;
+        }
+
+        // Smooth weighted round robin: lanes take turns in proportion to their weights
+        int best = -1;
+        int totalWeight = 0;
+        for (int lane = 0; lane < LANES.length; lane++) {
+            if (!waiters.get(lane).isEmpty() && laneActive[lane] < laneConcurrency[lane]) {
+                currentWeights[lane] += weights[lane];
+                totalWeight += weights[lane];
+                if (best < 0 || currentWeights[lane] > currentWeights[best]) {
+                    best = lane;
+                }
+            }
+        }
+        if (best >= 0) {
+            currentWeights[best] -= totalWeight;
+        }
+        return best;
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private boolean admitted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Builder for configuring PriorityScheduler instances.
+     */
+    public static class Builder {
+        private Mode mode = Mode.STRICT;
+        private int maxConcurrency = 64;
+        private final Map<RequestOptions.Priority, Integer> laneConcurrency = new EnumMap<>(RequestOptions.Priority.class);
+        private final Map<RequestOptions.Priority, Integer> weights = new EnumMap<>(Map.of(
+                RequestOptions.Priority.INTERACTIVE, 8,
+                RequestOptions.Priority.NORMAL, 4,
+                RequestOptions.Priority.BULK, 1));
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets how the next request is chosen when several lanes have waiters.
+         *
+         * @param mode the scheduling mode (default: {@link Mode#STRICT})
+         * @return this builder instance
+         */
+        public Builder mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how many requests may be in flight at once across all lanes.
+         *
+         * @param maxConcurrency the overall concurrency limit (default: 64)
+         * @return this builder instance
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets how many requests of one lane may be in flight at once.
+         *
+         * @param priority the lane
+         * @param maxConcurrency the lane's concurrency limit (default: the overall limit)
+         * @return this builder instance
+         */
+        public Builder laneConcurrency(RequestOptions.Priority priority, int maxConcurrency) {
+            this.laneConcurrency.put(Objects.requireNonNull(priority, "Priority cannot be null"), maxConcurrency);
+            return this;
+        }
+
+        /**
+         * Sets a lane's share of capacity in {@link Mode#WEIGHTED} mode.
+         *
+         * @param priority the lane
+         * @param weight the lane's weight (default: 8 interactive, 4 normal, 1 bulk)
+         * @return this builder instance
+         */
+        public Builder weight(RequestOptions.Priority priority, int weight) {
+            this.weights.put(Objects.requireNonNull(priority, "Priority cannot be null"), weight);
+            return this;
+        }
+
+        /**
+         * Builds the PriorityScheduler instance.
+         *
+         * @return configured PriorityScheduler instance
+         * @throws IllegalArgumentException if a limit or weight is less than 1
+         */
+        public PriorityScheduler build() {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be at least 1");
+            }
+            for (int limit : laneConcurrency.values()) {
+                if (limit < 1) {
+                    throw new IllegalArgumentException("Lane concurrency must be at least 1");
+                }
+            }
+            for (int weight : weights.values()) {
+                if (weight < 1) {
+                    throw new IllegalArgumentException("Weights must be at least 1");
+                }
+            }
+            return new PriorityScheduler(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for PriorityScheduler.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
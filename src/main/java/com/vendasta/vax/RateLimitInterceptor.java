@@ -0,0 +1,70 @@
+package com.vendasta.vax;
+
+import java.time.Duration;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Applies a {@link RateLimiter} to gRPC calls, keyed by full method name.
+ *
+ * <p>Calls that end in {@code RESOURCE_EXHAUSTED}, or that carry retry pushback in their
+ * trailers, pause the method's bucket for the duration the server asked for.
+ */
+final class RateLimitInterceptor implements ClientInterceptor {
+    private static final Metadata.Key<String> RETRY_PUSHBACK = Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final RateLimiter rateLimiter;
+
+    RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        String endpoint = method.getFullMethodName();
+        try {
+            rateLimiter.acquire(endpoint);
+        } catch (SDKException e) {
+            throw e.getStatus().withDescription(e.getMessage()).asRuntimeException();
+        }
+
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        Duration pushback = retryPushback(trailers);
+                        if (pushback != null || status.getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+                            rateLimiter.onThrottled(endpoint, pushback);
+                        } else if (status.isOk()) {
+                            rateLimiter.onSuccess(endpoint);
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+
+    private static Duration retryPushback(Metadata trailers) {
+        String value = trailers != null ? trailers.get(RETRY_PUSHBACK) : null;
+        if (value == null) {
+            return null;
+        }
+        try {
+            long millis = Long.parseLong(value.trim());
+            return millis >= 0 ? Duration.ofMillis(millis) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
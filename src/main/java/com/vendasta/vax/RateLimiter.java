@@ -0,0 +1,325 @@
+package com.vendasta.vax;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Status;
+
+/**
+ * Client-side rate limiter that keeps request rates under the server's quotas.
+ *
+ * <p>Each endpoint (an HTTP path or a gRPC full method name) gets its own token bucket
+ * refilled at the configured rate. When the server throttles a request, the endpoint's
+ * bucket is paused for the duration the server asked for ({@code Retry-After} or
+ * {@code grpc-retry-pushback-ms}) and its rate is lowered; successful requests then
+ * raise it gradually back to the configured rate. This keeps callers just under the
+ * quota instead of oscillating in and out of throttling.
+ *
+ * <p>When no permit is available a caller either waits for one ({@link Mode#BLOCK}, up to
+ * a maximum wait) or is rejected right away ({@link Mode#FAIL_FAST}). Rejections are
+ * reported as {@link SDKException}s with status {@link Status.Code#RESOURCE_EXHAUSTED}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * RateLimiter limiter = RateLimiter.builder()
+ *     .permitsPerSecond(50)
+ *     .burst(10)
+ *     .endpointPermitsPerSecond("/bulk/import", 5)
+ *     .build();
+ *
+ * HTTPClient client = HTTPClient.builder()
+ *     .host("api.example.com")
+ *     .rateLimiter(limiter)
+ *     .build();
+ * }</pre>
+ */
+public final class RateLimiter {
+    // Throttled endpoints slow down multiplicatively and recover additively
+    private static final double BACKOFF_FACTOR = 0.7;
+    private static final double RECOVERY_FRACTION = 0.02;
+    private static final double MIN_RATE_FRACTION = 0.1;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    /**
+     * What callers experience when no permit is available.
+     */
+    public enum Mode {
+        /** Wait for a permit, up to the configured maximum wait. */
+        BLOCK,
+        /** Reject the request immediately. */
+        FAIL_FAST
+    }
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final Mode mode;
+    private final long maxWaitNanos;
+    private final Map<String, Double> endpointPermitsPerSecond;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private RateLimiter(Builder builder) {
+        this.permitsPerSecond = builder.permitsPerSecond;
+        this.burst = builder.burst;
+        this.mode = builder.mode;
+        this.maxWaitNanos = builder.maxWait.toNanos();
+        this.endpointPermitsPerSecond = Map.copyOf(builder.endpointPermitsPerSecond);
+    }
+
+    /**
+     * Acquires a permit for an endpoint according to the configured mode.
+     *
+     * @param endpoint the endpoint being called
+     * @throws SDKException with status RESOURCE_EXHAUSTED if no permit could be obtained
+     */
+    public void acquire(String endpoint) throws SDKException {
+        long waitNanos = reserve(endpoint);
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SDKException("Interrupted while waiting for rate limit: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Acquires a permit for an endpoint without blocking the calling thread.
+     *
+     * @param endpoint the endpoint being called
+     * @return a future that completes once the permit is available, or completes exceptionally
+     *         with an {@link SDKException} if the request was rejected
+     */
+    public CompletableFuture<Void> acquireAsync(String endpoint) {
+        long waitNanos;
+        try {
+            waitNanos = reserve(endpoint);
+        } catch (SDKException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Takes a permit for an endpoint only if one is available right now.
+     *
+     * @param endpoint the endpoint being called
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire(String endpoint) {
+        return bucket(endpoint).reserve(System.nanoTime(), 0) == 0;
+    }
+
+    /**
+     * Records that the server throttled a request, pausing the endpoint and lowering its rate.
+     *
+     * @param endpoint the throttled endpoint
+     * @param retryAfter how long the server asked clients to wait, or null if it did not say
+     */
+    public void onThrottled(String endpoint, Duration retryAfter) {
+        Duration pause = retryAfter != null && !retryAfter.isNegative() ? retryAfter : DEFAULT_RETRY_AFTER;
+        bucket(endpoint).throttle(System.nanoTime(), pause.toNanos());
+    }
+
+    /**
+     * Records a request the server accepted, letting a throttled endpoint recover its rate.
+     *
+     * @param endpoint the endpoint
+     */
+    public void onSuccess(String endpoint) {
+        Bucket bucket = buckets.get(endpoint);
+        if (bucket != null) {
+            bucket.recover();
+        }
+    }
+
+    private long reserve(String endpoint) throws SDKException {
+        long maxWait = mode == Mode.FAIL_FAST ? 0 : maxWaitNanos;
+        Bucket bucket = bucket(endpoint);
+        long waitNanos = bucket.reserve(System.nanoTime(), maxWait);
+        if (waitNanos < 0) {
+            throw bucket.rejection;
+        }
+        return waitNanos;
+    }
+
+    private Bucket bucket(String endpoint) {
+        Objects.requireNonNull(endpoint, "Endpoint cannot be null");
+        return buckets.computeIfAbsent(endpoint,
+            e -> new Bucket(e, endpointPermitsPerSecond.getOrDefault(e, permitsPerSecond), burst));
+    }
+
+    /**
+     * A token bucket that hands out reservations, so waiting callers are served in order.
+     */
+    private static final class Bucket {
+        // Rejections are routine under load, so they share one exception without a stack trace
+        final SDKException rejection;
+        private final double maxRate;
+        private final double minRate;
+        private final double capacity;
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos;
+        private long pausedUntilNanos;
+
+        Bucket(String endpoint, double maxRate, int burst) {
+            this.rejection = SDKException.preallocated("Client-side rate limit exceeded for " + endpoint, Status.Code.RESOURCE_EXHAUSTED);
+            this.maxRate = maxRate;
+            this.minRate = maxRate * MIN_RATE_FRACTION;
+            this.capacity = burst;
+            this.rate = maxRate;
+            this.tokens = burst;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * Takes a permit, returning how long the caller must wait before using it,
+         * or -1 if that would be longer than {@code maxWaitNanos}.
+         */
+        synchronized long reserve(long now, long maxWaitNanos) {
+            refill(now);
+            long pauseNanos = Math.max(0, pausedUntilNanos - now);
+            long waitNanos = pauseNanos;
+            if (tokens < 1) {
+                waitNanos = Math.max(waitNanos, (long) ((1 - tokens) / rate * 1_000_000_000L));
+            }
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            // Borrow against future refills so later callers queue up behind this one
+            tokens -= 1;
+            return waitNanos;
+        }
+
+        synchronized void throttle(long now, long pauseNanos) {
+            refill(now);
+            pausedUntilNanos = Math.max(pausedUntilNanos, now + pauseNanos);
+            rate = Math.max(minRate, rate * BACKOFF_FACTOR);
+            tokens = Math.min(tokens, 0);
+        }
+
+        synchronized void recover() {
+            if (rate < maxRate) {
+                rate = Math.min(maxRate, rate + maxRate * RECOVERY_FRACTION);
+            }
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * rate / 1_000_000_000L);
+                lastRefillNanos = now;
+            }
+        }
+    }
+
+    /**
+     * Builder for configuring RateLimiter instances.
+     */
+    public static class Builder {
+        private double permitsPerSecond = 100;
+        private int burst = 10;
+        private Mode mode = Mode.BLOCK;
+        private Duration maxWait = Duration.ofSeconds(10);
+        private final Map<String, Double> endpointPermitsPerSecond = new HashMap<>();
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the sustained request rate allowed per endpoint.
+         *
+         * @param permitsPerSecond requests per second (default: 100)
+         * @return this builder instance
+         */
+        public Builder permitsPerSecond(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets how many requests an idle endpoint may send back to back.
+         *
+         * @param burst the bucket capacity (default: 10)
+         * @return this builder instance
+         */
+        public Builder burst(int burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets what happens when no permit is available.
+         *
+         * @param mode the rate limit mode (default: {@link Mode#BLOCK})
+         * @return this builder instance
+         */
+        public Builder mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the longest a caller waits for a permit in {@link Mode#BLOCK} before being rejected.
+         *
+         * @param maxWait the maximum wait (default: 10 seconds)
+         * @return this builder instance
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = Objects.requireNonNull(maxWait, "Max wait cannot be null");
+            return this;
+        }
+
+        /**
+         * Overrides the request rate for a single endpoint.
+         *
+         * @param endpoint the HTTP path or gRPC full method name
+         * @param permitsPerSecond requests per second for that endpoint
+         * @return this builder instance
+         */
+        public Builder endpointPermitsPerSecond(String endpoint, double permitsPerSecond) {
+            this.endpointPermitsPerSecond.put(Objects.requireNonNull(endpoint, "Endpoint cannot be null"), permitsPerSecond);
+            return this;
+        }
+
+        /**
+         * Builds the RateLimiter instance.
+         *
+         * @return configured RateLimiter instance
+         * @throws IllegalArgumentException if the configuration is invalid
+         */
+        public RateLimiter build() {
+            if (permitsPerSecond <= 0 || endpointPermitsPerSecond.values().stream().anyMatch(rate -> rate <= 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            if (maxWait.isNegative()) {
+                throw new IllegalArgumentException("maxWait cannot be negative");
+            }
+            return new RateLimiter(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for RateLimiter.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
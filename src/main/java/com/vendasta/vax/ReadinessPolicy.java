@@ -0,0 +1,133 @@
+package com.vendasta.vax;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Decides what a gRPC call does when the client's channel is not connected.
+ *
+ * <p>In {@link Mode#FAIL_FAST} mode calls fail with {@code UNAVAILABLE} as soon as the
+ * channel has failed to connect, so an outage sheds load immediately instead of building
+ * up queued calls. In {@link Mode#WAIT_FOR_READY} mode a call waits for the channel to
+ * connect, but for no longer than {@code maxWait}; if the channel is still not ready by then
+ * the call fails with {@code UNAVAILABLE}. The time spent waiting counts against the call's
+ * timeout.
+ *
+ * <p>Clients configured with failover always fail fast, so an outage moves traffic to
+ * another environment rather than holding calls back.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * GRPCClient<MyServiceBlockingStub> client = GRPCClient.builder()
+ *     .host("grpc.example.com")
+ *     .readinessPolicy(ReadinessPolicy.builder()
+ *         .mode(ReadinessPolicy.Mode.FAIL_FAST)
+ *         .build())
+ *     .build();
+ * }</pre>
+ */
+public final class ReadinessPolicy {
+    private static final ReadinessPolicy DEFAULT = builder().build();
+
+    /**
+     * What a call does while the channel is not connected.
+     */
+    public enum Mode {
+        /** Fail as soon as the channel has failed to connect. */
+        FAIL_FAST,
+        /** Wait for the channel to connect, up to the configured maximum. */
+        WAIT_FOR_READY
+    }
+
+    private final Mode mode;
+    private final Duration maxWait;
+
+    private ReadinessPolicy(Builder builder) {
+        this.mode = builder.mode;
+        this.maxWait = builder.maxWait;
+    }
+
+    /**
+     * Returns the policy used when none is configured: wait for up to 5 seconds.
+     *
+     * @return the default policy
+     */
+    public static ReadinessPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns what a call does while the channel is not connected.
+     *
+     * @return the readiness mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns how long a call may wait for the channel in {@link Mode#WAIT_FOR_READY} mode.
+     *
+     * @return the maximum wait
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Builder for configuring ReadinessPolicy instances.
+     */
+    public static class Builder {
+        private Mode mode = Mode.WAIT_FOR_READY;
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets what a call does while the channel is not connected.
+         *
+         * @param mode the readiness mode (default: {@link Mode#WAIT_FOR_READY})
+         * @return this builder instance
+         */
+        public Builder mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long a call may wait for the channel in {@link Mode#WAIT_FOR_READY} mode.
+         *
+         * @param maxWait the maximum wait (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = Objects.requireNonNull(maxWait, "Max wait cannot be null");
+            return this;
+        }
+
+        /**
+         * Builds the ReadinessPolicy instance.
+         *
+         * @return configured ReadinessPolicy instance
+         * @throws IllegalArgumentException if the maximum wait is negative
+         */
+        public ReadinessPolicy build() {
+            if (maxWait.isNegative()) {
+                throw new IllegalArgumentException("maxWait cannot be negative");
+            }
+            return new ReadinessPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ReadinessPolicy.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,63 @@
+package com.vendasta.vax;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for a single VAX API request.
+ *
+ * <p>HTTP requests are recorded by {@link HTTPClient} and cover the whole call, including
+ * retries. gRPC calls are recorded per attempt by {@link RequestEventInterceptor}. Fields
+ * are only filled in when the event is enabled in the recording's settings.
+ */
+@Name("com.vendasta.vax.Request")
+@Label("VAX Request")
+@Category("VAX SDK")
+@Description("A request made to a VAX API")
+final class RequestEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(RequestEvent.class);
+
+    @Label("Transport")
+    String transport;
+
+    @Label("Host")
+    String host;
+
+    @Label("Path")
+    @Description("HTTP path or full gRPC method name")
+    String path;
+
+    @Label("Priority")
+    String priority;
+
+    @Label("Status")
+    @Description("HTTP status code or gRPC status code value, 0 if no response was received")
+    int status;
+
+    @Label("Request Size")
+    @Description("Serialized message size for gRPC, JSON body length for HTTP")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @Description("Serialized message size for gRPC, JSON body length for HTTP")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Serialization Time")
+    @Description("Time spent encoding the request and, for HTTP, decoding the response")
+    @Timespan
+    long serializationNanos;
+
+    @Label("Retries")
+    int retries;
+
+    @Label("Error")
+    String error;
+}
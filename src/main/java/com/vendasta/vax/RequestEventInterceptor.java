@@ -0,0 +1,82 @@
+package com.vendasta.vax;
+
+import com.google.protobuf.MessageLite;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Records a {@link RequestEvent} for every gRPC call attempt.
+ *
+ * <p>Calls pass through untouched unless a recording has the event enabled, so the
+ * interceptor costs nothing outside of profiling sessions.
+ */
+final class RequestEventInterceptor implements ClientInterceptor {
+    /**
+     * How many times the call has been retried before this attempt.
+     */
+    static final CallOptions.Key<Integer> RETRIES = CallOptions.Key.createWithDefault("vax-retries", 0);
+    /**
+     * The priority the call was made with.
+     */
+    static final CallOptions.Key<RequestOptions.Priority> PRIORITY = CallOptions.Key.create("vax-priority");
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (!RequestEvent.TYPE.isEnabled()) {
+            return next.newCall(method, callOptions);
+        }
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        event.transport = "gRPC";
+        event.host = next.authority();
+        event.path = method.getFullMethodName();
+        event.retries = callOptions.getOption(RETRIES);
+        RequestOptions.Priority priority = callOptions.getOption(PRIORITY);
+        event.priority = priority != null ? priority.name() : null;
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        if (message instanceof MessageLite response) {
+                            event.responseBytes += response.getSerializedSize();
+                        }
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.status = status.getCode().value();
+                            if (!status.isOk()) {
+                                event.error = status.getDescription();
+                            }
+                            event.commit();
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                long startNanos = System.nanoTime();
+                super.sendMessage(message);
+                event.serializationNanos += System.nanoTime() - startNanos;
+                if (message instanceof MessageLite request) {
+                    event.requestBytes += request.getSerializedSize();
+                }
+            }
+        };
+    }
+}
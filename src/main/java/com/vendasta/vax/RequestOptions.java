@@ -1,43 +1,111 @@
 package com.vendasta.vax;
 
+import java.time.Duration;
+import java.util.Objects;
+
 /**
  * Configuration options for individual API requests.
  * 
  * <p>This class allows customization of request behavior including
- * timeouts and authentication settings.
+ * timeouts and authentication settings. Instances are immutable, so
+ * clients can reuse them across calls.
  */
 public class RequestOptions {
-    private Boolean includeToken = true;
-    private Float timeout = 10000f;
+    private static final float DEFAULT_TIMEOUT = 10000f;
+
+    /**
+     * How urgently a request needs capacity when a {@link PriorityScheduler} is configured.
+     */
+    public enum Priority {
+        /** Latency-critical calls, such as user-facing lookups. */
+        INTERACTIVE,
+        /** Ordinary calls. */
+        NORMAL,
+        /** Background and bulk traffic that can wait. */
+        BULK
+    }
+
+    private final boolean includeToken;
+    private final float timeout;
+    private final Duration timeoutDuration;
+    private final Priority priority;
+    private final boolean idempotent;
 
     RequestOptions(Builder builder) {
-        if (builder.includeToken != null) {
-            this.includeToken = builder.includeToken;
-        }
-        if (builder.timeout != null) {
-            this.timeout = builder.timeout;
-        }
+        this(builder.includeToken, builder.timeoutSet ? builder.timeout : DEFAULT_TIMEOUT, builder.priority, builder.idempotent);
+    }
+
+    RequestOptions(boolean includeToken, float timeout) {
+        this(includeToken, timeout, Priority.NORMAL, false);
+    }
+
+    RequestOptions(boolean includeToken, float timeout, Priority priority, boolean idempotent) {
+        this.includeToken = includeToken;
+        this.timeout = timeout;
+        this.timeoutDuration = Duration.ofMillis((long) (timeout * 1000));
+        this.priority = priority;
+        this.idempotent = idempotent;
     }
 
-    Boolean getIncludeToken() {
+    boolean getIncludeToken() {
         return this.includeToken;
     }
 
-    Float getTimeout() {
+    float getTimeout() {
         return this.timeout;
     }
 
+    /**
+     * Returns the timeout as a duration, computed once when the options are created.
+     */
+    Duration getTimeoutDuration() {
+        return this.timeoutDuration;
+    }
+
+    Priority getPriority() {
+        return this.priority;
+    }
+
+    boolean isIdempotent() {
+        return this.idempotent;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestOptions)) {
+            return false;
+        }
+        RequestOptions other = (RequestOptions) o;
+        return includeToken == other.includeToken && Float.compare(timeout, other.timeout) == 0
+                && priority == other.priority && idempotent == other.idempotent;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * Boolean.hashCode(includeToken) + Float.hashCode(timeout)) + priority.hashCode())
+                + Boolean.hashCode(idempotent);
+    }
+
 
     /**
      * Builder for configuring RequestOptions.
      * 
      * <p>Provides a fluent interface for setting request-specific options
-     * including timeout and authentication settings.
+     * including timeout, authentication and priority settings.
      */
     public static class Builder {
-        private Boolean includeToken;
-        private Float timeout;
-        
+        private boolean includeToken = true;
+        private boolean includeTokenSet;
+        private float timeout;
+        private boolean timeoutSet;
+        private Priority priority = Priority.NORMAL;
+        private boolean prioritySet;
+        private boolean idempotent;
+        private boolean idempotentSet;
+
         /**
          * Creates a new builder instance.
          */
@@ -45,11 +113,42 @@ public class RequestOptions {
 
         Builder setTimeout(float timeout) {
             this.timeout = timeout;
+            this.timeoutSet = true;
             return this;
         }
 
         Builder setIncludeToken(boolean includeToken) {
             this.includeToken = includeToken;
+            this.includeTokenSet = true;
+            return this;
+        }
+
+        /**
+         * Sets how urgently the request needs capacity when the client has a {@link PriorityScheduler}.
+         * 
+         * @param priority the priority (default: {@link Priority#NORMAL})
+         * @return this builder instance
+         */
+        public Builder setPriority(Priority priority) {
+            this.priority = Objects.requireNonNull(priority, "Priority cannot be null");
+            this.prioritySet = true;
+            return this;
+        }
+
+        /**
+         * Marks the request as safe to send more than once, such as a read or an update that
+         * sets absolute values.
+         * 
+         * <p>Clients configured with failover only replay a request that may already have
+         * reached the server, for example one whose connection was reset mid-call, if it is
+         * idempotent. Requests that never left the client are retried either way.
+         * 
+         * @param idempotent whether the request can safely be repeated (default: false)
+         * @return this builder instance
+         */
+        public Builder setIdempotent(boolean idempotent) {
+            this.idempotent = idempotent;
+            this.idempotentSet = true;
             return this;
         }
 
@@ -57,13 +156,25 @@ public class RequestOptions {
             return new RequestOptions(this);
         }
 
-        void fromOptions(Builder options) {
-            if (options.includeToken != null) {
-                this.includeToken = options.includeToken;
-            }
-            if (options.timeout != null) {
-                this.timeout = options.timeout;
+        /**
+         * Returns true if no option has been set, so the client's defaults apply unchanged.
+         */
+        boolean isEmpty() {
+            return !includeTokenSet && !timeoutSet && !prioritySet && !idempotentSet;
+        }
+
+        /**
+         * Returns the given defaults overridden by the options set on this builder.
+         */
+        RequestOptions applyTo(RequestOptions defaults) {
+            if (isEmpty()) {
+                return defaults;
             }
+            return new RequestOptions(
+                includeTokenSet ? includeToken : defaults.getIncludeToken(),
+                timeoutSet ? timeout : defaults.getTimeout(),
+                prioritySet ? priority : defaults.getPriority(),
+                idempotentSet ? idempotent : defaults.isIdempotent());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package com.vendasta.vax;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+/**
+ * Reads a stream of messages from a response body as it arrives.
+ *
+ * <p>Each message is parsed when the caller asks for it, so only one message is held in
+ * memory at a time and nothing more is read from the connection than the caller has
+ * consumed. The body is closed once the last message has been read, when reading fails,
+ * or when the caller closes the stream early.
+ *
+ * @param <V> the message builder type
+ */
+final class ResponseStream<V extends Message.Builder> implements Iterator<V>, AutoCloseable {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * How messages are framed in the response body.
+     */
+    enum Format {
+        /** One JSON message per line. */
+        NDJSON,
+        /** Protobuf messages, each preceded by its length as a varint. */
+        DELIMITED_PROTOBUF;
+
+        /**
+         * Picks the format for a response's content type, defaulting to newline-delimited JSON.
+         */
+        static Format forContentType(String contentType) {
+            if (contentType != null) {
+                String type = contentType.toLowerCase(Locale.ROOT);
+                if (type.startsWith("application/x-protobuf") || type.startsWith("application/protobuf")
+                        || type.startsWith("application/octet-stream")) {
+                    return DELIMITED_PROTOBUF;
+                }
+            }
+            return NDJSON;
+        }
+    }
+
+    private final InputStream body;
+    private final Format format;
+    private final Supplier<V> responseType;
+    private final boolean compiledJsonCodec;
+    private byte[] line = new byte[1024];
+    private V next;
+    private boolean done;
+
+    private ResponseStream(InputStream body, Format format, Supplier<V> responseType, boolean compiledJsonCodec) {
+        this.body = new BufferedInputStream(body, BUFFER_SIZE);
+        this.format = format;
+        this.responseType = responseType;
+        this.compiledJsonCodec = compiledJsonCodec;
+    }
+
+    /**
+     * Creates a lazy stream over the messages in a response body.
+     *
+     * <p>The stream must be closed when it is not fully consumed so the connection is released.
+     *
+     * @param body the response body
+     * @param format how messages are framed
+     * @param responseType supplies a new builder for each message
+     * @param compiledJsonCodec whether JSON messages are parsed with the compiled {@link JsonCodec}
+     * @return the stream of messages
+     */
+    static <V extends Message.Builder> Stream<V> stream(InputStream body, Format format, Supplier<V> responseType, boolean compiledJsonCodec) {
+        ResponseStream<V> messages = new ResponseStream<>(body, format, responseType, compiledJsonCodec);
+        Spliterator<V> spliterator = Spliterators.spliteratorUnknownSize(messages, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(messages::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = format == Format.NDJSON ? readJson() : readProtobuf();
+            } catch (InvalidProtocolBufferException e) {
+                close();
+                throw new SDKException("Failed to parse streamed message: " + e.getMessage(), e);
+            } catch (IOException e) {
+                close();
+                throw new SDKException("Network error while reading streamed response: " + e.getMessage(), e);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public V next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        V message = next;
+        next = null;
+        return message;
+    }
+
+    private V readJson() throws IOException {
+        while (true) {
+            int length = readLine();
+            if (length < 0) {
+                return null;
+            }
+            if (isBlank(length)) {
+                // Blank lines, such as keep-alives, carry no message
+                continue;
+            }
+            V builder = responseType.get();
+            JsonCodec.merge(line, 0, length, builder, compiledJsonCodec);
+            return builder;
+        }
+    }
+
+    /**
+     * Reads the next line into {@link #line}, returning its length, or -1 at the end of the body.
+     */
+    private int readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = body.read()) != -1 && b != '\n') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0) {
+            return -1;
+        }
+        return length;
+    }
+
+    private boolean isBlank(int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = line[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private V readProtobuf() throws IOException {
+        V builder = responseType.get();
+        return builder.mergeDelimitedFrom(body) ? builder : null;
+    }
+
+    /**
+     * Stops reading and releases the connection.
+     */
+    @Override
+    public void close() {
+        if (done) {
+            return;
+        }
+        done = true;
+        next = null;
+        try {
+            body.close();
+        } catch (IOException e) {
+            // The connection is being discarded anyway
+        }
+    }
+}
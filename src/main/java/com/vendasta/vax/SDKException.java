@@ -1,5 +1,10 @@
 package com.vendasta.vax;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.function.Supplier;
+
 /**
  * Exception thrown by VAX SDK operations.
  * 
@@ -14,9 +19,16 @@ public class SDKException extends RuntimeException {
      * used to serialize.
      */
 
-    private io.grpc.Status status;
+    // Status is not serializable; its code and description are written by writeObject
+    private transient io.grpc.Status status;
     private static final long serialVersionUID = 1L;
 
+    /** Longest message a lightweight exception keeps; the rest is cut off. */
+    static final int MAX_LIGHTWEIGHT_MESSAGE_LENGTH = 1024;
+
+    private transient volatile Supplier<String> messageSupplier;
+    private String formattedMessage;
+
     /**
      * Creates a new SDK exception with the specified message.
      * 
@@ -81,6 +93,79 @@ public class SDKException extends RuntimeException {
         status = io.grpc.Status.fromCodeValue(grpcStatusCode);
     }
 
+    /**
+     * Creates an exception without a stack trace or suppressed exceptions.
+     */
+    private SDKException(String message, Throwable t, io.grpc.Status status, Supplier<String> messageSupplier) {
+        super(message, t, false, false);
+        this.status = status;
+        this.messageSupplier = messageSupplier;
+    }
+
+    /**
+     * Creates an exception for an expected failure that is cheap to throw in large numbers.
+     *
+     * <p>No stack trace is captured, and the message is only formatted, and truncated to
+     * {@value #MAX_LIGHTWEIGHT_MESSAGE_LENGTH} characters, the first time it is read.
+     *
+     * @param status the status of the failure
+     * @param message formats the error message
+     * @param t the underlying cause, or null
+     */
+    static SDKException lightweight(io.grpc.Status status, Supplier<String> message, Throwable t) {
+        return new SDKException(null, t, status, message);
+    }
+
+    /**
+     * Creates an exception that fast-fail paths can create once and throw repeatedly.
+     *
+     * <p>The exception has no stack trace or cause and does not record suppressed exceptions,
+     * so sharing it between threads is safe.
+     *
+     * @param message the error message
+     * @param code the status code of the failure
+     */
+    static SDKException preallocated(String message, io.grpc.Status.Code code) {
+        return new SDKException(message, null, code.toStatus(), null);
+    }
+
+    /**
+     * Returns whether a status code is one that outages and overload produce in bulk, and
+     * so is worth reporting with a {@linkplain #lightweight lightweight} exception.
+     */
+    static boolean isExpected(io.grpc.Status.Code code) {
+        return code == io.grpc.Status.Code.UNAVAILABLE
+                || code == io.grpc.Status.Code.DEADLINE_EXCEEDED
+                || code == io.grpc.Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    @Override
+    public String getMessage() {
+        Supplier<String> supplier = messageSupplier;
+        if (supplier != null) {
+            String message = supplier.get();
+            if (message != null && message.length() > MAX_LIGHTWEIGHT_MESSAGE_LENGTH) {
+                message = message.substring(0, MAX_LIGHTWEIGHT_MESSAGE_LENGTH) + "...";
+            }
+            formattedMessage = message;
+            messageSupplier = null;
+        }
+        return formattedMessage != null ? formattedMessage : super.getMessage();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // A lightweight message is only formatted when read, and its formatter cannot be serialized
+        getMessage();
+        out.defaultWriteObject();
+        out.writeInt(status.getCode().value());
+        out.writeObject(status.getDescription());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        status = io.grpc.Status.fromCodeValue(in.readInt()).withDescription((String) in.readObject());
+    }
+
     /**
      * If the error was caused while performing the request to the server this will be populated with
      * the status of the error
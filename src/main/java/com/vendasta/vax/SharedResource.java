@@ -0,0 +1,59 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A reference-counted resource shared between several clients.
+ *
+ * <p>The resource starts with a single reference held by its creator. Every additional
+ * holder calls {@link #retain()} and each holder calls {@link #release()} exactly once;
+ * the resource is closed when the last reference is released.
+ *
+ * @param <T> the type of the shared resource
+ */
+final class SharedResource<T> {
+    private final T resource;
+    private final Consumer<T> closer;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    SharedResource(T resource, Consumer<T> closer) {
+        this.resource = resource;
+        this.closer = closer;
+    }
+
+    T get() {
+        return resource;
+    }
+
+    /**
+     * Adds a reference to the resource.
+     *
+     * @return this shared resource
+     * @throws IllegalStateException if the resource has already been closed
+     */
+    SharedResource<T> retain() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Shared resource has already been closed");
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Drops a reference, closing the resource when it was the last one.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            closer.accept(resource);
+        }
+    }
+
+    boolean isClosed() {
+        return references.get() <= 0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.vendasta.vax;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+/**
+ * An append-only file of length-delimited protobuf messages, read back in the order written.
+ *
+ * <p>Messages that have been read are skipped by offset rather than removed; the file is
+ * truncated once everything in it has been read, and compacted when it is closed, so
+ * unread messages survive a restart. A partially written trailing message, left behind by
+ * a crash, is discarded when the file is opened.
+ *
+ * @param <R> the message type
+ */
+final class SpillFile<R extends MessageLite> {
+    private final Path file;
+    private final Parser<R> parser;
+    private final FileOutputStream fileOut;
+    private final OutputStream out;
+    private long readOffset;
+    private int size;
+
+    SpillFile(Path file, Parser<R> parser) throws SDKException {
+        this.file = file;
+        this.parser = parser;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            long validLength = recover();
+            this.fileOut = new FileOutputStream(file.toFile(), true);
+            fileOut.getChannel().truncate(validLength);
+            this.out = new BufferedOutputStream(fileOut);
+        } catch (IOException e) {
+            throw new SDKException("Failed to open spill file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Counts the complete messages left by a previous run and returns where they end.
+     */
+    private long recover() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            CodedInputStream coded = CodedInputStream.newInstance(in);
+            long validLength = 0;
+            while (!coded.isAtEnd()) {
+                try {
+                    int length = coded.readRawVarint32();
+                    coded.skipRawBytes(length);
+                } catch (IOException e) {
+                    // Truncated by a crash mid-write
+                    break;
+                }
+                validLength = coded.getTotalBytesRead();
+                size++;
+            }
+            return validLength;
+        }
+    }
+
+    /**
+     * Returns the number of messages that have not been read yet.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void append(R message) throws SDKException {
+        try {
+            message.writeDelimitedTo(out);
+            out.flush();
+            size++;
+        } catch (IOException e) {
+            throw new SDKException("Failed to spill request to " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads and removes up to {@code max} messages, oldest first.
+     */
+    synchronized List<R> read(int max) throws SDKException {
+        int count = Math.min(max, size);
+        if (count <= 0) {
+            return List.of();
+        }
+        List<R> messages = new ArrayList<>(count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(readOffset);
+            CodedInputStream coded = CodedInputStream.newInstance(Channels.newInputStream(channel));
+            for (int i = 0; i < count; i++) {
+                int length = coded.readRawVarint32();
+                messages.add(parser.parseFrom(coded.readRawBytes(length)));
+            }
+            readOffset += coded.getTotalBytesRead();
+            size -= count;
+            if (size == 0) {
+                // Everything has been read, so the file can start over
+                fileOut.getChannel().truncate(0);
+                readOffset = 0;
+            }
+        } catch (IOException e) {
+            throw new SDKException("Failed to read spilled requests from " + file + ": " + e.getMessage(), e);
+        }
+        return messages;
+    }
+
+    /**
+     * Closes the file, dropping messages that have been read so only unread ones remain.
+     */
+    synchronized void close() throws SDKException {
+        try {
+            out.close();
+            if (size == 0) {
+                Files.deleteIfExists(file);
+            } else if (readOffset > 0) {
+                Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long remaining = source.size() - readOffset;
+                    long position = readOffset;
+                    while (remaining > 0) {
+                        long copied = source.transferTo(position, remaining, target);
+                        position += copied;
+                        remaining -= copied;
+                    }
+                }
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                readOffset = 0;
+            }
+        } catch (IOException e) {
+            throw new SDKException("Failed to close spill file " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.vendasta.vax;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for an access token refresh.
+ */
+@Name("com.vendasta.vax.TokenRefresh")
+@Label("VAX Token Refresh")
+@Category("VAX SDK")
+@Description("An access token refresh for a service account")
+final class TokenRefreshEvent extends Event {
+    @Label("Service Account")
+    String account;
+
+    @Label("Source")
+    @Description("Where the new token came from: token endpoint or token cache")
+    String source;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+}
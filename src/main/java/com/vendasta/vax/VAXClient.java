@@ -4,23 +4,46 @@ package com.vendasta.vax;
 abstract class VAXClient {
     // Default timeout is a number in milliseconds
     private float defaultTimeout = 10000;
+    // Shared by every call that does not override an option
+    private RequestOptions defaultOptions = new RequestOptions(true, defaultTimeout);
+    // Admits requests by priority, or null to admit everything immediately
+    private PriorityScheduler scheduler;
 
     VAXClient() {}
 
     VAXClient(float defaultTimeout) {
         this.defaultTimeout = defaultTimeout;
+        this.defaultOptions = new RequestOptions(true, defaultTimeout);
+    }
+
+    VAXClient(float defaultTimeout, PriorityScheduler scheduler) {
+        this(defaultTimeout);
+        this.scheduler = scheduler;
     }
 
     RequestOptions buildVAXOptions(RequestOptions.Builder options) {
         // setting defaults
-        RequestOptions.Builder optsBuilder = new RequestOptions
-                .Builder()
-                .setTimeout(this.defaultTimeout);
+        if (options == null) {
+            return defaultOptions;
+        }
+        return options.applyTo(defaultOptions);
+    }
 
-        if (options != null) {
-            optsBuilder.fromOptions(options);
+    /**
+     * Waits until the scheduler admits a request, returning how long that took in nanoseconds.
+     * Every call must be paired with {@link #release(RequestOptions)}.
+     */
+    long admit(RequestOptions options) throws SDKException {
+        if (scheduler == null) {
+            return 0;
         }
+        long timeoutNanos = options.getTimeout() > 0 ? options.getTimeoutDuration().toNanos() : Long.MAX_VALUE;
+        return scheduler.acquire(options.getPriority(), timeoutNanos);
+    }
 
-        return optsBuilder.build();
+    void release(RequestOptions options) {
+        if (scheduler != null) {
+            scheduler.release(options.getPriority());
+        }
     }
 }
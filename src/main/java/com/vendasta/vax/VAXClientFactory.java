@@ -0,0 +1,339 @@
+package com.vendasta.vax;
+
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import io.grpc.ManagedChannel;
+
+/**
+ * Creates VAX clients for one {@link Environment} that share their transport resources.
+ *
+ * <p>Every {@link HTTPClient} handed out by a factory uses the same connection pool, every
+ * {@link GRPCClient} targeting the same host uses the same channel, and all clients share
+ * one set of credentials. A service talking to many VAX APIs therefore opens one
+ * connection per host instead of one per client.
+ *
+ * <p>Shared resources are reference counted: each client releases its reference when it is
+ * closed and the factory releases its own references in {@link #close()}. A connection pool
+ * or channel is shut down once nothing uses it any more, so clients may outlive the
+ * factory that created them.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * VAXClientFactory factory = VAXClientFactory.builder()
+ *     .environment(Environment.PROD)
+ *     .environmentConfig(Environment.PROD, EnvironmentConfig.builder()
+ *         .host("api.example.com")
+ *         .url("https://api.example.com")
+ *         .build())
+ *     .build();
+ *
+ * AccountServiceClient accounts = factory.grpcClient(AccountServiceClient::new);
+ * }</pre>
+ */
+public final class VAXClientFactory implements AutoCloseable {
+    private final Environment environment;
+    private final Map<Environment, EnvironmentConfig> environmentConfigs;
+    private final float defaultTimeout;
+    private final Duration shutdownGracePeriod;
+    private final VAXCredentials credentials;
+    private final SharedResource<Lazy<HttpClient>> httpClient;
+    private final ConcurrentHashMap<ChannelKey, SharedResource<ManagedChannel>> channels = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private VAXClientFactory(Builder builder) throws SDKException {
+        this.environment = builder.environment;
+        this.environmentConfigs = new EnumMap<>(builder.environmentConfigs);
+        this.defaultTimeout = builder.defaultTimeout;
+        this.shutdownGracePeriod = builder.shutdownGracePeriod;
+
+        if (builder.credentials != null) {
+            this.credentials = new VAXCredentials(builder.credentials, builder.credentialsRegistry);
+        } else if (builder.serviceAccount != null) {
+            this.credentials = new VAXCredentials(builder.serviceAccount, builder.credentialsRegistry);
+        } else {
+            this.credentials = new VAXCredentials(builder.credentialsRegistry);
+        }
+
+        this.httpClient = new SharedResource<>(
+            new Lazy<>(() -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis((long) (builder.defaultTimeout * 1000)))
+                .build()),
+            lazy -> lazy.ifCreated(client -> Lifecycle.closeGracefully(client, shutdownGracePeriod)));
+    }
+
+    /**
+     * Returns the environment this factory creates clients for.
+     *
+     * @return the environment
+     */
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Creates an HTTP client for the factory's environment.
+     *
+     * @return the HTTP client
+     * @throws SDKException if the factory is closed or the environment is not configured
+     */
+    public HTTPClient httpClient() throws SDKException {
+        return httpClient(HTTPClient.Builder::build);
+    }
+
+    /**
+     * Creates an HTTP client for the factory's environment using a client constructor.
+     *
+     * @param <C> the client type
+     * @param constructor creates the client from a preconfigured builder, typically {@code MyClient::new}
+     * @return the HTTP client
+     * @throws SDKException if the factory is closed or the environment is not configured
+     */
+    public <C extends HTTPClient> C httpClient(Function<HTTPClient.Builder, C> constructor) throws SDKException {
+        return httpClient(configFor(environmentConfigs), constructor);
+    }
+
+    /**
+     * Creates an HTTP client for a specific API, picking its configuration for the factory's environment.
+     *
+     * @param <C> the client type
+     * @param configs the API's configuration per environment
+     * @param constructor creates the client from a preconfigured builder
+     * @return the HTTP client
+     * @throws SDKException if the factory is closed or the environment is not configured
+     */
+    public <C extends HTTPClient> C httpClient(Map<Environment, EnvironmentConfig> configs, Function<HTTPClient.Builder, C> constructor) throws SDKException {
+        return httpClient(configFor(configs), constructor);
+    }
+
+    private <C extends HTTPClient> C httpClient(EnvironmentConfig config, Function<HTTPClient.Builder, C> constructor) throws SDKException {
+        Objects.requireNonNull(constructor, "Constructor cannot be null");
+        HTTPClient.Builder builder = HTTPClient.builder()
+            .host(config.getHost())
+            .secure(config.isSecure())
+            .defaultTimeout(defaultTimeout)
+            .vaxCredentials(credentials);
+
+        // Checked under the same lock as close(), so a concurrent close cannot release the pool
+        // between the check and the client taking its own reference
+        synchronized (channels) {
+            ensureOpen();
+            builder.sharedHttpClient(httpClient);
+            return constructor.apply(builder);
+        }
+    }
+
+    /**
+     * Creates a gRPC client for the factory's environment using a client constructor.
+     *
+     * @param <C> the client type
+     * @param constructor creates the client from a preconfigured builder, typically {@code MyClient::new}
+     * @return the gRPC client
+     * @throws SDKException if the factory is closed or the environment is not configured
+     */
+    public <C extends GRPCClient<?>> C grpcClient(Function<GRPCClient.Builder, C> constructor) throws SDKException {
+        return grpcClient(configFor(environmentConfigs), constructor);
+    }
+
+    /**
+     * Creates a gRPC client for a specific API, picking its configuration for the factory's environment.
+     *
+     * @param <C> the client type
+     * @param configs the API's configuration per environment
+     * @param constructor creates the client from a preconfigured builder
+     * @return the gRPC client
+     * @throws SDKException if the factory is closed or the environment is not configured
+     */
+    public <C extends GRPCClient<?>> C grpcClient(Map<Environment, EnvironmentConfig> configs, Function<GRPCClient.Builder, C> constructor) throws SDKException {
+        return grpcClient(configFor(configs), constructor);
+    }
+
+    private <C extends GRPCClient<?>> C grpcClient(EnvironmentConfig config, Function<GRPCClient.Builder, C> constructor) throws SDKException {
+        Objects.requireNonNull(constructor, "Constructor cannot be null");
+        GRPCClient.Builder builder = GRPCClient.builder()
+            .host(config.getHost())
+            .secure(config.isSecure())
+            .defaultTimeout(defaultTimeout)
+            .vaxCredentials(credentials);
+
+        // The client takes its own reference, so the channel survives a concurrent close of the factory
+        synchronized (channels) {
+            ensureOpen();
+            builder.sharedChannel(channelFor(config));
+            return constructor.apply(builder);
+        }
+    }
+
+    private SharedResource<ManagedChannel> channelFor(EnvironmentConfig config) {
+        ChannelKey key = new ChannelKey(config.getHost(), config.isSecure());
+        return channels.computeIfAbsent(key, k -> new SharedResource<>(
+            GRPCClient.newChannel(k.host(), k.secure()),
+            channel -> Lifecycle.shutdownGracefully(channel, shutdownGracePeriod)));
+    }
+
+    private EnvironmentConfig configFor(Map<Environment, EnvironmentConfig> configs) throws SDKException {
+        Objects.requireNonNull(configs, "Environment configs cannot be null");
+        EnvironmentConfig config = configs.get(environment);
+        if (config == null) {
+            throw new SDKException("No configuration for environment " + environment);
+        }
+        return config;
+    }
+
+    private void ensureOpen() throws SDKException {
+        if (closed) {
+            throw new SDKException("Client factory has been closed");
+        }
+    }
+
+    /**
+     * Releases the factory's references to its shared resources.
+     *
+     * <p>Clients created by the factory keep working until they are closed themselves.
+     */
+    @Override
+    public void close() {
+        synchronized (channels) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            channels.values().forEach(SharedResource::release);
+            channels.clear();
+        }
+        httpClient.release();
+    }
+
+    private record ChannelKey(String host, boolean secure) {}
+
+    /**
+     * Builder for configuring VAXClientFactory instances.
+     */
+    public static class Builder {
+        private Environment environment;
+        private final Map<Environment, EnvironmentConfig> environmentConfigs = new EnumMap<>(Environment.class);
+        private float defaultTimeout = 10000; // Default timeout
+        private VAXCredentials.Credentials credentials;
+        private InputStream serviceAccount;
+        private VAXCredentialsRegistry credentialsRegistry = VAXCredentialsRegistry.getDefault();
+        private Duration shutdownGracePeriod = Duration.ofSeconds(5);
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the environment clients are created for.
+         *
+         * @param environment the environment (required)
+         * @return this builder instance
+         */
+        public Builder environment(Environment environment) {
+            this.environment = environment;
+            return this;
+        }
+
+        /**
+         * Sets the default configuration for an environment.
+         *
+         * <p>Used by {@link VAXClientFactory#httpClient()} and the other methods that do not
+         * take a per-API configuration.
+         *
+         * @param environment the environment
+         * @param config the configuration for that environment
+         * @return this builder instance
+         */
+        public Builder environmentConfig(Environment environment, EnvironmentConfig config) {
+            this.environmentConfigs.put(
+                Objects.requireNonNull(environment, "Environment cannot be null"),
+                Objects.requireNonNull(config, "Environment config cannot be null"));
+            return this;
+        }
+
+        /**
+         * Sets the default timeout for requests made by the created clients.
+         *
+         * @param defaultTimeout timeout in milliseconds (default: 10000)
+         * @return this builder instance
+         */
+        public Builder defaultTimeout(float defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        /**
+         * Sets custom credentials for authentication.
+         *
+         * @param credentials the credentials object
+         * @return this builder instance
+         */
+        public Builder credentials(VAXCredentials.Credentials credentials) {
+            this.credentials = credentials;
+            this.serviceAccount = null; // Clear other credential source
+            return this;
+        }
+
+        /**
+         * Sets service account credentials from an input stream.
+         *
+         * @param serviceAccount input stream containing service account JSON
+         * @return this builder instance
+         */
+        public Builder serviceAccount(InputStream serviceAccount) {
+            this.serviceAccount = serviceAccount;
+            this.credentials = null; // Clear other credential source
+            return this;
+        }
+
+        /**
+         * Sets the registry used to share credentials and tokens.
+         *
+         * @param credentialsRegistry the credentials registry (default: {@link VAXCredentialsRegistry#getDefault()})
+         * @return this builder instance
+         */
+        public Builder credentialsRegistry(VAXCredentialsRegistry credentialsRegistry) {
+            this.credentialsRegistry = Objects.requireNonNull(credentialsRegistry, "Credentials registry cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long shared connections wait for in-flight requests before they are closed forcibly.
+         *
+         * @param shutdownGracePeriod the grace period (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder shutdownGracePeriod(Duration shutdownGracePeriod) {
+            this.shutdownGracePeriod = Objects.requireNonNull(shutdownGracePeriod, "Shutdown grace period cannot be null");
+            return this;
+        }
+
+        /**
+         * Builds the VAXClientFactory instance.
+         *
+         * @return configured VAXClientFactory instance
+         * @throws SDKException if configuration is invalid or credentials cannot be loaded
+         */
+        public VAXClientFactory build() throws SDKException {
+            if (environment == null) {
+                throw new SDKException("Environment cannot be null");
+            }
+            return new VAXClientFactory(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for VAXClientFactory.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
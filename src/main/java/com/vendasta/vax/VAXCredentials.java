@@ -5,28 +5,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.security.KeyPair;
-import java.security.Security;
-import java.security.interfaces.ECPrivateKey;
-import java.time.Duration;
-import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 
-import org.bouncycastle.openssl.PEMException;
-
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.annotations.SerializedName;
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.crypto.ECDSASigner;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 
 import io.grpc.CallCredentials;
 import io.grpc.Metadata;
@@ -44,43 +29,79 @@ import io.grpc.Status;
  *   <li>Input stream containing service account JSON</li>
  *   <li>Credentials object with explicit values</li>
  * </ul>
+ * 
+ * <p>The parsed key and access token are owned by a {@link VAXCredentialsRegistry}, so
+ * every instance for the same service account shares a single token.
  */
 public class VAXCredentials extends CallCredentials {
-    private VAXCredentialsManager credentialsManager;
-    private final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("Authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Gson GSON = new Gson();
+
+    private final VAXCredentialsManager credentialsManager;
 
     VAXCredentials() throws SDKException {
+        this(VAXCredentialsRegistry.getDefault());
+    }
+
+    VAXCredentials(VAXCredentialsRegistry registry) throws SDKException {
         String serviceAccountPath = System.getenv("VENDASTA_APPLICATION_CREDENTIALS");
         if (serviceAccountPath == null) {
             throw new SDKException("VENDASTA_APPLICATION_CREDENTIALS env variable is not set.");
         }
 
-        InputStream serviceAccount;
-        try {
-            serviceAccount = new FileInputStream(serviceAccountPath);
+        Credentials credentials;
+        try (InputStream serviceAccount = new FileInputStream(serviceAccountPath)) {
+            credentials = readServiceAccount(serviceAccount);
         } catch (FileNotFoundException e) {
             throw new SDKException("VENDASTA_APPLICATION_CREDENTIALS env variable file not found");
+        } catch (IOException e) {
+            throw new SDKException("Could not read VENDASTA_APPLICATION_CREDENTIALS file: " + e.getMessage(), e);
         }
-        this.credentialsManager = new VAXCredentialsManager(serviceAccount);
+        this.credentialsManager = registry.acquire(credentials);
     }
 
     VAXCredentials(InputStream serviceAccount) throws SDKException {
-        this.credentialsManager = new VAXCredentialsManager(serviceAccount);
+        this(serviceAccount, VAXCredentialsRegistry.getDefault());
+    }
+
+    VAXCredentials(InputStream serviceAccount, VAXCredentialsRegistry registry) throws SDKException {
+        this.credentialsManager = registry.acquire(readServiceAccount(serviceAccount));
     }
 
     VAXCredentials(Credentials credentials) throws SDKException {
-        this.credentialsManager = new VAXCredentialsManager(credentials);
+        this(credentials, VAXCredentialsRegistry.getDefault());
+    }
+
+    VAXCredentials(Credentials credentials, VAXCredentialsRegistry registry) throws SDKException {
+        this.credentialsManager = registry.acquire(credentials);
+    }
+
+    private static Credentials readServiceAccount(InputStream serviceAccount) throws SDKException {
+        Credentials credentials;
+        try {
+            credentials = GSON.fromJson(new InputStreamReader(serviceAccount), Credentials.class);
+        } catch (JsonParseException e) {
+            throw new SDKException("Could not parse service account: " + e.getMessage(), e);
+        }
+        if (credentials == null) {
+            throw new SDKException("Service account is empty");
+        }
+        return credentials;
     }
 
     @Override
     public void applyRequestMetadata(RequestInfo requestInfo, Executor executor, MetadataApplier metadataApplier) {
-        executor.execute(() -> {
-            try {
-                Metadata headers = new Metadata();
-                headers.put(AUTHORIZATION, credentialsManager.getAuthorization());
+        // A cached token is applied inline; a refresh completes the call without holding a thread
+        Metadata cached = credentialsManager.getCachedAuthorizationHeaders();
+        if (cached != null) {
+            metadataApplier.apply(cached);
+            return;
+        }
+        credentialsManager.getAuthorizationHeadersAsync().whenComplete((headers, e) -> {
+            if (e == null) {
                 metadataApplier.apply(headers);
-            } catch (Throwable e) {
-                metadataApplier.fail(Status.UNAUTHENTICATED.withCause(e));
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                metadataApplier.fail(Status.UNAUTHENTICATED.withCause(cause));
             }
         });
     }
@@ -95,6 +116,27 @@ public class VAXCredentials extends CallCredentials {
         return credentialsManager.getAuthorization();
     }
 
+    /**
+     * Gets the current authorization token without blocking the calling thread.
+     *
+     * <p>The returned future is already complete when a valid token is cached. Otherwise it
+     * completes once the token has been refreshed; callers that ask while a refresh is in
+     * flight share it rather than starting another. If the token cannot be obtained the
+     * future completes exceptionally with a {@link CredentialsException}.
+     *
+     * @return a future for the authorization token (including "Bearer " prefix)
+     */
+    public CompletableFuture<String> getAuthorizationTokenAsync() {
+        return credentialsManager.getAuthorizationAsync();
+    }
+
+    /**
+     * Fetches the authorization token in the background if it is not already cached.
+     */
+    CompletableFuture<Void> prefetchToken() {
+        return credentialsManager.getAuthorizationAsync().thenApply(authorization -> null);
+    }
+
     /**
      * Container for service account credentials.
      * 
@@ -203,148 +245,4 @@ public class VAXCredentials extends CallCredentials {
             this.tokenURI = tokenURI;
         }
     }
-
-
-    private class VAXCredentialsManager {
-        private Gson gson = new Gson();
-        private Credentials creds;
-        private ECPrivateKey privateKey;
-        private String currentToken;
-        private Date currentTokenExpiry;
-        private HttpClient httpClient;
-
-        VAXCredentialsManager(InputStream serviceAccount) throws SDKException {
-            this.creds = gson.fromJson(new InputStreamReader(serviceAccount), Credentials.class);
-            this.initializeCredentials();
-        }
-
-        VAXCredentialsManager(Credentials credentials) throws SDKException {
-            this.creds = credentials;
-            this.initializeCredentials();
-        }
-
-        private void initializeCredentials() throws SDKException {
-            this.currentToken = null;
-            this.currentTokenExpiry = null;
-            
-            // Initialize HTTP client with reasonable timeout
-            this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-
-            Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-            StringReader reader = new StringReader(creds.privateKey);
-
-            Object parsed;
-            try {
-                parsed = new org.bouncycastle.openssl.PEMParser(reader).readObject();
-            } catch (IOException e) {
-                throw new SDKException(e.getMessage());
-            }
-
-            KeyPair pair;
-            try {
-                pair = new org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter().getKeyPair((org.bouncycastle.openssl.PEMKeyPair) parsed);
-            } catch (PEMException e) {
-                throw new SDKException(e.getMessage());
-            }
-            this.privateKey = (ECPrivateKey) pair.getPrivate();
-        }
-
-        private String getAuthorization() throws CredentialsException {
-            Date currentTime = new Date();
-            if (currentTokenExpiry != null && currentTime.after(currentTokenExpiry)) {
-                refreshToken();
-            }
-
-            if (currentToken == null) {
-                refreshToken();
-            }
-
-            if (currentToken == null) {
-                throw new CredentialsException("Could not refresh token");
-            }
-
-            return currentToken;
-        }
-
-        void invalidateAuthorization() {
-            currentToken = null;
-        }
-
-        void refreshToken() throws CredentialsException {
-            String jwtAccess;
-            try {
-                jwtAccess = buildJWT();
-            } catch (Exception e) {
-                throw new CredentialsException("Something went wrong with building the credentials", e);
-            }
-
-            try {
-                String requestBody = "{\"token\":\"" + jwtAccess + "\"}";
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(creds.tokenURI))
-                    .timeout(Duration.ofSeconds(30))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-                
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() >= 400) {
-                    throw new CredentialsException("HTTP " + response.statusCode() + ": " + response.body());
-                }
-                
-                String responseBody = response.body();
-                GetTokenResponse tokenResponse = gson.fromJson(responseBody, GetTokenResponse.class);
-                if (tokenResponse == null || tokenResponse.token == null) {
-                    throw new CredentialsException("Invalid response: missing token");
-                }
-                
-                currentToken = "Bearer " + tokenResponse.token;
-                SignedJWT signedJWT = SignedJWT.parse(tokenResponse.token);
-                currentTokenExpiry = signedJWT.getJWTClaimsSet().getExpirationTime();
-            } catch (IOException e) {
-                throw new CredentialsException("Network error during token refresh: " + e.getMessage(), e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new CredentialsException("Token refresh was interrupted: " + e.getMessage(), e);
-            } catch (Exception e) {
-                throw new CredentialsException("An error occurred while fetching the token: " + e.getMessage(), e);
-            }
-        }
-
-        String buildJWT() throws CredentialsException {
-            ECDSASigner signer = null;
-            try {
-                signer = new ECDSASigner(privateKey);
-            } catch (JOSEException e) {
-                throw new CredentialsException("Could not create ECDSASigner from private key", e);
-            }
-            JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
-                    .audience("vendasta.com")
-                    .subject(this.creds.email)
-                    .expirationTime(new Date(new Date().getTime() + 60 * 1000))
-                    .claim("kid", this.creds.privateKeyID)
-                    .build();
-
-            SignedJWT signedJWT = new SignedJWT(
-                    new JWSHeader(JWSAlgorithm.ES256),
-                    claimsSet);
-
-            try {
-                signedJWT.sign(signer);
-            } catch (JOSEException e) {
-                throw new CredentialsException("Could not sign JWT", e);
-            }
-
-            return signedJWT.serialize();
-        }
-
-
-        class GetTokenResponse {
-            private String token;
-        }
-    }
 }
\ No newline at end of file
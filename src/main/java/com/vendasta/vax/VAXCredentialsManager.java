@@ -0,0 +1,388 @@
+package com.vendasta.vax;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.security.interfaces.ECPrivateKey;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.gson.Gson;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import io.grpc.Metadata;
+
+/**
+ * Manages the parsed private key and the current access token of a single service account.
+ *
+ * <p>Instances are shared between every {@link VAXCredentials} that resolves to the same
+ * account through a {@link VAXCredentialsRegistry}, so all access to the token state is
+ * thread-safe.
+ */
+final class VAXCredentialsManager {
+    private static final Gson GSON = new Gson();
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("Authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final JWSHeader JWT_HEADER = new JWSHeader(JWSAlgorithm.ES256);
+    // Assertions are valid for 60 seconds; reuse one while at least this much of that remains
+    private static final long ASSERTION_LIFETIME_MILLIS = 60 * 1000;
+    private static final long ASSERTION_MIN_REMAINING_MILLIS = 30 * 1000;
+
+    private final VAXCredentials.Credentials creds;
+    private final VAXCredentialsRegistry registry;
+    private final Object refreshLock = new Object();
+    // Parsed from the private key when the first assertion is signed; guarded by refreshLock
+    private ECDSASigner signer;
+    private volatile TokenSnapshot currentToken;
+    private volatile long lastUsedNanos;
+    private volatile String rejectedToken;
+    private volatile SignedAssertion assertion;
+    // The refresh in flight, shared by every caller waiting for a token; guarded by refreshLock
+    private CompletableFuture<TokenSnapshot> refresh;
+
+    VAXCredentialsManager(VAXCredentials.Credentials credentials, VAXCredentialsRegistry registry) throws SDKException {
+        if (credentials.getPrivateKey() == null) {
+            throw new SDKException("Service account is missing private_key");
+        }
+        this.creds = credentials;
+        this.registry = registry;
+        this.lastUsedNanos = System.nanoTime();
+        // Parsing the key and reading the token cache wait for the first token request, which
+        // picks up a cached token before fetching a new one
+    }
+
+    private ECDSASigner signer() throws SDKException {
+        synchronized (refreshLock) {
+            if (signer == null) {
+                signer = newSigner(ECKeys.parsePrivateKey(creds.getPrivateKey()));
+            }
+            return signer;
+        }
+    }
+
+    private static ECDSASigner newSigner(ECPrivateKey privateKey) throws SDKException {
+        try {
+            return new ECDSASigner(privateKey);
+        } catch (JOSEException e) {
+            throw new SDKException("Could not create ECDSASigner from private key", e);
+        }
+    }
+
+    String getAuthorization() throws CredentialsException {
+        return getToken().authorization();
+    }
+
+    /**
+     * Returns prebuilt gRPC headers carrying the current token, refreshing it if needed.
+     */
+    Metadata getAuthorizationHeaders() throws CredentialsException {
+        return getToken().headers();
+    }
+
+    /**
+     * Returns the {@code Authorization} value without blocking, refreshing the token first if
+     * needed.
+     */
+    CompletableFuture<String> getAuthorizationAsync() {
+        return getTokenAsync().thenApply(TokenSnapshot::authorization);
+    }
+
+    /**
+     * Returns prebuilt gRPC headers without blocking, refreshing the token first if needed.
+     */
+    CompletableFuture<Metadata> getAuthorizationHeadersAsync() {
+        return getTokenAsync().thenApply(TokenSnapshot::headers);
+    }
+
+    /**
+     * Returns prebuilt gRPC headers if a valid token is cached, without ever blocking.
+     *
+     * @return the headers, or null if the token must be refreshed first
+     */
+    Metadata getCachedAuthorizationHeaders() {
+        lastUsedNanos = System.nanoTime();
+        TokenSnapshot token = currentToken;
+        return token != null && !token.isExpired() ? token.headers() : null;
+    }
+
+    private TokenSnapshot getToken() throws CredentialsException {
+        lastUsedNanos = System.nanoTime();
+        TokenSnapshot token = currentToken;
+        if (token != null && !token.isExpired()) {
+            return token;
+        }
+
+        try {
+            return getTokenAsync().get();
+        } catch (ExecutionException e) {
+            throw asCredentialsException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CredentialsException("Token refresh was interrupted: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the current token, starting a refresh if needed. Callers that find a refresh in
+     * flight share it, so only one refresh runs per account at a time.
+     */
+    private CompletableFuture<TokenSnapshot> getTokenAsync() {
+        lastUsedNanos = System.nanoTime();
+        TokenSnapshot token = currentToken;
+        if (token != null && !token.isExpired()) {
+            return CompletableFuture.completedFuture(token);
+        }
+
+        synchronized (refreshLock) {
+            // Another caller may have refreshed while we were waiting for the lock
+            token = currentToken;
+            if (token != null && !token.isExpired()) {
+                return CompletableFuture.completedFuture(token);
+            }
+            CompletableFuture<TokenSnapshot> inFlight = refresh;
+            if (inFlight == null) {
+                CompletableFuture<TokenSnapshot> started = refreshToken();
+                inFlight = started;
+                refresh = started;
+                // Runs right away if the refresh already finished, which clears the field again
+                started.whenComplete((refreshed, e) -> {
+                    synchronized (refreshLock) {
+                        if (refresh == started) {
+                            refresh = null;
+                        }
+                    }
+                });
+            }
+            return inFlight;
+        }
+    }
+
+    /**
+     * Discards a token the server rejected, so the next request fetches a new one.
+     *
+     * <p>Nothing happens if the token has already been replaced, so a late rejection of an
+     * old token cannot throw away a fresh one.
+     *
+     * @param authorization the rejected {@code Authorization} value
+     */
+    void invalidateAuthorization(String authorization) {
+        synchronized (refreshLock) {
+            TokenSnapshot token = currentToken;
+            if (token != null && token.authorization().equals(authorization)) {
+                // Remember the rejected token so it is not picked up from the token cache again
+                rejectedToken = token.token();
+                currentToken = null;
+            }
+        }
+    }
+
+    long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * Returns true if the given PEM holds the key this account signs with, ignoring line breaks.
+     */
+    boolean hasPrivateKey(String privateKey) {
+        return withoutWhitespace(creds.getPrivateKey()).equals(withoutWhitespace(privateKey));
+    }
+
+    private static String withoutWhitespace(String pem) {
+        return pem.replaceAll("\\s", "");
+    }
+
+    // Callers must hold refreshLock and publish the result as the refresh in flight
+    private CompletableFuture<TokenSnapshot> refreshToken() {
+        TokenRefreshEvent event = new TokenRefreshEvent();
+        event.begin();
+        FileTokenCache tokenCache = registry.getTokenCache();
+        CompletableFuture<TokenSnapshot> refreshed = tokenCache == null ? fetchToken(event) : refreshToken(tokenCache, event);
+        return refreshed.whenComplete((token, e) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.account = creds.getEmail();
+                event.success = e == null;
+                if (e != null) {
+                    event.error = asCredentialsException(e).getMessage();
+                }
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Refreshes the token through the cross-process token cache, reusing a token another
+     * process fetched while this one waited for the cache's lock.
+     */
+    private CompletableFuture<TokenSnapshot> refreshToken(FileTokenCache tokenCache, TokenRefreshEvent event) {
+        // The cache's file lock can only be waited for by blocking, so that happens off the caller's thread
+        return CompletableFuture.supplyAsync(() -> tokenCache.lock(creds.getEmail(), creds.getPrivateKeyID(), creds.getTokenURI()), VAXExecutors.shared())
+            .thenCompose(lock -> {
+                CompletableFuture<TokenSnapshot> refreshed;
+                try {
+                    // Another process may have refreshed the token while we were waiting for the lock
+                    FileTokenCache.CachedToken cached = tokenCache.read(creds.getEmail(), creds.getPrivateKeyID(), creds.getTokenURI());
+                    TokenSnapshot current = currentToken;
+                    if (cached != null && (current == null || !cached.token().equals(current.token())) && !cached.token().equals(rejectedToken)) {
+                        event.source = "token cache";
+                        refreshed = CompletableFuture.completedFuture(setToken(cached.token(), cached.expiry()));
+                    } else {
+                        refreshed = fetchToken(event).thenApply(token -> {
+                            tokenCache.write(creds.getEmail(), creds.getPrivateKeyID(), creds.getTokenURI(), token.token());
+                            return token;
+                        });
+                    }
+                } catch (RuntimeException e) {
+                    refreshed = CompletableFuture.failedFuture(e);
+                }
+                return refreshed.whenComplete((token, e) -> lock.close());
+            });
+    }
+
+    private TokenSnapshot setToken(String token, Date expiry) {
+        // Token, expiry and headers are published together so readers never see a mismatched pair
+        TokenSnapshot snapshot = new TokenSnapshot(token, expiry != null ? expiry.getTime() : Long.MAX_VALUE);
+        currentToken = snapshot;
+        return snapshot;
+    }
+
+    private static Date parseExpiry(String token) throws CredentialsException {
+        try {
+            return SignedJWT.parse(token).getJWTClaimsSet().getExpirationTime();
+        } catch (Exception e) {
+            throw new CredentialsException("An error occurred while fetching the token: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fetches a new token from the token endpoint without blocking the calling thread.
+     */
+    private CompletableFuture<TokenSnapshot> fetchToken(TokenRefreshEvent event) {
+        String jwtAccess;
+        try {
+            jwtAccess = buildJWT();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new CredentialsException("Something went wrong with building the credentials", e));
+        }
+
+        HttpRequest request;
+        try {
+            String requestBody = "{\"token\":\"" + jwtAccess + "\"}";
+            request = HttpRequest.newBuilder()
+                .uri(URI.create(creds.getTokenURI()))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .build();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(asCredentialsException(e));
+        }
+
+        return registry.sendTokenRequest(request).handle((response, e) -> {
+            if (e != null) {
+                throw asCredentialsException(e);
+            }
+            if (response.statusCode() >= 400) {
+                throw new CredentialsException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+
+            GetTokenResponse tokenResponse;
+            try {
+                tokenResponse = GSON.fromJson(response.body(), GetTokenResponse.class);
+            } catch (Exception parseError) {
+                throw asCredentialsException(parseError);
+            }
+            if (tokenResponse == null || tokenResponse.token == null) {
+                throw new CredentialsException("Invalid response: missing token");
+            }
+            TokenSnapshot token = setToken(tokenResponse.token, parseExpiry(tokenResponse.token));
+            event.source = "token endpoint";
+            return token;
+        });
+    }
+
+    /**
+     * Describes why a token could not be obtained, unwrapping the future that reported it.
+     */
+    private static CredentialsException asCredentialsException(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof CredentialsException credentialsException) {
+            return credentialsException;
+        }
+        if (e instanceof IOException) {
+            return new CredentialsException("Network error during token refresh: " + e.getMessage(), e);
+        }
+        return new CredentialsException("An error occurred while fetching the token: " + e.getMessage(), e);
+    }
+
+    String buildJWT() throws CredentialsException {
+        long now = System.currentTimeMillis();
+        SignedAssertion current = assertion;
+        if (current != null && current.expiresAtMillis - now >= ASSERTION_MIN_REMAINING_MILLIS) {
+            return current.jwt;
+        }
+
+        long expiresAtMillis = now + ASSERTION_LIFETIME_MILLIS;
+        JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
+                .audience("vendasta.com")
+                .subject(this.creds.getEmail())
+                .expirationTime(new Date(expiresAtMillis))
+                .claim("kid", this.creds.getPrivateKeyID())
+                .build();
+
+        SignedJWT signedJWT = new SignedJWT(JWT_HEADER, claimsSet);
+
+        JwtSigningEvent event = new JwtSigningEvent();
+        event.begin();
+        try {
+            signedJWT.sign(signer());
+        } catch (JOSEException e) {
+            throw new CredentialsException("Could not sign JWT", e);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.account = creds.getEmail();
+                event.commit();
+            }
+        }
+
+        String jwt = signedJWT.serialize();
+        assertion = new SignedAssertion(jwt, expiresAtMillis);
+        return jwt;
+    }
+
+    private record SignedAssertion(String jwt, long expiresAtMillis) {}
+
+    /**
+     * An access token with its expiry and the headers sent with it, built once per token.
+     */
+    private record TokenSnapshot(String token, long expiresAtMillis, String authorization, Metadata headers) {
+        TokenSnapshot(String token, long expiresAtMillis) {
+            this(token, expiresAtMillis, "Bearer " + token, authorizationHeaders("Bearer " + token));
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAtMillis;
+        }
+
+        private static Metadata authorizationHeaders(String authorization) {
+            // gRPC copies these into each call's headers, so one instance serves every call
+            Metadata headers = new Metadata();
+            headers.put(AUTHORIZATION, authorization);
+            return headers;
+        }
+    }
+
+    static class GetTokenResponse {
+        private String token;
+    }
+}
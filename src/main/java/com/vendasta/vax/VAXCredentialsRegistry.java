@@ -0,0 +1,280 @@
+package com.vendasta.vax;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of service account credentials.
+ *
+ * <p>Clients that authenticate as the same service account (identified by its
+ * {@code client_email}, {@code private_key_id} and {@code token_uri}) share a single
+ * credentials manager, so the private key is parsed once and a single access token is
+ * fetched and refreshed for all of them. Token traffic for every account in a registry goes through one
+ * {@link HttpClient}, and the number of refreshes in flight at the same time is bounded.
+ *
+ * <p>Accounts that have not been used for longer than the configured idle timeout are
+ * evicted from the registry. Clients still holding an evicted account keep working; the
+ * next client to ask for that account simply starts a fresh entry.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * VAXCredentialsRegistry registry = VAXCredentialsRegistry.builder()
+ *     .maxConcurrentRefreshes(8)
+ *     .idleTimeout(Duration.ofMinutes(30))
+ *     .build();
+ *
+ * HTTPClient client = HTTPClient.builder()
+ *     .host("api.example.com")
+ *     .credentialsRegistry(registry)
+ *     .build();
+ * }</pre>
+ */
+public final class VAXCredentialsRegistry implements AutoCloseable {
+    private static final VAXCredentialsRegistry DEFAULT = builder().build();
+    // Token requests in flight when a registry is closed get this long to complete
+    private static final Duration SHUTDOWN_GRACE_PERIOD = Duration.ofSeconds(5);
+
+    private final ConcurrentHashMap<AccountKey, VAXCredentialsManager> managers = new ConcurrentHashMap<>();
+    private final int maxConcurrentRefreshes;
+    // Token requests waiting for a refresh permit; also guards activeRefreshes
+    private final ArrayDeque<Runnable> pendingRefreshes = new ArrayDeque<>();
+    private int activeRefreshes;
+    private final long idleTimeoutNanos;
+    private final Lazy<HttpClient> httpClient;
+    private final FileTokenCache tokenCache;
+    private volatile long lastSweepNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    private VAXCredentialsRegistry(Builder builder) {
+        this.maxConcurrentRefreshes = builder.maxConcurrentRefreshes;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.tokenCache = builder.tokenCache;
+        HttpClient httpClient = builder.httpClient;
+        // Only built once a token has to be fetched, which a warm token cache may avoid entirely
+        this.httpClient = new Lazy<>(() -> httpClient != null ? httpClient : HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build());
+    }
+
+    /**
+     * Returns the registry used by clients that do not configure one explicitly.
+     *
+     * @return the process-wide default registry
+     */
+    public static VAXCredentialsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the number of service accounts currently held by this registry.
+     *
+     * @return the number of registered accounts
+     */
+    public int size() {
+        return managers.size();
+    }
+
+    /**
+     * Removes every account that has not been used within the idle timeout.
+     *
+     * <p>This also happens automatically while new accounts are being looked up, so calling
+     * it is only needed to release idle accounts eagerly.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        lastSweepNanos = now;
+        managers.values().removeIf(manager -> now - manager.getLastUsedNanos() > idleTimeoutNanos);
+    }
+
+    VAXCredentialsManager acquire(VAXCredentials.Credentials credentials) throws SDKException {
+        Objects.requireNonNull(credentials, "Credentials cannot be null");
+        if (closed) {
+            throw new SDKException("Credentials registry has been closed");
+        }
+        if (credentials.getEmail() == null || credentials.getPrivateKeyID() == null) {
+            throw new SDKException("Service account must include client_email and private_key_id");
+        }
+        if (credentials.getPrivateKey() == null) {
+            throw new SDKException("Service account is missing private_key");
+        }
+
+        if (System.nanoTime() - lastSweepNanos > idleTimeoutNanos / 2) {
+            evictIdle();
+        }
+
+        // Tokens from different token endpoints are for different environments
+        AccountKey key = new AccountKey(credentials.getEmail(), credentials.getPrivateKeyID(), credentials.getTokenURI());
+        VAXCredentialsManager manager = managers.computeIfAbsent(key, k -> new VAXCredentialsManager(credentials, this));
+        if (!manager.hasPrivateKey(credentials.getPrivateKey())) {
+            throw new IllegalArgumentException("Service account " + credentials.getEmail()
+                + " is already registered with a different private_key for private_key_id " + credentials.getPrivateKeyID());
+        }
+        return manager;
+    }
+
+    /**
+     * Closes the registry's HTTP client and drops every account.
+     *
+     * <p>Token requests in flight get a short grace period to complete. Clients still using
+     * accounts from a closed registry can no longer refresh their tokens. The
+     * {@linkplain #getDefault() default registry} lives as long as the process and ignores
+     * this call.
+     *
+     * @throws SDKException if interrupted while waiting for token requests
+     */
+    @Override
+    public void close() throws SDKException {
+        if (this == DEFAULT || closed) {
+            return;
+        }
+        closed = true;
+        managers.clear();
+        httpClient.ifCreated(client -> Lifecycle.closeGracefully(client, SHUTDOWN_GRACE_PERIOD));
+    }
+
+    FileTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * Sends a token request once one of the registry's refresh permits is free. Requests
+     * waiting for a permit are queued rather than parking a thread, and are sent in arrival
+     * order.
+     */
+    CompletableFuture<HttpResponse<String>> sendTokenRequest(HttpRequest request) {
+        CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        Runnable send = () -> {
+            try {
+                httpClient.get().sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((result, e) -> {
+                        releaseRefreshPermit();
+                        if (e != null) {
+                            response.completeExceptionally(e);
+                        } else {
+                            response.complete(result);
+                        }
+                    });
+            } catch (RuntimeException e) {
+                releaseRefreshPermit();
+                response.completeExceptionally(e);
+            }
+        };
+
+        synchronized (pendingRefreshes) {
+            if (activeRefreshes >= maxConcurrentRefreshes) {
+                pendingRefreshes.addLast(send);
+                return response;
+            }
+            activeRefreshes++;
+        }
+        send.run();
+        return response;
+    }
+
+    private void releaseRefreshPermit() {
+        Runnable next;
+        synchronized (pendingRefreshes) {
+            next = pendingRefreshes.pollFirst();
+            if (next == null) {
+                activeRefreshes--;
+                return;
+            }
+        }
+        // The permit passes straight to the next queued request
+        next.run();
+    }
+
+    private record AccountKey(String email, String privateKeyID, String tokenURI) {}
+
+    /**
+     * Builder for configuring VAXCredentialsRegistry instances.
+     */
+    public static class Builder {
+        private int maxConcurrentRefreshes = 4;
+        private Duration idleTimeout = Duration.ofHours(1);
+        private FileTokenCache tokenCache = FileTokenCache.fromEnvironment();
+        private HttpClient httpClient;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the maximum number of token refreshes that may be in flight at once.
+         *
+         * @param maxConcurrentRefreshes the refresh concurrency limit (default: 4)
+         * @return this builder instance
+         */
+        public Builder maxConcurrentRefreshes(int maxConcurrentRefreshes) {
+            this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+            return this;
+        }
+
+        /**
+         * Sets how long an account may go unused before it is evicted.
+         *
+         * @param idleTimeout the idle timeout (default: 1 hour)
+         * @return this builder instance
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Sets a file-backed cache that shares tokens across processes and restarts.
+         *
+         * @param tokenCache the token cache, or null to disable it
+         *                   (default: a cache in {@code VENDASTA_TOKEN_CACHE_DIR} if that variable is set)
+         * @return this builder instance
+         */
+        public Builder tokenCache(FileTokenCache tokenCache) {
+            this.tokenCache = tokenCache;
+            return this;
+        }
+
+        /**
+         * Sends token requests through the given client rather than one built on first use,
+         * so tests can answer them without a server.
+         *
+         * @param httpClient the client token requests are sent with
+         * @return this builder instance
+         */
+        Builder httpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * Builds the VAXCredentialsRegistry instance.
+         *
+         * @return configured VAXCredentialsRegistry instance
+         * @throws IllegalArgumentException if the configuration is invalid
+         */
+        public VAXCredentialsRegistry build() {
+            if (maxConcurrentRefreshes < 1) {
+                throw new IllegalArgumentException("maxConcurrentRefreshes must be at least 1");
+            }
+            if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+                throw new IllegalArgumentException("idleTimeout must be positive");
+            }
+            return new VAXCredentialsRegistry(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for VAXCredentialsRegistry.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,48 @@
+package com.vendasta.vax;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used for SDK background work such as warm-up, token prefetching and health probes.
+ *
+ * <p>All threads are daemon threads so the SDK never keeps a JVM alive on its own.
+ */
+final class VAXExecutors {
+    private static final ExecutorService SHARED = Executors.newCachedThreadPool(daemonThreadFactory("vax-worker"));
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("vax-scheduler"));
+
+    private VAXExecutors() {}
+
+    /**
+     * Returns the process-wide executor for background SDK work.
+     *
+     * @return the shared executor
+     */
+    static ExecutorService shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the process-wide scheduler for periodic SDK work such as health probes.
+     *
+     * <p>Scheduled tasks must be short and hand anything slow to {@link #shared()}.
+     *
+     * @return the shared scheduler
+     */
+    static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,661 @@
+package com.vendasta.vax;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import io.grpc.Status;
+
+/**
+ * Sends fire-and-forget requests in the background so callers do not wait for responses
+ * they ignore.
+ *
+ * <p>Requests are submitted to a bounded in-memory queue and delivered by a fixed number of
+ * worker threads through a sender, typically a method of a VAX client. With a batch sender,
+ * workers coalesce queued requests into batches of up to {@code maxBatchSize}, waiting at
+ * most {@code maxBatchDelay} for a batch to fill. Deliveries failing with a retryable status
+ * ({@code UNAVAILABLE}, {@code RESOURCE_EXHAUSTED} or {@code DEADLINE_EXCEEDED}) are retried
+ * with exponential backoff; requests that still cannot be delivered are passed to the
+ * failure handler.
+ *
+ * <p>When the queue is full, {@link OverflowPolicy} decides whether {@link #submit} waits,
+ * drops the request, or appends it to a spill file that workers drain once the queue has
+ * room again. Spilled requests that are still undelivered when the queue is closed stay in
+ * the file and are delivered by the next queue opened on it.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * WriteBehindQueue<TrackEvent> events = WriteBehindQueue.<TrackEvent>builder()
+ *     .batchSender(batch -> client.trackAll(batch))
+ *     .capacity(10_000)
+ *     .concurrency(4)
+ *     .overflowPolicy(WriteBehindQueue.OverflowPolicy.SPILL)
+ *     .spillFile(Path.of("/var/spool/events.spill"), TrackEvent.parser())
+ *     .build();
+ *
+ * events.submit(event);
+ * }</pre>
+ *
+ * @param <R> the request type
+ */
+public final class WriteBehindQueue<R extends MessageLite> implements AutoCloseable {
+    // How often idle workers check for spilled requests and shutdown
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(200);
+    private static final Duration FORCED_SHUTDOWN_WAIT = Duration.ofSeconds(1);
+
+    /**
+     * What {@link #submit} does when the in-memory queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait until the queue has room. */
+        BLOCK,
+        /** Drop the request and return false. */
+        DROP,
+        /** Append the request to the spill file. */
+        SPILL
+    }
+
+    /**
+     * Delivers a single request.
+     *
+     * @param <R> the request type
+     */
+    @FunctionalInterface
+    public interface Sender<R> {
+        /**
+         * Sends a request, throwing if it could not be delivered.
+         *
+         * @param request the request
+         * @throws SDKException if delivery failed
+         */
+        void send(R request) throws SDKException;
+    }
+
+    /**
+     * Delivers several requests in one call.
+     *
+     * @param <R> the request type
+     */
+    @FunctionalInterface
+    public interface BatchSender<R> {
+        /**
+         * Sends a batch of requests, throwing if it could not be delivered.
+         *
+         * @param requests the requests, in submission order
+         * @throws SDKException if delivery failed
+         */
+        void send(List<R> requests) throws SDKException;
+    }
+
+    private final Sender<R> sender;
+    private final BatchSender<R> batchSender;
+    private final BlockingQueue<R> queue;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final int maxAttempts;
+    private final OverflowPolicy overflowPolicy;
+    private final SpillFile<R> spillFile;
+    private final BiConsumer<List<R>, SDKException> failureHandler;
+    private final Duration shutdownGracePeriod;
+    private final Thread[] workers;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean stopped;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition drained = flushLock.newCondition();
+
+    private WriteBehindQueue(Builder<R> builder) throws SDKException {
+        this.sender = builder.sender;
+        this.batchSender = builder.batchSender;
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.maxBatchSize = builder.batchSender != null ? builder.maxBatchSize : 1;
+        this.maxBatchDelayNanos = builder.maxBatchDelay.toNanos();
+        this.maxAttempts = builder.maxAttempts;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.failureHandler = builder.failureHandler;
+        this.shutdownGracePeriod = builder.shutdownGracePeriod;
+        this.spillFile = builder.spillFile != null ? new SpillFile<>(builder.spillFile, builder.spillParser) : null;
+        if (spillFile != null) {
+            // Requests left over from a previous run are still owed a delivery
+            pending.addAndGet(spillFile.size());
+        }
+
+        ThreadFactory threads = VAXExecutors.daemonThreadFactory("vax-write-behind");
+        this.workers = new Thread[builder.concurrency];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = threads.newThread(this::drain);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a request for delivery.
+     *
+     * @param request the request
+     * @return true if the request was accepted, false if it was dropped because the queue is full
+     * @throws SDKException if the queue is closed, the caller is interrupted while waiting for
+     *                      room, or the request could not be spilled
+     */
+    public boolean submit(R request) throws SDKException {
+        Objects.requireNonNull(request, "Request cannot be null");
+        if (closed.get()) {
+            throw new SDKException("Write-behind queue has been closed");
+        }
+        pending.incrementAndGet();
+        if (!queue.offer(request)) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        queue.put(request);
+                    } catch (InterruptedException e) {
+                        complete(1);
+                        Thread.currentThread().interrupt();
+                        throw new SDKException("Interrupted while waiting for room in the write-behind queue", e);
+                    }
+                    break;
+                case DROP:
+                    dropped.incrementAndGet();
+                    complete(1);
+                    return false;
+                case SPILL:
+                    try {
+                        spillFile.append(request);
+                    } catch (SDKException e) {
+                        complete(1);
+                        throw e;
+                    }
+                    spilled.incrementAndGet();
+                    break;
+            }
+        }
+        if (stopped && queue.remove(request)) {
+            // Raced with close() after the workers stopped
+            abandon(List.of(request), new SDKException("Write-behind queue has been closed"));
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every accepted request has been delivered or handed to the failure handler.
+     *
+     * <p>Requests submitted while waiting extend the wait.
+     *
+     * @param timeout the maximum time to wait
+     * @return true if nothing is pending any more, false if the timeout elapsed first
+     * @throws SDKException if interrupted while waiting
+     */
+    public boolean flush(Duration timeout) throws SDKException {
+        Objects.requireNonNull(timeout, "Timeout cannot be null");
+        long remainingNanos = timeout.toNanos();
+        flushLock.lock();
+        try {
+            while (pending.get() > 0) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = drained.awaitNanos(remainingNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SDKException("Interrupted while flushing the write-behind queue", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting requests and delivers what is queued.
+     *
+     * <p>Queued requests get the configured shutdown grace period to be delivered. Whatever
+     * is left after it is written to the spill file when one is configured, and otherwise
+     * passed to the failure handler.
+     *
+     * @throws SDKException if interrupted while waiting for deliveries
+     */
+    @Override
+    public void close() throws SDKException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flush(shutdownGracePeriod);
+        } finally {
+            stopped = true;
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            long deadline = System.nanoTime() + FORCED_SHUTDOWN_WAIT.toNanos();
+            for (Thread worker : workers) {
+                try {
+                    worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            List<R> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                abandon(remaining, new SDKException("Write-behind queue was closed before the request was delivered"));
+            }
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent, including spilled ones.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size() + (spillFile != null ? spillFile.size() : 0);
+    }
+
+    /**
+     * Returns the number of accepted requests that have not been delivered or failed yet.
+     *
+     * @return the pending request count
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of requests delivered so far.
+     *
+     * @return the delivered request count
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the number of requests handed to the failure handler so far.
+     *
+     * @return the failed request count
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of requests dropped because the queue was full.
+     *
+     * @return the dropped request count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of requests written to the spill file so far.
+     *
+     * @return the spilled request count
+     */
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    private void drain() {
+        List<R> batch = new ArrayList<>(maxBatchSize);
+        while (!stopped) {
+            R first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                refill();
+                continue;
+            }
+            batch.add(first);
+            if (maxBatchSize > 1) {
+                try {
+                    collect(batch);
+                } catch (InterruptedException e) {
+                    abandon(new ArrayList<>(batch), new SDKException("Write-behind queue was closed before the request was delivered", e));
+                    return;
+                }
+            }
+            deliver(batch);
+            batch.clear();
+            refill();
+        }
+    }
+
+    private void collect(List<R> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + maxBatchDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return;
+            }
+            R next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    /**
+     * Moves spilled requests back into the queue as far as it has room.
+     */
+    private void refill() {
+        if (spillFile == null || spillFile.size() == 0) {
+            return;
+        }
+        List<R> requests;
+        try {
+            requests = spillFile.read(queue.remainingCapacity());
+        } catch (SDKException e) {
+            return;
+        }
+        for (R request : requests) {
+            if (!queue.offer(request)) {
+                // Submitters filled the queue in the meantime
+                try {
+                    spillFile.append(request);
+                } catch (SDKException e) {
+                    fail(List.of(request), e);
+                }
+            }
+        }
+    }
+
+    private void deliver(List<R> batch) {
+        int size = batch.size();
+        Duration backoff = INITIAL_BACKOFF;
+        for (int attempt = 1; ; attempt++) {
+            SDKException error;
+            try {
+                if (batchSender != null) {
+                    batchSender.send(List.copyOf(batch));
+                } else {
+                    sender.send(batch.get(0));
+                }
+                delivered.addAndGet(size);
+                complete(size);
+                return;
+            } catch (SDKException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new SDKException("Write-behind delivery failed: " + e.getMessage(), e);
+            }
+
+            if (stopped) {
+                abandon(new ArrayList<>(batch), error);
+                return;
+            }
+            if (attempt >= maxAttempts || !isRetryable(error)) {
+                fail(new ArrayList<>(batch), error);
+                return;
+            }
+            try {
+                Thread.sleep(backoff.toMillis());
+            } catch (InterruptedException e) {
+                abandon(new ArrayList<>(batch), error);
+                return;
+            }
+            backoff = backoff.multipliedBy(2);
+        }
+    }
+
+    private static boolean isRetryable(SDKException error) {
+        Status.Code code = error.getStatus().getCode();
+        return code == Status.Code.UNAVAILABLE
+                || code == Status.Code.RESOURCE_EXHAUSTED
+                || code == Status.Code.DEADLINE_EXCEEDED;
+    }
+
+    /**
+     * Keeps requests that could not be delivered before shutdown in the spill file, if any.
+     */
+    private void abandon(List<R> requests, SDKException error) {
+        if (spillFile != null) {
+            try {
+                for (R request : requests) {
+                    spillFile.append(request);
+                    spilled.incrementAndGet();
+                }
+                complete(requests.size());
+                return;
+            } catch (SDKException e) {
+                error = e;
+            }
+        }
+        fail(requests, error);
+    }
+
+    private void fail(List<R> requests, SDKException error) {
+        failed.addAndGet(requests.size());
+        try {
+            failureHandler.accept(requests, error);
+        } catch (RuntimeException e) {
+            // A broken failure handler must not stop the worker
+        } finally {
+            // Only after the handler has run, so flush() covers it
+            complete(requests.size());
+        }
+    }
+
+    private void complete(int count) {
+        if (pending.addAndGet(-count) == 0) {
+            flushLock.lock();
+            try {
+                drained.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Builder for configuring WriteBehindQueue instances.
+     *
+     * @param <R> the request type
+     */
+    public static class Builder<R extends MessageLite> {
+        private Sender<R> sender;
+        private BatchSender<R> batchSender;
+        private int capacity = 1000;
+        private int concurrency = 1;
+        private int maxBatchSize = 100;
+        private Duration maxBatchDelay = Duration.ofMillis(50);
+        private int maxAttempts = 3;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private Path spillFile;
+        private Parser<R> spillParser;
+        private BiConsumer<List<R>, SDKException> failureHandler = (requests, error) -> {};
+        private Duration shutdownGracePeriod = Duration.ofSeconds(5);
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the sender that delivers requests one at a time.
+         *
+         * @param sender the sender, such as {@code client::track}
+         * @return this builder instance
+         */
+        public Builder<R> sender(Sender<R> sender) {
+            this.sender = Objects.requireNonNull(sender, "Sender cannot be null");
+            this.batchSender = null;
+            return this;
+        }
+
+        /**
+         * Sets a sender that delivers requests in batches, replacing {@link #sender(Sender)}.
+         *
+         * @param batchSender the batch sender
+         * @return this builder instance
+         */
+        public Builder<R> batchSender(BatchSender<R> batchSender) {
+            this.batchSender = Objects.requireNonNull(batchSender, "Batch sender cannot be null");
+            this.sender = null;
+            return this;
+        }
+
+        /**
+         * Sets how many requests the in-memory queue holds.
+         *
+         * @param capacity the queue capacity (default: 1000)
+         * @return this builder instance
+         */
+        public Builder<R> capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets how many deliveries may be in progress at once.
+         *
+         * @param concurrency the number of worker threads (default: 1)
+         * @return this builder instance
+         */
+        public Builder<R> concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets the largest batch passed to the batch sender.
+         *
+         * @param maxBatchSize the maximum batch size (default: 100)
+         * @return this builder instance
+         */
+        public Builder<R> maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets how long a worker waits for a batch to fill before sending it.
+         *
+         * @param maxBatchDelay the maximum batch delay (default: 50 milliseconds)
+         * @return this builder instance
+         */
+        public Builder<R> maxBatchDelay(Duration maxBatchDelay) {
+            this.maxBatchDelay = Objects.requireNonNull(maxBatchDelay, "Max batch delay cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how often a delivery is attempted before it is passed to the failure handler.
+         *
+         * @param maxAttempts the maximum number of attempts (default: 3)
+         * @return this builder instance
+         */
+        public Builder<R> maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets what happens to submissions while the queue is full.
+         *
+         * @param overflowPolicy the overflow policy (default: {@link OverflowPolicy#BLOCK})
+         * @return this builder instance
+         */
+        public Builder<R> overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "Overflow policy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the file overflowing and undelivered requests are written to.
+         *
+         * <p>Required for {@link OverflowPolicy#SPILL}; with other policies the file only keeps
+         * requests that were still queued when the queue was closed. Requests found in the file
+         * are delivered when the queue is built.
+         *
+         * @param spillFile the spill file
+         * @param parser parses spilled requests, such as {@code MyRequest.parser()}
+         * @return this builder instance
+         */
+        public Builder<R> spillFile(Path spillFile, Parser<R> parser) {
+            this.spillFile = Objects.requireNonNull(spillFile, "Spill file cannot be null");
+            this.spillParser = Objects.requireNonNull(parser, "Parser cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the handler for requests that could not be delivered.
+         *
+         * @param failureHandler receives the undelivered requests and the last error (default: ignore)
+         * @return this builder instance
+         */
+        public Builder<R> failureHandler(BiConsumer<List<R>, SDKException> failureHandler) {
+            this.failureHandler = Objects.requireNonNull(failureHandler, "Failure handler cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long {@link WriteBehindQueue#close()} waits for queued requests to be delivered.
+         *
+         * @param shutdownGracePeriod the grace period (default: 5 seconds)
+         * @return this builder instance
+         */
+        public Builder<R> shutdownGracePeriod(Duration shutdownGracePeriod) {
+            this.shutdownGracePeriod = Objects.requireNonNull(shutdownGracePeriod, "Shutdown grace period cannot be null");
+            return this;
+        }
+
+        /**
+         * Builds the WriteBehindQueue instance and starts its workers.
+         *
+         * @return configured WriteBehindQueue instance
+         * @throws SDKException if the configuration is invalid or the spill file cannot be opened
+         */
+        public WriteBehindQueue<R> build() throws SDKException {
+            if (sender == null && batchSender == null) {
+                throw new SDKException("A sender or batch sender is required");
+            }
+            if (capacity < 1 || concurrency < 1 || maxBatchSize < 1 || maxAttempts < 1) {
+                throw new SDKException("capacity, concurrency, maxBatchSize and maxAttempts must be at least 1");
+            }
+            if (overflowPolicy == OverflowPolicy.SPILL && spillFile == null) {
+                throw new SDKException("The SPILL overflow policy requires a spill file");
+            }
+            return new WriteBehindQueue<>(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for WriteBehindQueue.
+     *
+     * @param <R> the request type
+     * @return new builder instance
+     */
+    public static <R extends MessageLite> Builder<R> builder() {
+        return new Builder<>();
+    }
+}
@@ -0,0 +1,149 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Struct;
+import com.vendasta.vax.testing.FaultProfile;
+import com.vendasta.vax.testing.LatencyDistribution;
+import com.vendasta.vax.testing.MockVAXServer;
+
+/**
+ * Closes clients while many threads are calling them. Every call must either succeed or fail
+ * with the client's "has been closed" error, nothing may hang, and every admission permit and
+ * budgeted byte must be returned.
+ */
+class ClientCloseTest {
+    private static final int THREADS = 8;
+    // Shorter than the slowest responses, so some calls are cut off rather than drained
+    private static final Duration GRACE_PERIOD = Duration.ofMillis(100);
+
+    private final Struct message = EchoClients.message("hello");
+    private MockVAXServer server;
+    private VAXCredentialsRegistry registry;
+    private ExecutorService executor;
+    private ByteBudget budget;
+    private PriorityScheduler scheduler;
+
+    @FunctionalInterface
+    private interface Echo {
+        Struct echo(Struct request) throws SDKException;
+    }
+
+    @BeforeEach
+    void setUp() {
+        server = MockVAXServer.builder()
+            .httpEndpoint(EchoClients.HTTP_PATH, Struct.getDefaultInstance(), request -> request)
+            .grpcService(EchoClients.grpcService())
+            .faults(FaultProfile.builder()
+                .latency(LatencyDistribution.uniform(Duration.ZERO, Duration.ofMillis(300)))
+                .build())
+            .start();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+        executor = Executors.newFixedThreadPool(THREADS);
+        budget = ByteBudget.builder().maxInFlightBytes(64 * 1024).responseReservation(1024).build();
+        scheduler = PriorityScheduler.builder().maxConcurrency(THREADS / 2).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        registry.close();
+        server.close();
+    }
+
+    @Test
+    void httpCloseRacingInFlightRequests() throws Exception {
+        EchoClients.Http client = new EchoClients.Http(HTTPClient.builder()
+            .host(server.getHttpHost())
+            .secure(false)
+            .credentials(server.credentials())
+            .credentialsRegistry(registry)
+            .shutdownGracePeriod(GRACE_PERIOD)
+            .byteBudget(budget)
+            .priorityScheduler(scheduler));
+
+        closeUnderLoad(client::echo, client);
+
+        assertEquals(0, client.getInFlightRequests());
+        SDKException e = assertThrows(SDKException.class, () -> client.echo(message));
+        assertEquals("HTTP client has been closed", e.getMessage());
+    }
+
+    @Test
+    void grpcCloseRacingInFlightRequests() throws Exception {
+        EchoClients.Grpc client = new EchoClients.Grpc(GRPCClient.builder()
+            .host(server.getGrpcHost())
+            .secure(false)
+            .credentials(server.credentials())
+            .credentialsRegistry(registry)
+            .shutdownGracePeriod(GRACE_PERIOD)
+            .byteBudget(budget)
+            .priorityScheduler(scheduler));
+
+        closeUnderLoad(client::echo, client);
+
+        assertEquals(0, client.getInFlightRequests());
+        SDKException e = assertThrows(SDKException.class, () -> client.echo(message));
+        assertEquals("gRPC client has been closed", e.getMessage());
+    }
+
+    private void closeUnderLoad(Echo echo, AutoCloseable client) throws Exception {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ConcurrentLinkedQueue<SDKException> unexpected = new ConcurrentLinkedQueue<>();
+        List<Future<?>> callers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            callers.add(executor.submit(() -> {
+                while (true) {
+                    try {
+                        echo.echo(message);
+                        succeeded.incrementAndGet();
+                    } catch (SDKException e) {
+                        if (e.getMessage().endsWith("client has been closed")) {
+                            closed.incrementAndGet();
+                        } else {
+                            unexpected.add(e);
+                        }
+                        return;
+                    }
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (succeeded.get() < 20 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        client.close();
+        for (Future<?> caller : callers) {
+            caller.get(10, TimeUnit.SECONDS);
+        }
+
+        assertTrue(unexpected.isEmpty(), () -> "Unexpected failures: " + unexpected);
+        assertTrue(succeeded.get() >= 20, "Requests should have succeeded before the close");
+        assertEquals(THREADS, closed.get());
+        assertEquals(0, budget.getInFlightBytes());
+        assertEquals(0, budget.getQueued());
+        for (RequestOptions.Priority priority : RequestOptions.Priority.values()) {
+            assertEquals(0, scheduler.getActive(priority));
+            assertEquals(0, scheduler.getQueued(priority));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.vendasta.vax.testing.MockVAXServer;
+
+/**
+ * Hammers a single service account's token from many threads against {@link MockVAXServer}.
+ */
+class CredentialsLoadTest {
+    private static final int THREADS = 8;
+
+    private MockVAXServer server;
+    private VAXCredentialsRegistry registry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        server = MockVAXServer.builder().start();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        registry.close();
+        server.close();
+    }
+
+    @Test
+    void concurrentReadersShareOneTokenRequest() throws Exception {
+        VAXCredentialsManager manager = registry.acquire(server.credentials());
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                for (int read = 0; read < 500; read++) {
+                    seen.add(read % 2 == 0 ? manager.getAuthorization() : manager.getAuthorizationAsync().join());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, seen.size());
+        assertEquals(1, server.getTokenRequestCount());
+    }
+
+    @Test
+    void everyThreadRejectingTheSameTokenFetchesOneReplacement() throws Exception {
+        VAXCredentialsManager manager = registry.acquire(server.credentials());
+        int rounds = 20;
+        CyclicBarrier rejected = new CyclicBarrier(THREADS);
+        CyclicBarrier replaced = new CyclicBarrier(THREADS);
+        List<Set<String>> replacements = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            replacements.add(ConcurrentHashMap.newKeySet());
+        }
+        List<Future<?>> callers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            callers.add(executor.submit(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    String authorization = manager.getAuthorization();
+                    // Every caller holds the same token before any of them reports it rejected
+                    rejected.await();
+                    manager.invalidateAuthorization(authorization);
+                    replacements.get(round).add(manager.getAuthorization());
+                    replaced.await();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> caller : callers) {
+            caller.get(30, TimeUnit.SECONDS);
+        }
+
+        Set<String> distinct = new HashSet<>();
+        for (Set<String> round : replacements) {
+            assertEquals(1, round.size(), "Callers in one round saw different replacements");
+            distinct.addAll(round);
+        }
+        assertEquals(rounds, distinct.size());
+        assertEquals(rounds + 1, server.getTokenRequestCount());
+    }
+
+    @Test
+    void aLateRejectionKeepsTheReplacement() throws Exception {
+        VAXCredentialsManager manager = registry.acquire(server.credentials());
+        String stale = manager.getAuthorization();
+        manager.invalidateAuthorization(stale);
+        String fresh = manager.getAuthorization();
+        assertNotEquals(stale, fresh);
+
+        List<Future<?>> callers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            callers.add(executor.submit(() -> {
+                for (int read = 0; read < 200; read++) {
+                    manager.invalidateAuthorization(stale);
+                    assertEquals(fresh, manager.getAuthorization());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> caller : callers) {
+            caller.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(2, server.getTokenRequestCount());
+    }
+}
@@ -0,0 +1,165 @@
+package com.vendasta.vax;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+
+import io.grpc.BindableService;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.AbstractStub;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+
+/**
+ * An echo API for tests, served by {@link com.vendasta.vax.testing.MockVAXServer} and called
+ * through real {@link HTTPClient} and {@link GRPCClient} subclasses.
+ *
+ * <p>Requests and responses are {@link Struct}s, so no generated code is needed.
+ */
+public final class EchoClients {
+    /** The HTTP path the echo endpoint is served on. */
+    public static final String HTTP_PATH = "/api/v1/echo";
+
+    /** The unary gRPC echo method. */
+    public static final MethodDescriptor<Struct, Struct> ECHO = MethodDescriptor.<Struct, Struct>newBuilder()
+        .setType(MethodDescriptor.MethodType.UNARY)
+        .setFullMethodName(MethodDescriptor.generateFullMethodName("vax.test.Echo", "Echo"))
+        .setRequestMarshaller(ProtoUtils.marshaller(Struct.getDefaultInstance()))
+        .setResponseMarshaller(ProtoUtils.marshaller(Struct.getDefaultInstance()))
+        .build();
+
+    private EchoClients() {}
+
+    /**
+     * Returns a gRPC service that answers every echo call with its request.
+     *
+     * @return the echo service
+     */
+    public static BindableService grpcService() {
+        return () -> ServerServiceDefinition.builder("vax.test.Echo")
+            .addMethod(ECHO, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                responseObserver.onNext(request);
+                responseObserver.onCompleted();
+            }))
+            .build();
+    }
+
+    /**
+     * Builds a message carrying a single string field.
+     *
+     * @param text the text to echo
+     * @return the message
+     */
+    public static Struct message(String text) {
+        return Struct.newBuilder().putFields("text", Value.newBuilder().setStringValue(text).build()).build();
+    }
+
+    /**
+     * A blocking stub for the echo service.
+     */
+    public static final class EchoStub extends AbstractStub<EchoStub> {
+        EchoStub(Channel channel, CallOptions callOptions) {
+            super(channel, callOptions);
+        }
+
+        @Override
+        protected EchoStub build(Channel channel, CallOptions callOptions) {
+            return new EchoStub(channel, callOptions);
+        }
+
+        /**
+         * Calls the echo method.
+         *
+         * @param request the message to echo
+         * @return the echoed message
+         */
+        public Struct echo(Struct request) {
+            return ClientCalls.blockingUnaryCall(getChannel(), ECHO, getCallOptions(), request);
+        }
+    }
+
+    /**
+     * Calls the echo service over gRPC.
+     */
+    public static final class Grpc extends GRPCClient<EchoStub> {
+        /**
+         * Creates a client from a configured builder.
+         *
+         * @param builder the client configuration
+         * @throws SDKException if the client cannot be created
+         */
+        public Grpc(GRPCClient.Builder builder) throws SDKException {
+            super(builder);
+        }
+
+        @Override
+        protected EchoStub newBlockingStub(ManagedChannel channel) {
+            return new EchoStub(channel, CallOptions.DEFAULT);
+        }
+
+        /**
+         * Echoes a message.
+         *
+         * @param request the message to echo
+         * @param options options for this call
+         * @return the echoed message
+         * @throws SDKException if the call fails
+         */
+        public Struct echo(Struct request, RequestOptions.Builder options) throws SDKException {
+            return doRequest(stub -> stub.echo(request), options);
+        }
+
+        /**
+         * Echoes a message with default options.
+         *
+         * @param request the message to echo
+         * @return the echoed message
+         * @throws SDKException if the call fails
+         */
+        public Struct echo(Struct request) throws SDKException {
+            return echo(request, new RequestOptions.Builder());
+        }
+    }
+
+    /**
+     * Calls the echo endpoint over HTTP.
+     */
+    public static final class Http extends HTTPClient {
+        /**
+         * Creates a client from a configured builder.
+         *
+         * @param builder the client configuration
+         * @throws SDKException if the client cannot be created
+         */
+        public Http(HTTPClient.Builder builder) throws SDKException {
+            super(builder);
+        }
+
+        /**
+         * Echoes a message.
+         *
+         * @param request the message to echo
+         * @param options options for this call
+         * @return the echoed message
+         * @throws SDKException if the call fails
+         */
+        public Struct echo(Struct request, RequestOptions.Builder options) throws SDKException {
+            return doRequest(HTTP_PATH, request, Struct.newBuilder(), options).build();
+        }
+
+        /**
+         * Echoes a message with default options.
+         *
+         * @param request the message to echo
+         * @return the echoed message
+         * @throws SDKException if the call fails
+         */
+        public Struct echo(Struct request) throws SDKException {
+            return echo(request, new RequestOptions.Builder());
+        }
+    }
+}
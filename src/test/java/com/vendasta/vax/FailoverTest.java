@@ -0,0 +1,206 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Struct;
+import com.vendasta.vax.testing.FaultProfile;
+import com.vendasta.vax.testing.MockVAXServer;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+
+class FailoverTest {
+    // Keeps the router on the primary so each test decides on its own when a call fails over
+    private static final FailoverPolicy POLICY = FailoverPolicy.builder()
+        .probeInterval(Duration.ofHours(1))
+        .failureThreshold(100)
+        .build();
+
+    private final Struct message = EchoClients.message("hello");
+    private MockVAXServer tokenServer;
+    private MockVAXServer primary;
+    private MockVAXServer secondary;
+    private VAXCredentialsRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        tokenServer = MockVAXServer.builder().start();
+        primary = apiServer();
+        secondary = apiServer();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+    }
+
+    private static MockVAXServer apiServer() {
+        return MockVAXServer.builder()
+            .requireAuthorization(false)
+            .httpEndpoint(EchoClients.HTTP_PATH, Struct.getDefaultInstance(), request -> request)
+            .grpcService(EchoClients.grpcService())
+            .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+        tokenServer.close();
+        primary.close();
+        secondary.close();
+    }
+
+    private static EnvironmentConfig environment(String host) {
+        return EnvironmentConfig.builder().host(host).url("http://" + host).secure(false).build();
+    }
+
+    private EchoClients.Grpc grpcClient(String primaryHost) {
+        return new EchoClients.Grpc(GRPCClient.builder()
+            .failover(List.of(environment(primaryHost), environment(secondary.getGrpcHost())))
+            .failoverPolicy(POLICY)
+            .credentials(tokenServer.credentials())
+            .credentialsRegistry(registry)
+            .defaultTimeout(5));
+    }
+
+    private EchoClients.Http httpClient(String primaryHost) {
+        return new EchoClients.Http(HTTPClient.builder()
+            .failover(List.of(environment(primaryHost), environment(secondary.getHttpHost())))
+            .failoverPolicy(POLICY)
+            .credentials(tokenServer.credentials())
+            .credentialsRegistry(registry)
+            .defaultTimeout(5));
+    }
+
+    private static String unusedHost() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return "localhost:" + socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void grpcRetriesCallsThatNeverReachedTheServer() throws IOException {
+        try (EchoClients.Grpc client = grpcClient(unusedHost())) {
+            assertEquals(message, client.echo(message));
+        }
+        assertEquals(1, secondary.getApiRequestCount());
+    }
+
+    @Test
+    void grpcDoesNotReplayCallsTheServerFailed() {
+        primary.setFaults(FaultProfile.builder().errorRate(1).build());
+        try (EchoClients.Grpc client = grpcClient(primary.getGrpcHost())) {
+            SDKException e = assertThrows(SDKException.class, () -> client.echo(message));
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+        assertEquals(1, primary.getApiRequestCount());
+        assertEquals(0, secondary.getApiRequestCount());
+    }
+
+    @Test
+    void grpcReplaysIdempotentCallsTheServerFailed() {
+        primary.setFaults(FaultProfile.builder().errorRate(1).build());
+        try (EchoClients.Grpc client = grpcClient(primary.getGrpcHost())) {
+            assertEquals(message, client.echo(message, new RequestOptions.Builder().setIdempotent(true)));
+        }
+        assertEquals(1, primary.getApiRequestCount());
+        assertEquals(1, secondary.getApiRequestCount());
+    }
+
+    @Test
+    void httpRetriesRequestsThatCouldNotConnect() throws IOException {
+        try (EchoClients.Http client = httpClient(unusedHost())) {
+            assertEquals(message, client.echo(message));
+        }
+        assertEquals(1, secondary.getApiRequestCount());
+    }
+
+    @Test
+    void httpOnlyReplaysIdempotentRequestsAfterAReset() throws IOException {
+        try (ResettingServer resetting = new ResettingServer(); EchoClients.Http client = httpClient(resetting.host())) {
+            assertThrows(SDKException.class, () -> client.echo(message));
+            assertEquals(0, secondary.getApiRequestCount());
+
+            assertEquals(message, client.echo(message, new RequestOptions.Builder().setIdempotent(true)));
+            assertEquals(1, secondary.getApiRequestCount());
+        }
+    }
+
+    @Test
+    void environmentsAreNotProbedUntilStarted() throws InterruptedException {
+        AtomicInteger probes = new AtomicInteger();
+        FailoverPolicy policy = FailoverPolicy.builder().probeInterval(Duration.ofMillis(10)).build();
+        try (FailoverRouter router = new FailoverRouter(2, policy, target -> {
+            probes.incrementAndGet();
+            return CompletableFuture.completedFuture(true);
+        })) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(0, probes.get());
+
+            router.start();
+            router.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (probes.get() == 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertTrue(probes.get() > 0);
+        }
+    }
+
+    @Test
+    void failoverChannelsClosedBeforeUseTerminateWithoutConnecting() {
+        ManagedChannel channel = new FailoverChannel(List.of(
+            EnvironmentConfig.builder().host("localhost:1").url("http://localhost:1").secure(false).build()),
+            FailoverPolicy.getDefault());
+        assertEquals("localhost:1", channel.authority());
+        channel.shutdownNow();
+        assertTrue(channel.isTerminated());
+    }
+
+    /**
+     * Accepts connections, reads the start of the request and drops the connection, as a
+     * server that crashed mid-request would.
+     */
+    private static final class ResettingServer implements AutoCloseable {
+        private final ServerSocket socket;
+        private final Thread acceptor;
+
+        ResettingServer() throws IOException {
+            socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            acceptor = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try (Socket connection = socket.accept(); InputStream in = connection.getInputStream()) {
+                        in.read(new byte[1024]);
+                        connection.setSoLinger(true, 0);
+                    } catch (IOException e) {
+                        // Closed by the test, or the client gave up first
+                    }
+                }
+            }, "resetting-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String host() {
+            return "localhost:" + socket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.DescriptorProtos.OneofDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Duration;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Message;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.JsonFormat;
+
+/**
+ * Checks that {@link JsonCodec} prints and parses exactly like {@link JsonFormat}.
+ *
+ * <p>The test messages are built from descriptors at runtime, so every field type, proto2
+ * presence and {@code json_name} can be covered without generated code.
+ */
+class JsonCodecTest {
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+    private static final JsonFormat.Parser PARSER = JsonFormat.parser().ignoringUnknownFields();
+
+    private static Descriptor all;
+    private static Descriptor inner;
+    private static Descriptor legacy;
+    private static EnumDescriptor color;
+
+    @BeforeAll
+    static void buildDescriptors() throws Exception {
+        FileDescriptorProto proto3 = FileDescriptorProto.newBuilder()
+            .setName("vax_json_test.proto")
+            .setPackage("vax.test")
+            .setSyntax("proto3")
+            .addDependency("google/protobuf/timestamp.proto")
+            .addDependency("google/protobuf/duration.proto")
+            .addDependency("google/protobuf/struct.proto")
+            .addDependency("google/protobuf/any.proto")
+            .addDependency("google/protobuf/field_mask.proto")
+            .addDependency("google/protobuf/wrappers.proto")
+            .addEnumType(EnumDescriptorProto.newBuilder().setName("Color")
+                .addValue(enumValue("COLOR_UNSPECIFIED", 0))
+                .addValue(enumValue("RED", 1))
+                .addValue(enumValue("GREEN", 2)))
+            .addMessageType(DescriptorProto.newBuilder().setName("Inner")
+                .addField(field("value", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                .addField(field("name", 2, FieldDescriptorProto.Type.TYPE_STRING)))
+            .addMessageType(DescriptorProto.newBuilder().setName("All")
+                .addField(field("f_int32", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                .addField(field("f_int64", 2, FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(field("f_uint32", 3, FieldDescriptorProto.Type.TYPE_UINT32))
+                .addField(field("f_uint64", 4, FieldDescriptorProto.Type.TYPE_UINT64))
+                .addField(field("f_sint32", 5, FieldDescriptorProto.Type.TYPE_SINT32))
+                .addField(field("f_sint64", 6, FieldDescriptorProto.Type.TYPE_SINT64))
+                .addField(field("f_fixed32", 7, FieldDescriptorProto.Type.TYPE_FIXED32))
+                .addField(field("f_fixed64", 8, FieldDescriptorProto.Type.TYPE_FIXED64))
+                .addField(field("f_sfixed32", 9, FieldDescriptorProto.Type.TYPE_SFIXED32))
+                .addField(field("f_sfixed64", 10, FieldDescriptorProto.Type.TYPE_SFIXED64))
+                .addField(field("f_float", 11, FieldDescriptorProto.Type.TYPE_FLOAT))
+                .addField(field("f_double", 12, FieldDescriptorProto.Type.TYPE_DOUBLE))
+                .addField(field("f_bool", 13, FieldDescriptorProto.Type.TYPE_BOOL))
+                .addField(field("f_string", 14, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("f_bytes", 15, FieldDescriptorProto.Type.TYPE_BYTES))
+                .addField(typed("f_color", 16, FieldDescriptorProto.Type.TYPE_ENUM, ".vax.test.Color"))
+                .addField(typed("f_inner", 17, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.Inner"))
+                .addField(repeated(field("r_int64", 18, FieldDescriptorProto.Type.TYPE_INT64)))
+                .addField(repeated(typed("r_color", 19, FieldDescriptorProto.Type.TYPE_ENUM, ".vax.test.Color")))
+                .addField(repeated(typed("r_inner", 20, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.Inner")))
+                .addField(repeated(typed("m_inner", 21, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.All.MInnerEntry")))
+                .addField(repeated(typed("m_int64", 22, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.All.MInt64Entry")))
+                .addField(repeated(typed("m_bool", 23, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.All.MBoolEntry")))
+                .addField(field("o_string", 24, FieldDescriptorProto.Type.TYPE_STRING).setOneofIndex(0))
+                .addField(typed("o_inner", 25, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.Inner").setOneofIndex(0))
+                .addField(typed("timestamp", 26, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Timestamp"))
+                .addField(typed("duration", 27, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Duration"))
+                .addField(typed("struct", 28, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Struct"))
+                .addField(typed("value", 29, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Value"))
+                .addField(typed("list", 30, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.ListValue"))
+                .addField(typed("any", 31, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Any"))
+                .addField(typed("mask", 32, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.FieldMask"))
+                .addField(typed("wrapped_int64", 33, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.Int64Value"))
+                .addField(typed("wrapped_bytes", 34, FieldDescriptorProto.Type.TYPE_MESSAGE, ".google.protobuf.BytesValue"))
+                .addField(typed("null_value", 35, FieldDescriptorProto.Type.TYPE_ENUM, ".google.protobuf.NullValue"))
+                .addField(field("custom", 36, FieldDescriptorProto.Type.TYPE_INT32).setJsonName("renamed"))
+                .addOneofDecl(OneofDescriptorProto.newBuilder().setName("choice"))
+                .addNestedType(mapEntry("MInnerEntry", FieldDescriptorProto.Type.TYPE_STRING,
+                    typed("value", 2, FieldDescriptorProto.Type.TYPE_MESSAGE, ".vax.test.Inner")))
+                .addNestedType(mapEntry("MInt64Entry", FieldDescriptorProto.Type.TYPE_INT64,
+                    field("value", 2, FieldDescriptorProto.Type.TYPE_STRING)))
+                .addNestedType(mapEntry("MBoolEntry", FieldDescriptorProto.Type.TYPE_BOOL,
+                    field("value", 2, FieldDescriptorProto.Type.TYPE_INT32))))
+            .build();
+        FileDescriptor file = FileDescriptor.buildFrom(proto3, new FileDescriptor[] {
+            Timestamp.getDescriptor().getFile(), Duration.getDescriptor().getFile(), Struct.getDescriptor().getFile(),
+            Any.getDescriptor().getFile(), FieldMask.getDescriptor().getFile(), Int64Value.getDescriptor().getFile()});
+        all = file.findMessageTypeByName("All");
+        inner = file.findMessageTypeByName("Inner");
+        color = file.findEnumTypeByName("Color");
+
+        FileDescriptorProto proto2 = FileDescriptorProto.newBuilder()
+            .setName("vax_json_test2.proto")
+            .setPackage("vax.test2")
+            .setSyntax("proto2")
+            .addMessageType(DescriptorProto.newBuilder().setName("Legacy")
+                .addField(optional(field("number", 1, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addField(optional(field("text", 2, FieldDescriptorProto.Type.TYPE_STRING)).setDefaultValue("fallback"))
+                .addField(optional(field("flag", 3, FieldDescriptorProto.Type.TYPE_BOOL))))
+            .build();
+        legacy = FileDescriptor.buildFrom(proto2, new FileDescriptor[0]).findMessageTypeByName("Legacy");
+    }
+
+    private static EnumValueDescriptorProto.Builder enumValue(String name, int number) {
+        return EnumValueDescriptorProto.newBuilder().setName(name).setNumber(number);
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder().setName(name).setNumber(number).setType(type)
+            .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    private static FieldDescriptorProto.Builder typed(String name, int number, FieldDescriptorProto.Type type, String typeName) {
+        return field(name, number, type).setTypeName(typeName);
+    }
+
+    private static FieldDescriptorProto.Builder repeated(FieldDescriptorProto.Builder field) {
+        return field.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+    }
+
+    private static FieldDescriptorProto.Builder optional(FieldDescriptorProto.Builder field) {
+        return field.setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    private static DescriptorProto.Builder mapEntry(String name, FieldDescriptorProto.Type keyType, FieldDescriptorProto.Builder value) {
+        return DescriptorProto.newBuilder().setName(name)
+            .setOptions(MessageOptions.newBuilder().setMapEntry(true))
+            .addField(field("key", 1, keyType))
+            .addField(value);
+    }
+
+    private static FieldDescriptor field(Descriptor descriptor, String name) {
+        return descriptor.findFieldByName(name);
+    }
+
+    private static Message innerMessage(int value, String name) {
+        return DynamicMessage.newBuilder(inner)
+            .setField(field(inner, "value"), value)
+            .setField(field(inner, "name"), name)
+            .build();
+    }
+
+    private static Message mapEntry(String field, Object key, Object value) {
+        Descriptor entry = all.findFieldByName(field).getMessageType();
+        return DynamicMessage.newBuilder(entry)
+            .setField(entry.findFieldByName("key"), key)
+            .setField(entry.findFieldByName("value"), value)
+            .build();
+    }
+
+    private static Message everything() {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(all)
+            .setField(field(all, "f_int32"), -42)
+            .setField(field(all, "f_int64"), Long.MIN_VALUE)
+            .setField(field(all, "f_uint32"), -1)
+            .setField(field(all, "f_uint64"), -1L)
+            .setField(field(all, "f_sint32"), Integer.MIN_VALUE)
+            .setField(field(all, "f_sint64"), Long.MAX_VALUE)
+            .setField(field(all, "f_fixed32"), 0x80000000)
+            .setField(field(all, "f_fixed64"), 0x8000000000000000L)
+            .setField(field(all, "f_sfixed32"), -7)
+            .setField(field(all, "f_sfixed64"), -9007199254740993L)
+            .setField(field(all, "f_float"), 0.1f)
+            .setField(field(all, "f_double"), 1e-300)
+            .setField(field(all, "f_bool"), true)
+            .setField(field(all, "f_string"), "quote \" slash \\ tab \t snowman ☃ emoji 😀 nul \u0000 <html>")
+            .setField(field(all, "f_bytes"), ByteString.copyFrom(new byte[] {0, 1, 2, (byte) 0xfb, (byte) 0xff}))
+            .setField(field(all, "f_color"), color.findValueByName("GREEN"))
+            .setField(field(all, "f_inner"), innerMessage(1, "one"))
+            .addRepeatedField(field(all, "r_int64"), 1L)
+            .addRepeatedField(field(all, "r_int64"), -2L)
+            .addRepeatedField(field(all, "r_color"), color.findValueByName("RED"))
+            .addRepeatedField(field(all, "r_color"), color.findValueByNumberCreatingIfUnknown(7))
+            .addRepeatedField(field(all, "r_inner"), innerMessage(0, ""))
+            .addRepeatedField(field(all, "r_inner"), innerMessage(2, "two"))
+            .addRepeatedField(field(all, "m_inner"), mapEntry("m_inner", "a", innerMessage(3, "three")))
+            .addRepeatedField(field(all, "m_inner"), mapEntry("m_inner", "", innerMessage(0, "")))
+            .addRepeatedField(field(all, "m_int64"), mapEntry("m_int64", -5L, "minus five"))
+            .addRepeatedField(field(all, "m_bool"), mapEntry("m_bool", true, 1))
+            .addRepeatedField(field(all, "m_bool"), mapEntry("m_bool", false, 0))
+            .setField(field(all, "o_inner"), innerMessage(4, "four"))
+            .setField(field(all, "timestamp"), Timestamp.newBuilder().setSeconds(1_700_000_000L).setNanos(5_000_000).build())
+            .setField(field(all, "duration"), Duration.newBuilder().setSeconds(-3).setNanos(-500_000_000).build())
+            .setField(field(all, "struct"), Struct.newBuilder()
+                .putFields("n", Value.newBuilder().setNumberValue(1.5).build())
+                .putFields("s", Value.newBuilder().setStringValue("x").build())
+                .build())
+            .setField(field(all, "value"), Value.newBuilder().setBoolValue(false).build())
+            .setField(field(all, "list"), ListValue.newBuilder().addValues(Value.newBuilder().setStringValue("y")).build())
+            .setField(field(all, "any"), Any.getDefaultInstance())
+            .setField(field(all, "mask"), FieldMask.newBuilder().addPaths("f_inner.value").addPaths("m_inner").build())
+            .setField(field(all, "wrapped_int64"), Int64Value.of(0))
+            .setField(field(all, "wrapped_bytes"), BytesValue.of(ByteString.copyFromUtf8("?>")))
+            .setField(field(all, "custom"), 9);
+        return builder.build();
+    }
+
+    private static String codecJson(Message message) throws InvalidProtocolBufferException {
+        return new String(JsonCodec.print(message, true), StandardCharsets.UTF_8);
+    }
+
+    private static Message codecParse(Descriptor descriptor, String json) throws InvalidProtocolBufferException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(descriptor);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JsonCodec.merge(bytes, 0, bytes.length, builder, true);
+        return builder.build();
+    }
+
+    private static Message jsonFormatParse(Descriptor descriptor, String json) throws InvalidProtocolBufferException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(descriptor);
+        PARSER.merge(json, builder);
+        return builder.build();
+    }
+
+    private static void assertPrintsLikeJsonFormat(Message message) throws InvalidProtocolBufferException {
+        assertEquals(PRINTER.print(message), codecJson(message));
+    }
+
+    /**
+     * Parses the JSON with both, expecting the same message or both to reject it.
+     */
+    private static void assertParsesLikeJsonFormat(Descriptor descriptor, String json) throws InvalidProtocolBufferException {
+        Message expected;
+        try {
+            expected = jsonFormatParse(descriptor, json);
+        } catch (InvalidProtocolBufferException e) {
+            assertThrows(InvalidProtocolBufferException.class, () -> codecParse(descriptor, json), json);
+            return;
+        }
+        assertEquals(expected, codecParse(descriptor, json), json);
+    }
+
+    @Test
+    void printsEveryFieldTypeLikeJsonFormat() throws InvalidProtocolBufferException {
+        assertPrintsLikeJsonFormat(everything());
+        assertPrintsLikeJsonFormat(DynamicMessage.getDefaultInstance(all));
+    }
+
+    @Test
+    void roundTripsThroughJsonFormat() throws InvalidProtocolBufferException {
+        Message message = everything();
+        assertEquals(message, jsonFormatParse(all, codecJson(message)));
+        assertEquals(message, codecParse(all, PRINTER.print(message)));
+        assertEquals(message, codecParse(all, JsonFormat.printer().print(message)));
+    }
+
+    @Test
+    void quotesSixtyFourBitIntegersAndAcceptsBothForms() throws InvalidProtocolBufferException {
+        Message message = DynamicMessage.newBuilder(all)
+            .setField(field(all, "f_int64"), 123L)
+            .setField(field(all, "f_uint64"), -1L)
+            .build();
+        assertEquals("{\"fInt64\":\"123\",\"fUint64\":\"18446744073709551615\"}", codecJson(message));
+        assertPrintsLikeJsonFormat(message);
+        for (String json : List.of(
+                "{\"fInt64\":123,\"fUint64\":18446744073709551615}",
+                "{\"fInt64\":\"-9223372036854775808\",\"fUint64\":\"0\"}",
+                "{\"fInt64\":1e3}",
+                "{\"fInt64\":1.5}",
+                "{\"fInt64\":\"9223372036854775808\"}",
+                "{\"fUint64\":\"-1\"}",
+                "{\"fUint64\":\"18446744073709551616\"}",
+                "{\"fInt32\":2147483648}",
+                "{\"fUint32\":-1}",
+                "{\"fUint32\":4294967295}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void handlesNanAndInfinity() throws InvalidProtocolBufferException {
+        for (double value : new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, Double.MIN_VALUE, Double.MAX_VALUE}) {
+            assertPrintsLikeJsonFormat(DynamicMessage.newBuilder(all)
+                .setField(field(all, "f_double"), value)
+                .setField(field(all, "f_float"), (float) value)
+                .build());
+        }
+        for (String json : List.of(
+                "{\"fDouble\":\"NaN\",\"fFloat\":\"NaN\"}",
+                "{\"fDouble\":\"Infinity\",\"fFloat\":\"-Infinity\"}",
+                "{\"fDouble\":\"1.5\",\"fFloat\":\"2.5\"}",
+                "{\"fFloat\":3.5e38}",
+                "{\"fDouble\":\"nan\"}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void parsesBytesWithAndWithoutPadding() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"fBytes\":\"AAEC+/8=\"}",
+                "{\"fBytes\":\"AAEC+/8\"}",
+                "{\"fBytes\":\"AAEC-_8=\"}",
+                "{\"fBytes\":\"AAEC-_8\"}",
+                "{\"fBytes\":\"\"}",
+                "{\"fBytes\":\"!!\"}",
+                "{\"wrappedBytes\":\"Pz4\"}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void keepsUnknownEnumNumbersAndSkipsUnknownNames() throws InvalidProtocolBufferException {
+        assertPrintsLikeJsonFormat(DynamicMessage.newBuilder(all)
+            .setField(field(all, "f_color"), color.findValueByNumberCreatingIfUnknown(42))
+            .build());
+        for (String json : List.of(
+                "{\"fColor\":42}",
+                "{\"fColor\":\"RED\"}",
+                "{\"fColor\":1}",
+                "{\"fColor\":\"PURPLE\"}",
+                "{\"rColor\":[\"GREEN\",\"PURPLE\",7]}",
+                "{\"nullValue\":null}",
+                "{\"nullValue\":\"NULL_VALUE\"}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void handlesMapsWithMessageValues() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"mInner\":{\"a\":{\"value\":1},\"b\":{}}}",
+                "{\"mInt64\":{\"-5\":\"x\",\"7\":\"y\"}}",
+                "{\"mBool\":{\"true\":1,\"false\":2}}",
+                "{\"mBool\":{\"yes\":1}}",
+                "{\"mInt64\":{\"x\":\"y\"}}",
+                "{\"mInner\":{\"a\":null}}",
+                "{\"mInner\":null}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void handlesOneofs() throws InvalidProtocolBufferException {
+        assertPrintsLikeJsonFormat(DynamicMessage.newBuilder(all).setField(field(all, "o_string"), "").build());
+        for (String json : List.of(
+                "{\"oString\":\"\"}",
+                "{\"oInner\":{}}",
+                "{\"oString\":\"a\",\"oInner\":{}}",
+                "{\"oString\":null,\"oInner\":{\"value\":1}}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void keepsProto2Presence() throws InvalidProtocolBufferException {
+        Message explicitDefaults = DynamicMessage.newBuilder(legacy)
+            .setField(field(legacy, "number"), 0)
+            .setField(field(legacy, "text"), "fallback")
+            .setField(field(legacy, "flag"), false)
+            .build();
+        assertPrintsLikeJsonFormat(explicitDefaults);
+        assertPrintsLikeJsonFormat(DynamicMessage.getDefaultInstance(legacy));
+        assertEquals(explicitDefaults, codecParse(legacy, codecJson(explicitDefaults)));
+        for (String json : List.of("{}", "{\"number\":0}", "{\"text\":\"fallback\",\"flag\":false}", "{\"number\":null}")) {
+            assertParsesLikeJsonFormat(legacy, json);
+        }
+    }
+
+    @Test
+    void printsAndParsesWellKnownTypes() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"timestamp\":\"2023-11-14T22:13:20.005Z\",\"duration\":\"-3.500s\"}",
+                "{\"timestamp\":\"not a time\"}",
+                "{\"struct\":{\"a\":[1,\"b\",null,{\"c\":true}]},\"value\":null,\"list\":[]}",
+                "{\"mask\":\"fInner.value,mInner\",\"wrappedInt64\":\"0\",\"wrappedBytes\":\"Pz4=\"}",
+                "{\"any\":{}}",
+                "{\"any\":{\"@type\":\"type.googleapis.com/google.protobuf.Duration\",\"value\":\"1s\"}}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+        // Neither can print an Any without a type registry
+        Message any = DynamicMessage.newBuilder(all)
+            .setField(field(all, "any"), Any.pack(Duration.newBuilder().setSeconds(1).build()))
+            .build();
+        assertThrows(InvalidProtocolBufferException.class, () -> PRINTER.print(any));
+        assertThrows(InvalidProtocolBufferException.class, () -> codecJson(any));
+    }
+
+    @Test
+    void handlesDuplicateAndCollidingKeys() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"fInt32\":1,\"fInt32\":2}",
+                "{\"fInt32\":1,\"f_int32\":2}",
+                "{\"f_int32\":3}",
+                "{\"renamed\":1}",
+                "{\"custom\":1}",
+                "{\"renamed\":1,\"custom\":2}",
+                "{\"rInt64\":[1],\"r_int64\":[2]}",
+                "{\"mInner\":{\"a\":{}},\"m_inner\":{\"b\":{}}}",
+                "{\"mInner\":{\"a\":{\"value\":1},\"a\":{\"value\":2}}}",
+                "{\"rInt64\":[1],\"rInt64\":[2]}",
+                "{\"fInner\":{\"value\":1},\"fInner\":{\"name\":\"x\"}}",
+                "{\"fInt32\":1,\"f_int32\":null}",
+                "{\"fInt32\":null,\"f_int32\":1}",
+                "{\"fInt32\":0,\"f_int32\":1}",
+                "{\"rInt64\":[1],\"r_int64\":null}",
+                "{\"rInt64\":null,\"r_int64\":[2]}",
+                "{\"rInt64\":[],\"r_int64\":[2]}",
+                "{\"oString\":\"a\",\"oString\":\"b\"}")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+        assertArrayEquals(PRINTER.print(DynamicMessage.newBuilder(all).setField(field(all, "custom"), 5).build()).getBytes(StandardCharsets.UTF_8),
+            JsonCodec.print(DynamicMessage.newBuilder(all).setField(field(all, "custom"), 5).build(), true));
+    }
+
+    @Test
+    void ignoresUnknownFields() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"unknown\":1,\"fInt32\":5}",
+                "{\"unknown\":{\"deep\":[1,{\"x\":null}]},\"fString\":\"s\"}",
+                "{\"fInner\":{\"unknown\":[],\"value\":3}}",
+                "{\"unknown\":")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void rejectsValuesOfTheWrongType() throws InvalidProtocolBufferException {
+        for (String json : List.of(
+                "{\"fInt32\":\"abc\"}",
+                "{\"fBool\":\"true\"}",
+                "{\"fBool\":1}",
+                "{\"fString\":1}",
+                "{\"fInner\":[]}",
+                "{\"rInt64\":1}",
+                "[]",
+                "")) {
+            assertParsesLikeJsonFormat(all, json);
+        }
+    }
+
+    @Test
+    void defaultsToJsonFormat() throws InvalidProtocolBufferException {
+        Message message = everything();
+        assertArrayEquals(PRINTER.print(message).getBytes(StandardCharsets.UTF_8), JsonCodec.print(message, false));
+        byte[] json = PRINTER.print(message).getBytes(StandardCharsets.UTF_8);
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(all);
+        JsonCodec.merge(json, 0, json.length, builder, false);
+        assertEquals(message, builder.build());
+    }
+}
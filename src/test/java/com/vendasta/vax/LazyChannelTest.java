@@ -0,0 +1,45 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.ConnectivityState;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCalls;
+
+class LazyChannelTest {
+    private final AtomicInteger built = new AtomicInteger();
+
+    private LazyChannel channel() {
+        return new LazyChannel("localhost:1", () -> {
+            built.incrementAndGet();
+            throw new AssertionError("The transport should not be built");
+        });
+    }
+
+    @Test
+    void callsOnAChannelShutDownBeforeUseFailWithoutBuildingIt() {
+        LazyChannel channel = channel();
+        channel.shutdown();
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () ->
+            ClientCalls.blockingUnaryCall(channel, EchoClients.ECHO, CallOptions.DEFAULT, EchoClients.message("hello")));
+        assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        assertEquals(ConnectivityState.SHUTDOWN, channel.getState(true));
+        assertTrue(channel.isTerminated());
+        assertEquals(0, built.get());
+    }
+
+    @Test
+    void authorityDoesNotBuildTheChannel() {
+        assertEquals("localhost:1", channel().authority());
+        assertEquals(0, built.get());
+    }
+}
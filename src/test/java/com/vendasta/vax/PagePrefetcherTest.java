@@ -0,0 +1,187 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class PagePrefetcherTest {
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(10);
+
+    private record Page(int number, String cursor, Thread fetchedOn) {}
+
+    /**
+     * Serves pages numbered from 1, each pointing at the next until {@code last}.
+     */
+    private static final class Pages implements Function<Integer, Page> {
+        private final int last;
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        Pages(int last) {
+            this.last = last;
+        }
+
+        @Override
+        public Page apply(Integer number) {
+            fetches.incrementAndGet();
+            return new Page(number, number < last ? "c" + (number + 1) : "", Thread.currentThread());
+        }
+
+        Stream<Page> stream(int prefetchPages, Duration idleTimeout) {
+            return PagePrefetcher.stream(1, this, Page::cursor,
+                (request, cursor) -> Integer.parseInt(cursor.substring(1)), prefetchPages, idleTimeout);
+        }
+
+        Stream<Page> stream(int prefetchPages) {
+            return stream(prefetchPages, IDLE_TIMEOUT);
+        }
+    }
+
+    private static List<Integer> numbers(Stream<Page> pages) {
+        try (pages) {
+            return pages.map(Page::number).collect(Collectors.toList());
+        }
+    }
+
+    private static void awaitFetches(Pages pages, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pages.fetches.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, pages.fetches.get());
+    }
+
+    @Test
+    void pagesArriveInOrder() {
+        assertEquals(List.of(1, 2, 3, 4, 5), numbers(new Pages(5).stream(0)));
+        assertEquals(List.of(1, 2, 3, 4, 5), numbers(new Pages(5).stream(2)));
+        assertEquals(List.of(1), numbers(new Pages(1).stream(2)));
+    }
+
+    @Test
+    void nullEmptyOrRepeatedCursorEndsTheList() {
+        for (int prefetchPages : new int[] {0, 2}) {
+            for (String last : new String[] {null, "", "c2"}) {
+                AtomicInteger fetches = new AtomicInteger();
+                Stream<Integer> pages = PagePrefetcher.stream(1, request -> {
+                    fetches.incrementAndGet();
+                    return request;
+                }, page -> page == 1 ? "c2" : last, (request, cursor) -> request + 1, prefetchPages, IDLE_TIMEOUT);
+                try (pages) {
+                    assertEquals(List.of(1, 2), pages.collect(Collectors.toList()));
+                }
+                assertEquals(2, fetches.get());
+            }
+        }
+    }
+
+    @Test
+    void prefetchingStopsWhenTheBufferIsFull() throws InterruptedException {
+        Pages pages = new Pages(100);
+        try (Stream<Page> stream = pages.stream(2)) {
+            Iterator<Page> iterator = stream.iterator();
+            assertEquals(1, iterator.next().number());
+            // Two pages buffered, and a third fetched and waiting for room
+            awaitFetches(pages, 4);
+            Thread.sleep(200);
+            assertEquals(4, pages.fetches.get());
+
+            assertEquals(2, iterator.next().number());
+            awaitFetches(pages, 5);
+        }
+    }
+
+    @Test
+    void closingStopsPrefetching() throws InterruptedException {
+        Pages pages = new Pages(100);
+        Stream<Page> stream = pages.stream(2);
+        assertEquals(1, stream.iterator().next().number());
+        awaitFetches(pages, 4);
+        stream.close();
+        Thread.sleep(200);
+        assertEquals(4, pages.fetches.get());
+    }
+
+    @Test
+    void failuresReachTheCallerAfterEarlierPages() {
+        for (int prefetchPages : new int[] {0, 2}) {
+            SDKException failure = new SDKException("page 3 failed");
+            Pages pages = new Pages(5);
+            List<Integer> seen = new ArrayList<>();
+            Stream<Page> stream = PagePrefetcher.stream(1, request -> {
+                if (request == 3) {
+                    throw failure;
+                }
+                return pages.apply(request);
+            }, Page::cursor, (request, cursor) -> Integer.parseInt(cursor.substring(1)), prefetchPages, IDLE_TIMEOUT);
+            try (stream) {
+                Iterator<Page> iterator = stream.iterator();
+                SDKException e = assertThrows(SDKException.class, () -> {
+                    while (iterator.hasNext()) {
+                        seen.add(iterator.next().number());
+                    }
+                });
+                assertSame(failure, e);
+            }
+            assertEquals(List.of(1, 2), seen);
+        }
+    }
+
+    @Test
+    void checkedFailuresAreWrapped() {
+        Stream<Integer> stream = PagePrefetcher.stream(1, request -> {
+            throw new AssertionError("boom");
+        }, page -> "", (request, cursor) -> request, 2, IDLE_TIMEOUT);
+        try (stream) {
+            SDKException e = assertThrows(SDKException.class, () -> stream.iterator().next());
+            assertEquals("Failed to fetch page: boom", e.getMessage());
+        }
+    }
+
+    @Test
+    void idleCallerGetsTheRestOnItsOwnThread() throws InterruptedException {
+        Pages pages = new Pages(6);
+        try (Stream<Page> stream = pages.stream(1, Duration.ofMillis(100))) {
+            Iterator<Page> iterator = stream.iterator();
+            assertEquals(1, iterator.next().number());
+            // Page 2 is buffered, page 3 could not be and is handed over
+            awaitFetches(pages, 3);
+            Thread.sleep(300);
+            assertEquals(3, pages.fetches.get());
+
+            List<Page> rest = new ArrayList<>();
+            iterator.forEachRemaining(rest::add);
+            assertEquals(List.of(2, 3, 4, 5, 6), rest.stream().map(Page::number).collect(Collectors.toList()));
+            assertNotSame(Thread.currentThread(), rest.get(1).fetchedOn());
+            for (Page page : rest.subList(2, rest.size())) {
+                assertSame(Thread.currentThread(), page.fetchedOn());
+            }
+            // Nothing was fetched twice
+            assertEquals(6, pages.fetches.get());
+        }
+    }
+
+    @Test
+    void idleCallerStillSeesTheEnd() throws InterruptedException {
+        Pages pages = new Pages(1);
+        try (Stream<Page> stream = pages.stream(1, Duration.ofMillis(100))) {
+            Thread.sleep(300);
+            Iterator<Page> iterator = stream.iterator();
+            assertEquals(1, iterator.next().number());
+            assertFalse(iterator.hasNext());
+        }
+    }
+}
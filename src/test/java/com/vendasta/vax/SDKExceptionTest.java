@@ -0,0 +1,58 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Status;
+
+class SDKExceptionTest {
+    private static SDKException roundTrip(SDKException e) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(e);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (SDKException) in.readObject();
+        }
+    }
+
+    @Test
+    void lightweightMessageIsFormattedOnFirstRead() {
+        int[] calls = new int[1];
+        SDKException e = SDKException.lightweight(Status.UNAVAILABLE, () -> "call " + ++calls[0], null);
+        assertEquals(0, calls[0]);
+        assertEquals("call 1", e.getMessage());
+        assertEquals("call 1", e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
+    }
+
+    @Test
+    void lightweightMessageIsTruncated() {
+        SDKException e = SDKException.lightweight(Status.UNAVAILABLE, () -> "x".repeat(5000), null);
+        assertEquals(SDKException.MAX_LIGHTWEIGHT_MESSAGE_LENGTH + 3, e.getMessage().length());
+        assertTrue(e.getMessage().endsWith("..."));
+    }
+
+    @Test
+    void lightweightMessageSurvivesSerializationBeforeFirstRead() throws Exception {
+        SDKException e = SDKException.lightweight(Status.DEADLINE_EXCEEDED, () -> "timed out after 5s", null);
+        SDKException copy = roundTrip(e);
+        assertEquals("timed out after 5s", copy.getMessage());
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, copy.getStatus().getCode());
+    }
+
+    @Test
+    void statusSurvivesSerialization() throws Exception {
+        SDKException copy = roundTrip(new SDKException("throttled", Status.Code.RESOURCE_EXHAUSTED.value()));
+        assertEquals("throttled", copy.getMessage());
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, copy.getStatus().getCode());
+    }
+}
@@ -0,0 +1,129 @@
+package com.vendasta.vax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Int32Value;
+
+import io.grpc.Status;
+
+/**
+ * Submits to a {@link WriteBehindQueue} from many threads and checks that every accepted
+ * request is delivered or failed exactly once.
+ */
+class WriteBehindQueueLoadTest {
+    private static final int THREADS = 8;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void flushAccountsForEveryRequest() throws Exception {
+        int perThread = 1000;
+        Set<Integer> delivered = ConcurrentHashMap.newKeySet();
+        Set<Integer> failed = ConcurrentHashMap.newKeySet();
+        WriteBehindQueue<Int32Value> queue = WriteBehindQueue.<Int32Value>builder()
+            .batchSender(batch -> {
+                if (batch.get(0).getValue() % 5 == 0) {
+                    throw new SDKException("Rejected", Status.Code.INVALID_ARGUMENT.value());
+                }
+                batch.forEach(request -> delivered.add(request.getValue()));
+            })
+            .failureHandler((batch, error) -> batch.forEach(request -> failed.add(request.getValue())))
+            .capacity(64)
+            .concurrency(2)
+            .maxBatchSize(16)
+            .build();
+
+        List<Future<?>> submitters = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int offset = i * perThread;
+            submitters.add(executor.submit(() -> {
+                for (int value = offset; value < offset + perThread; value++) {
+                    assertTrue(queue.submit(Int32Value.of(value)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> submitter : submitters) {
+            submitter.get(30, TimeUnit.SECONDS);
+        }
+
+        assertTrue(queue.flush(Duration.ofSeconds(30)));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(THREADS * perThread, delivered.size() + failed.size());
+        assertEquals(delivered.size(), queue.getDeliveredCount());
+        assertEquals(failed.size(), queue.getFailedCount());
+        assertTrue(failed.size() > 0, "Some batches should have been rejected");
+        queue.close();
+    }
+
+    @Test
+    void closeRacingBlockedSubmitters() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        WriteBehindQueue<Int32Value> queue = WriteBehindQueue.<Int32Value>builder()
+            .sender(request -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SDKException("Interrupted", Status.Code.UNAVAILABLE.value());
+                }
+            })
+            .capacity(4)
+            .overflowPolicy(WriteBehindQueue.OverflowPolicy.BLOCK)
+            .shutdownGracePeriod(Duration.ofMillis(50))
+            .build();
+
+        List<Future<?>> submitters = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            submitters.add(executor.submit(() -> {
+                for (int value = 0; ; value++) {
+                    try {
+                        if (queue.submit(Int32Value.of(value))) {
+                            accepted.incrementAndGet();
+                        }
+                    } catch (SDKException e) {
+                        assertEquals("Write-behind queue has been closed", e.getMessage());
+                        return null;
+                    }
+                }
+            }));
+        }
+
+        Thread.sleep(100);
+        queue.close();
+        for (Future<?> submitter : submitters) {
+            submitter.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(accepted.get(), queue.getDeliveredCount() + queue.getFailedCount());
+        assertEquals(0, queue.getQueueDepth());
+    }
+}
@@ -0,0 +1,207 @@
+package com.vendasta.vax.testing;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Describes the latency and failures a {@link MockVAXServer} injects into its responses.
+ *
+ * <p>Rates are probabilities between 0 and 1 evaluated independently for each request, in
+ * the order: throttling, unauthenticated, then server error.
+ */
+public final class FaultProfile {
+    private static final FaultProfile NONE = builder().build();
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final double unauthorizedRate;
+    private final double throttleRate;
+    private final Duration retryAfter;
+    private final long bodyBytesPerSecond;
+
+    private FaultProfile(Builder builder) {
+        this.latency = builder.latency;
+        this.errorRate = builder.errorRate;
+        this.unauthorizedRate = builder.unauthorizedRate;
+        this.throttleRate = builder.throttleRate;
+        this.retryAfter = builder.retryAfter;
+        this.bodyBytesPerSecond = builder.bodyBytesPerSecond;
+    }
+
+    /**
+     * Returns a profile that injects nothing.
+     *
+     * @return the fault-free profile
+     */
+    public static FaultProfile none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the latency added before each response.
+     *
+     * @return the latency distribution
+     */
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the fraction of requests answered with a server error.
+     *
+     * @return the error rate
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Returns the fraction of requests rejected as unauthenticated.
+     *
+     * @return the unauthorized rate
+     */
+    public double getUnauthorizedRate() {
+        return unauthorizedRate;
+    }
+
+    /**
+     * Returns the fraction of requests rejected as throttled.
+     *
+     * @return the throttle rate
+     */
+    public double getThrottleRate() {
+        return throttleRate;
+    }
+
+    /**
+     * Returns the retry delay advertised on throttled responses.
+     *
+     * @return the retry delay
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Returns the rate at which HTTP response bodies are streamed, or 0 for no limit.
+     *
+     * @return bytes per second
+     */
+    public long getBodyBytesPerSecond() {
+        return bodyBytesPerSecond;
+    }
+
+    /**
+     * Builder for configuring FaultProfile instances.
+     */
+    public static class Builder {
+        private LatencyDistribution latency = LatencyDistribution.none();
+        private double errorRate;
+        private double unauthorizedRate;
+        private double throttleRate;
+        private Duration retryAfter = Duration.ofSeconds(1);
+        private long bodyBytesPerSecond;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the latency added before each response.
+         *
+         * @param latency the latency distribution (default: none)
+         * @return this builder instance
+         */
+        public Builder latency(LatencyDistribution latency) {
+            this.latency = Objects.requireNonNull(latency, "Latency cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the fraction of requests answered with HTTP 500 or gRPC UNAVAILABLE.
+         *
+         * @param errorRate a probability between 0 and 1 (default: 0)
+         * @return this builder instance
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of requests answered with HTTP 401 or gRPC UNAUTHENTICATED.
+         *
+         * @param unauthorizedRate a probability between 0 and 1 (default: 0)
+         * @return this builder instance
+         */
+        public Builder unauthorizedRate(double unauthorizedRate) {
+            this.unauthorizedRate = unauthorizedRate;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of requests answered with HTTP 429 or gRPC RESOURCE_EXHAUSTED.
+         *
+         * @param throttleRate a probability between 0 and 1 (default: 0)
+         * @return this builder instance
+         */
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /**
+         * Sets the delay advertised through {@code Retry-After} or {@code grpc-retry-pushback-ms}.
+         *
+         * @param retryAfter the retry delay (default: 1 second)
+         * @return this builder instance
+         */
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = Objects.requireNonNull(retryAfter, "Retry after cannot be null");
+            return this;
+        }
+
+        /**
+         * Streams HTTP response bodies no faster than the given rate.
+         *
+         * @param bodyBytesPerSecond bytes per second, or 0 for no limit (default: 0)
+         * @return this builder instance
+         */
+        public Builder bodyBytesPerSecond(long bodyBytesPerSecond) {
+            this.bodyBytesPerSecond = bodyBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Builds the FaultProfile instance.
+         *
+         * @return configured FaultProfile instance
+         * @throws IllegalArgumentException if a rate is outside [0, 1]
+         */
+        public FaultProfile build() {
+            checkRate(errorRate, "errorRate");
+            checkRate(unauthorizedRate, "unauthorizedRate");
+            checkRate(throttleRate, "throttleRate");
+            if (bodyBytesPerSecond < 0) {
+                throw new IllegalArgumentException("bodyBytesPerSecond cannot be negative");
+            }
+            return new FaultProfile(this);
+        }
+
+        private static void checkRate(double rate, String name) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException(name + " must be between 0 and 1");
+            }
+        }
+    }
+
+    /**
+     * Creates a new builder for FaultProfile.
+     *
+     * @return new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
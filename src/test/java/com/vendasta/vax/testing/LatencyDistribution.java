@@ -0,0 +1,69 @@
+package com.vendasta.vax.testing;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Produces the artificial latency added to each request served by a {@link MockVAXServer}.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /**
+     * Samples the latency for one request.
+     *
+     * @param random the random source to sample from
+     * @return the latency to add, never negative
+     */
+    Duration sample(Random random);
+
+    /**
+     * Adds no latency.
+     *
+     * @return the distribution
+     */
+    static LatencyDistribution none() {
+        return random -> Duration.ZERO;
+    }
+
+    /**
+     * Adds the same latency to every request.
+     *
+     * @param latency the latency
+     * @return the distribution
+     */
+    static LatencyDistribution fixed(Duration latency) {
+        Objects.requireNonNull(latency, "Latency cannot be null");
+        return random -> latency;
+    }
+
+    /**
+     * Adds a latency drawn uniformly between two bounds.
+     *
+     * @param min the smallest latency
+     * @param max the largest latency
+     * @return the distribution
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long spread = max.toNanos() - minNanos;
+        if (spread < 0) {
+            throw new IllegalArgumentException("max must not be smaller than min");
+        }
+        return random -> Duration.ofNanos(minNanos + (long) (random.nextDouble() * spread));
+    }
+
+    /**
+     * Adds a log-normally distributed latency, which models the long tail of real services.
+     *
+     * @param median the median latency
+     * @param p99 the 99th percentile latency
+     * @return the distribution
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        // 2.326 is the z-score of the 99th percentile
+        double sigma = Math.max(0, (Math.log(p99.toNanos()) - mu) / 2.326);
+        return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,124 @@
+package com.vendasta.vax.testing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Struct;
+import com.vendasta.vax.EchoClients;
+import com.vendasta.vax.GRPCClient;
+import com.vendasta.vax.HTTPClient;
+import com.vendasta.vax.SDKException;
+import com.vendasta.vax.VAXCredentialsRegistry;
+
+import io.grpc.Status;
+
+class MockVAXServerTest {
+    private MockVAXServer server;
+    private VAXCredentialsRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        server = MockVAXServer.builder()
+            .tokenLifetime(Duration.ofSeconds(2))
+            .httpEndpoint(EchoClients.HTTP_PATH, Struct.getDefaultInstance(), request -> request)
+            .grpcService(EchoClients.grpcService())
+            .seed(1)
+            .start();
+        registry = VAXCredentialsRegistry.builder().tokenCache(null).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+        server.close();
+    }
+
+    private EchoClients.Http httpClient() {
+        return new EchoClients.Http(HTTPClient.builder()
+            .host(server.getHttpHost())
+            .secure(false)
+            .credentials(server.credentials())
+            .credentialsRegistry(registry)
+            .defaultTimeout(5));
+    }
+
+    private EchoClients.Grpc grpcClient() {
+        return new EchoClients.Grpc(GRPCClient.builder()
+            .host(server.getGrpcHost())
+            .secure(false)
+            .credentials(server.credentials())
+            .credentialsRegistry(registry)
+            .defaultTimeout(5));
+    }
+
+    @Test
+    void clientsShareOneTokenAcrossHttpAndGrpc() {
+        Struct message = EchoClients.message("hello");
+        try (EchoClients.Http http = httpClient(); EchoClients.Grpc grpc = grpcClient()) {
+            assertEquals(message, http.echo(message));
+            assertEquals(message, grpc.echo(message));
+        }
+        assertEquals(1, server.getTokenRequestCount());
+        assertEquals(2, server.getApiRequestCount());
+    }
+
+    @Test
+    void expiredTokensAreRefreshed() throws InterruptedException {
+        Struct message = EchoClients.message("hello");
+        try (EchoClients.Http http = httpClient()) {
+            http.echo(message);
+            Thread.sleep(2500);
+            assertEquals(message, http.echo(message));
+        }
+        assertEquals(2, server.getTokenRequestCount());
+    }
+
+    @Test
+    void revokedTokensAreRejected() {
+        Struct message = EchoClients.message("hello");
+        try (EchoClients.Http http = httpClient(); EchoClients.Grpc grpc = grpcClient()) {
+            http.echo(message);
+            server.revokeTokens();
+            assertEquals(Status.Code.UNAUTHENTICATED, assertThrows(SDKException.class, () -> http.echo(message)).getStatus().getCode());
+            assertEquals(Status.Code.UNAUTHENTICATED, assertThrows(SDKException.class, () -> grpc.echo(message)).getStatus().getCode());
+        }
+    }
+
+    @Test
+    void injectedThrottlingIsReportedAsResourceExhausted() {
+        server.setFaults(FaultProfile.builder().throttleRate(1).build());
+        Struct message = EchoClients.message("hello");
+        try (EchoClients.Http http = httpClient(); EchoClients.Grpc grpc = grpcClient()) {
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, assertThrows(SDKException.class, () -> http.echo(message)).getStatus().getCode());
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, assertThrows(SDKException.class, () -> grpc.echo(message)).getStatus().getCode());
+        }
+    }
+
+    @Test
+    void tokenEndpointFailuresFailRequests() {
+        server.setTokenFaults(FaultProfile.builder().errorRate(1).build());
+        try (EchoClients.Http http = httpClient()) {
+            assertThrows(SDKException.class, () -> http.echo(EchoClients.message("hello")));
+        }
+        assertEquals(0, server.getApiRequestCount());
+    }
+
+    @Test
+    void injectedLatencyDelaysResponses() {
+        Struct message = EchoClients.message("hello");
+        try (EchoClients.Http http = httpClient()) {
+            http.echo(message);
+            server.setFaults(FaultProfile.builder().latency(LatencyDistribution.fixed(Duration.ofMillis(200))).build());
+            long startNanos = System.nanoTime();
+            http.echo(message);
+            assertTrue(System.nanoTime() - startNanos >= Duration.ofMillis(200).toNanos());
+        }
+    }
+}